@@ -4,14 +4,22 @@
  * SPDX-License-Identifier: Apache-2.0
  */
 
+import java.net.InetSocketAddress;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.hyperledger.fabric.client.Contract;
+import org.hyperledger.fabric.client.EndorseException;
 import org.hyperledger.fabric.client.Gateway;
 import org.hyperledger.fabric.client.GatewayException;
 import org.hyperledger.fabric.client.identity.Identities;
@@ -22,11 +30,6 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonParser;
 
-import io.grpc.ChannelCredentials;
-import io.grpc.Grpc;
-import io.grpc.ManagedChannel;
-import io.grpc.TlsChannelCredentials;
-
 public final class App {
 
     // ANSI Color Codes for better CLI presentation
@@ -44,7 +47,8 @@ public final class App {
     private static final String CHANNEL_NAME = System.getenv().getOrDefault("CHANNEL_NAME", "mychannel");
     private static final String CHAINCODE_NAME = System.getenv().getOrDefault("CHAINCODE_NAME", "basic");
 
-    // Gateway peer end point.
+    // Gateway peer end point, used by both organisations unless BASIL_PEERS_ORG1 / BASIL_PEERS_ORG2
+    // list their own, e.g. "localhost:7051/peer0.org1.example.com,localhost:8051/peer1.org1.example.com"
     private static final String PEER_ENDPOINT = "localhost:7051";
     private static final String OVERRIDE_AUTH = "peer0.org1.example.com";
 
@@ -56,20 +60,18 @@ public final class App {
         System.out.println(ANSI_CYAN + "🌱 Basil Traceability Application - Fabric Gateway Client" + ANSI_RESET);
         System.out.println(ANSI_CYAN + "==========================================================" + ANSI_RESET);
 
-        ManagedChannel channel = null;
+        LoadGenerator.Options loadOptions = null;
+        if (args.length > 0 && "--load".equals(args[0])) {
+            loadOptions = LoadGenerator.Options.parse(args);
+            if (loadOptions.isInMemory()) {
+                // repeatable runs without a network
+                runLoad(loadOptions.inMemoryTarget(), loadOptions);
+                return;
+            }
+        }
+
+        EndpointPool pool = null;
         try {
-            ChannelCredentials credentials = TlsChannelCredentials.newBuilder()
-                    .trustManager(PATH_TO_TEST_NETWORK.resolve(Paths.get(
-                            "organizations/peerOrganizations/org1.example.com/" +
-                            "peers/peer0.org1.example.com/tls/ca.crt"))
-                            .toFile())
-                    .build();
-            // The gRPC client connection should be shared by all Gateway connections to
-            // this endpoint.
-            channel = Grpc.newChannelBuilder(PEER_ENDPOINT, credentials)
-                    .overrideAuthority(OVERRIDE_AUTH)
-                    .build();
-            
             // --- Gateway Setup for Org1 (Pittaluga & fratelli) ---
             Gateway.Builder builderOrg1 = Gateway.newInstance()
                     .identity(new X509Identity("Org1MSP",
@@ -96,7 +98,6 @@ public final class App {
                             )
                         )
                     )
-                    .connection(channel)
                     // Default timeouts for different gRPC calls
                     .evaluateOptions(options -> options.withDeadlineAfter(5, TimeUnit.SECONDS))
                     .endorseOptions(options -> options.withDeadlineAfter(15, TimeUnit.SECONDS))
@@ -112,202 +113,350 @@ public final class App {
                         .list(PATH_TO_TEST_NETWORK.resolve(Paths
                                 .get("organizations/peerOrganizations/org2.example.com/users/User1@org2.example.com/msp/keystore")))
                         .findFirst().orElseThrow()))))
-                    .connection(channel)
                     .evaluateOptions(options -> options.withDeadlineAfter(5, TimeUnit.SECONDS))
                     .endorseOptions(options -> options.withDeadlineAfter(15, TimeUnit.SECONDS))
                     .submitOptions(options -> options.withDeadlineAfter(5, TimeUnit.SECONDS))
                     .commitStatusOptions(options -> options.withDeadlineAfter(1, TimeUnit.MINUTES));
             
-            try (Gateway gatewayOrg1 = builderOrg1.connect();
-                    Gateway gatewayOrg2 = builderOrg2.connect()) {
+            // The gRPC client connection to each peer is shared by the gateways of both organisations
+            String defaultPeers = PEER_ENDPOINT + "/" + OVERRIDE_AUTH;
+            pool = new EndpointPool(
+                    Duration.ofMillis(Long.parseLong(System.getenv().getOrDefault("BASIL_PEER_EJECT_LATENCY_MS", "2000"))),
+                    Integer.parseInt(System.getenv().getOrDefault("BASIL_PEER_EJECT_FAILURES", "3")),
+                    Duration.ofMillis(Long.parseLong(System.getenv().getOrDefault("BASIL_PEER_PROBE_INTERVAL_MS", "5000"))));
+            pool.connect("Org1MSP", builderOrg1, endpoints(System.getenv().getOrDefault("BASIL_PEERS_ORG1", defaultPeers)),
+                    CHANNEL_NAME, CHAINCODE_NAME);
+            pool.connect("Org2MSP", builderOrg2, endpoints(System.getenv().getOrDefault("BASIL_PEERS_ORG2", defaultPeers)),
+                    CHANNEL_NAME, CHAINCODE_NAME);
+            pool.start();
+            
+            Contract contractOrg1 = pool.contract("Org1MSP");
+            
+            Contract contractOrg2 = pool.contract("Org2MSP");
+
+            // local view of the ledger fed by chaincode events, so reads need no peer round trip
+            BasilStateView stateView = new BasilStateView(pool.network("Org2MSP"), CHAINCODE_NAME,
+                    Paths.get(System.getenv().getOrDefault("BASIL_VIEW_DIR", "."))).start();
+            // checkout scanners read the same plants over and over
+            QueryBasilCache queryCache = queryCache(contractOrg2, stateView);
+            // the menu loop only ends with the process, so save the view on the way out
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    stateView.close();
+                } catch (Exception e) {
+                    System.err.println("Cannot save basil view: " + e.getMessage());
+                }
+            }));
+            
+            if (args.length > 0 && "--server".equals(args[0])) {
+                // serve the transactions over HTTP instead of the interactive menu
+                int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+                // loopback unless API tokens decide who may sign as which organisation
+                String bindAddress = System.getenv().getOrDefault("BASIL_HTTP_BIND_ADDRESS", "127.0.0.1");
+                BasilHttpServer server = new BasilHttpServer(new InetSocketAddress(bindAddress, port),
+                        Map.of("Org1MSP", contractOrg1, "Org2MSP", contractOrg2),
+                        apiTokens(System.getenv().getOrDefault("BASIL_HTTP_TOKENS", "")),
+                        Map.of("Org1MSP", queryCache(contractOrg1, stateView), "Org2MSP", queryCache),
+                        Integer.parseInt(System.getenv().getOrDefault("BASIL_HTTP_MAX_CONCURRENT", "64")),
+                        Long.parseLong(System.getenv().getOrDefault("BASIL_HTTP_TIMEOUT_MS", "20000")))
+                        .withEndpointMetrics(pool);
+                server.start();
+                System.out.println(ANSI_GREEN + "✅ Serving the basil API on " + bindAddress + ":" + port + ANSI_RESET);
+                Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+                Thread.currentThread().join();
+            }
+
+            if (loadOptions != null) {
+                runLoad(new GatewayLoadTarget(contractOrg1, contractOrg2), loadOptions);
+                return;
+            }
+
+            if (args.length > 1 && "--ingest".equals(args[0])) {
+                // load a packing line export as the supplier and exit
+                BasilIngest ingest = new BasilIngest(contractOrg1,
+                        Integer.parseInt(System.getenv().getOrDefault("BASIL_INGEST_WINDOW", "32")),
+                        Integer.parseInt(System.getenv().getOrDefault("BASIL_INGEST_BATCH_SIZE", "100")),
+                        Integer.parseInt(System.getenv().getOrDefault("BASIL_INGEST_MAX_PENDING", "2000")));
+                Map<String, Object> stats = ingest.ingest(Paths.get(args[1]));
+                System.out.println(ANSI_GREEN + "\n*** INGEST RESULT ***" + ANSI_RESET);
+                System.out.println(new App().prettyJson(new Gson().toJson(stats)));
+                System.out.println(ANSI_GREEN + "*********************" + ANSI_RESET);
+                return;
+            }
+
+            if (args.length > 1 && "--export".equals(args[0])) {
+                // dump every basil for analytics and exit; rerun on the same directory to resume
+                BasilExport export = new BasilExport(contractOrg2,
+                        Integer.parseInt(System.getenv().getOrDefault("BASIL_EXPORT_PARALLELISM", "8")),
+                        Integer.parseInt(System.getenv().getOrDefault("BASIL_EXPORT_PAGE_SIZE", "500")));
+                Map<String, Object> stats = export.export(Paths.get(args[1]),
+                        System.getenv().getOrDefault("BASIL_EXPORT_PREFIX", ""),
+                        Integer.parseInt(System.getenv().getOrDefault("BASIL_EXPORT_PARTITIONS", "32")));
+                System.out.println(ANSI_GREEN + "\n*** EXPORT RESULT ***" + ANSI_RESET);
+                System.out.println(new App().prettyJson(new Gson().toJson(stats)));
+                System.out.println(ANSI_GREEN + "*********************" + ANSI_RESET);
+                return;
+            }
+
+            var scanner = new Scanner(System.in);
+            
+            while (true) {
                 
-                Contract contractOrg1 = gatewayOrg1
-                    .getNetwork(CHANNEL_NAME)
-                    .getContract(CHAINCODE_NAME);
+                // --- Organization Selection Menu ---
+                System.out.println(ANSI_BLUE + "\n--- Select Interacting Organization ---" + ANSI_RESET);
+                System.out.println(ANSI_YELLOW + "  0:" + ANSI_RESET + " Pittaluga & fratelli (Org1MSP)");
+                System.out.println(ANSI_YELLOW + "  1:" + ANSI_RESET + " Supermarket (Org2MSP)");
+                System.out.print(ANSI_BLUE + "Enter organization index (0 or 1): " + ANSI_RESET);
                 
-                Contract contractOrg2 = gatewayOrg2
-                    .getNetwork(CHANNEL_NAME)
-                    .getContract(CHAINCODE_NAME);
+                String orgIndex = scanner.nextLine().trim();
+                Contract interactingContract;
+                String orgName;
+                String orgMsp;
                 
-                var scanner = new Scanner(System.in);
+                switch (orgIndex) {
+                    case "0": // Org1MSP
+                        interactingContract = contractOrg1;
+                        orgName = "Pittaluga & fratelli (Org1MSP)";
+                        orgMsp = "Org1MSP";
+                        break;
+                    case "1": // Org2MSP
+                        interactingContract = contractOrg2;
+                        orgName = "Supermarket (Org2MSP)";
+                        orgMsp = "Org2MSP";
+                        break;
+                    default:
+                        System.out.println(ANSI_RED + "\n❌ ERROR: Wrong organization index. Please try again." + ANSI_RESET);
+                        continue;
+                }
+                
+                System.out.println(ANSI_GREEN + "\n✅ Selected Organization: " + orgName + ANSI_RESET);
+
+                // --- Transaction Selection Menu ---
+                System.out.println(ANSI_BLUE + "\n--- Select Transaction to Execute ---" + ANSI_RESET);
+                System.out.println(ANSI_YELLOW + "  0:" + ANSI_RESET + " QueryBasil (Read)");
+                System.out.println(ANSI_YELLOW + "  1:" + ANSI_RESET + " CreateBasil (Write)");
+                System.out.println(ANSI_YELLOW + "  2:" + ANSI_RESET + " UpdateBasil (Write)");
+                System.out.println(ANSI_YELLOW + "  3:" + ANSI_RESET + " TransferBasil (Write)");
+                System.out.println(ANSI_YELLOW + "  4:" + ANSI_RESET + " GetHistoryBasil (Read)");
+                System.out.println(ANSI_YELLOW + "  5:" + ANSI_RESET + " DeleteBasil (Write)");
+                System.out.println(ANSI_YELLOW + "  6:" + ANSI_RESET + " My Basils (Local Event View)");
+                System.out.println(ANSI_YELLOW + "  7:" + ANSI_RESET + " Bulk CreateBasil (Pipelined Write)");
+                System.out.println(ANSI_YELLOW + "  8:" + ANSI_RESET + " Gateway Peers (Health & Latency)");
+                System.out.print(ANSI_BLUE + "Enter transaction index (0-8): " + ANSI_RESET);
                 
-                while (true) {
-                    
-                    // --- Organization Selection Menu ---
-                    System.out.println(ANSI_BLUE + "\n--- Select Interacting Organization ---" + ANSI_RESET);
-                    System.out.println(ANSI_YELLOW + "  0:" + ANSI_RESET + " Pittaluga & fratelli (Org1MSP)");
-                    System.out.println(ANSI_YELLOW + "  1:" + ANSI_RESET + " Supermarket (Org2MSP)");
-                    System.out.print(ANSI_BLUE + "Enter organization index (0 or 1): " + ANSI_RESET);
-                    
-                    String orgIndex = scanner.nextLine().trim();
-                    Contract interactingContract;
-                    String orgName;
-                    
-                    switch (orgIndex) {
-                        case "0": // Org1MSP
-                            interactingContract = contractOrg1;
-                            orgName = "Pittaluga & fratelli (Org1MSP)";
+                String txIndex = scanner.nextLine().trim();
+                byte[] result;
+                String basilQR, extraInfo, gpsLocation, newOwnerIndex, newOwner;
+
+                try {
+                    switch (txIndex) {
+                        case "0": // QueryBasil (Read)
+                            System.out.print(ANSI_PURPLE + "\nInput Basil QR Code: " + ANSI_RESET);
+                            basilQR = scanner.nextLine().trim();
+                            System.out.println(ANSI_CYAN + "Executing QueryBasil..." + ANSI_RESET);
+                            if (interactingContract == contractOrg2) {
+                                result = queryCache.query(basilQR);
+                            } else {
+                                result = interactingContract.evaluateTransaction("QueryBasil", basilQR);
+                            }
+                            System.out.println(ANSI_GREEN + "\n*** QUERY RESULT ***" + ANSI_RESET);
+                            System.out.println(new App().prettyJson(result)); // Use pretty print for JSON
+                            System.out.println(ANSI_GREEN + "********************" + ANSI_RESET);
+                            if (interactingContract == contractOrg2) {
+                                System.out.println(ANSI_CYAN + "Cache: " + queryCache.stats() + ANSI_RESET);
+                            }
+                            break;
+
+                        case "1": // CreateBasil (Write)
+                            System.out.print(ANSI_PURPLE + "\nInput Basil QR Code: " + ANSI_RESET);
+                            basilQR = scanner.nextLine().trim();
+                            System.out.print(ANSI_PURPLE + "Input Extra Info: " + ANSI_RESET);
+                            extraInfo = scanner.nextLine().trim();
+                            
+                            System.out.println(ANSI_CYAN + "Submitting CreateBasil transaction..." + ANSI_RESET);
+                            result = interactingContract.submitTransaction("CreateBasil", basilQR, extraInfo);
+                            String resultString = new String(result).trim();
+                            System.out.println(ANSI_GREEN + "\n✅ TRANSACTION SUCCESSFUL: " + resultString + ANSI_RESET);
                             break;
-                        case "1": // Org2MSP
-                            interactingContract = contractOrg2;
-                            orgName = "Supermarket (Org2MSP)";
+
+                        case "2": // UpdateBasil (Write)
+                            System.out.print(ANSI_PURPLE + "\nInput Basil QR Code: " + ANSI_RESET);
+                            basilQR = scanner.nextLine().trim();
+                            System.out.print(ANSI_PURPLE + "Input NEW Extra Info: " + ANSI_RESET);
+                            extraInfo = scanner.nextLine().trim();
+                            System.out.print(ANSI_PURPLE + "Input NEW GPS Location: " + ANSI_RESET);
+                            gpsLocation = scanner.nextLine().trim();
+                            
+                            System.out.println(ANSI_CYAN + "Submitting UpdateBasil transaction..." + ANSI_RESET);
+                            result = interactingContract.submitTransaction("UpdateBasil", basilQR, extraInfo, gpsLocation);
+                            resultString = new String(result).trim();
+                            System.out.println(ANSI_GREEN + "\n✅ TRANSACTION SUCCESSFUL: " + resultString + ANSI_RESET);
+                            break;
+
+                        case "3": // TransferBasil (Write)
+                            System.out.print(ANSI_PURPLE + "\nInput Basil QR Code: " + ANSI_RESET);
+                            basilQR = scanner.nextLine().trim();
+                            
+                            System.out.println(ANSI_BLUE + "\n--- Select New Owner Organization ---" + ANSI_RESET);
+                            System.out.println(ANSI_YELLOW + "  0:" + ANSI_RESET + " Pittaluga & fratelli (Org1MSP)");
+                            System.out.println(ANSI_YELLOW + "  1:" + ANSI_RESET + " Supermarket (Org2MSP)");
+                            System.out.print(ANSI_BLUE + "Enter new owner index (0 or 1): " + ANSI_RESET);
+                            
+                            newOwnerIndex = scanner.nextLine().trim();
+                            switch (newOwnerIndex) {
+                                case "0": newOwner = "Org1MSP"; break;
+                                case "1": newOwner = "Org2MSP"; break;
+                                default: throw new RuntimeException("Wrong new owner organization index");
+                            }
+                            
+                            System.out.println(ANSI_CYAN + "Submitting TransferBasil transaction to " + newOwner + "..." + ANSI_RESET);
+                            result = interactingContract.submitTransaction("TransferBasil", basilQR, newOwner);
+
+                            resultString = new String(result).trim();
+                            System.out.println(ANSI_GREEN + "\n✅ TRANSACTION SUCCESSFUL: " + resultString + ANSI_RESET);
                             break;
+
+                        case "4": // GetHistoryOfBasil (Read)
+                            System.out.print(ANSI_PURPLE + "\nInput Basil QR Code: " + ANSI_RESET);
+                            basilQR = scanner.nextLine().trim();
+                            
+                            System.out.println(ANSI_CYAN + "Executing GetHistoryOfBasil..." + ANSI_RESET);
+                            result = interactingContract.evaluateTransaction("GetHistoryOfBasil", basilQR);
+                            System.out.println(ANSI_GREEN + "\n*** HISTORY RESULT ***" + ANSI_RESET);
+                            System.out.println(new App().prettyJson(result));
+                            System.out.println(ANSI_GREEN + "**********************" + ANSI_RESET);
+                            break;
+                            
+                        case "5": // DeleteBasil (Write)
+                            System.out.print(ANSI_PURPLE + "\nInput Basil QR Code to delete: " + ANSI_RESET);
+                            basilQR = scanner.nextLine().trim();
+                            
+                            System.out.println(ANSI_CYAN + "Submitting DeleteBasil transaction..." + ANSI_RESET);
+                            result = interactingContract.submitTransaction("DeleteBasil", basilQR);
+                            resultString = new String(result).trim();
+                            System.out.println(ANSI_GREEN + "\n✅ TRANSACTION SUCCESSFUL: " + resultString + ANSI_RESET);
+                            break;
+                            
+                        case "6": // My Basils (Local Event View)
+                            System.out.println(ANSI_GREEN + "\n*** BASILS HELD BY " + orgMsp + " (from " + stateView.appliedEvents()
+                                    + " events, " + stateView.size() + " basils known) ***" + ANSI_RESET);
+                            for (BasilChange basil : stateView.ownedBy(orgMsp)) {
+                                System.out.println(basil);
+                            }
+                            System.out.println(ANSI_GREEN + "********************" + ANSI_RESET);
+                            break;
+
+                        case "7": // Bulk CreateBasil (Pipelined Write)
+                            System.out.print(ANSI_PURPLE + "\nInput QR Code prefix: " + ANSI_RESET);
+                            String prefix = scanner.nextLine().trim();
+                            System.out.print(ANSI_PURPLE + "Input number of basils: " + ANSI_RESET);
+                            int count = Integer.parseInt(scanner.nextLine().trim());
+
+                            System.out.println(ANSI_CYAN + "Submitting " + count + " CreateBasil transactions..." + ANSI_RESET);
+                            List<CompletableFuture<byte[]>> submitted = new ArrayList<>(count);
+                            try (SubmissionPipeline pipeline = new SubmissionPipeline(interactingContract,
+                                    Integer.parseInt(System.getenv().getOrDefault("BASIL_PIPELINE_WINDOW", "32")),
+                                    5, Duration.ofMillis(50))) {
+                                for (int i = 0; i < count; i++) {
+                                    submitted.add(pipeline.submit("CreateBasil", prefix + i, "bulk"));
+                                }
+                                CompletableFuture.allOf(submitted.toArray(new CompletableFuture<?>[0]))
+                                        .exceptionally(e -> null).join();
+                                System.out.println(ANSI_GREEN + "\n*** PIPELINE RESULT ***" + ANSI_RESET);
+                                System.out.println(new App().prettyJson(new Gson().toJson(pipeline.stats())));
+                                System.out.println(ANSI_GREEN + "***********************" + ANSI_RESET);
+                            }
+                            break;
+
+                        case "8": // Gateway Peers (Health & Latency)
+                            System.out.println(ANSI_GREEN + "\n*** GATEWAY PEERS ***" + ANSI_RESET);
+                            System.out.println(new App().prettyJson(new Gson().toJson(pool.metrics())));
+                            System.out.println(ANSI_GREEN + "*********************" + ANSI_RESET);
+                            break;
+
                         default:
-                            System.out.println(ANSI_RED + "\n❌ ERROR: Wrong organization index. Please try again." + ANSI_RESET);
-                            continue;
+                            System.out.println(ANSI_RED + "\n❌ ERROR: Invalid transaction index. Please enter a value between 0 and 8." + ANSI_RESET);
+                            break;
                     }
-                    
-                    System.out.println(ANSI_GREEN + "\n✅ Selected Organization: " + orgName + ANSI_RESET);
-
-                    // --- Transaction Selection Menu ---
-                    System.out.println(ANSI_BLUE + "\n--- Select Transaction to Execute ---" + ANSI_RESET);
-                    System.out.println(ANSI_YELLOW + "  0:" + ANSI_RESET + " QueryBasil (Read)");
-                    System.out.println(ANSI_YELLOW + "  1:" + ANSI_RESET + " CreateBasil (Write)");
-                    System.out.println(ANSI_YELLOW + "  2:" + ANSI_RESET + " UpdateBasil (Write)");
-                    System.out.println(ANSI_YELLOW + "  3:" + ANSI_RESET + " TransferBasil (Write)");
-                    System.out.println(ANSI_YELLOW + "  4:" + ANSI_RESET + " GetHistoryBasil (Read)");
-                    System.out.println(ANSI_YELLOW + "  5:" + ANSI_RESET + " DeleteBasil (Write)");
-                    System.out.print(ANSI_BLUE + "Enter transaction index (0-5): " + ANSI_RESET);
-                    
-                    String txIndex = scanner.nextLine().trim();
-                    byte[] result;
-                    String basilQR, extraInfo, gpsLocation, newOwnerIndex, newOwner;
-
-                    try {
-                        switch (txIndex) {
-                            case "0": // QueryBasil (Read)
-                                System.out.print(ANSI_PURPLE + "\nInput Basil QR Code: " + ANSI_RESET);
-                                basilQR = scanner.nextLine().trim();
-                                System.out.println(ANSI_CYAN + "Executing QueryBasil..." + ANSI_RESET);
-                                result = interactingContract.evaluateTransaction("QueryBasil", basilQR);
-                                System.out.println(ANSI_GREEN + "\n*** QUERY RESULT ***" + ANSI_RESET);
-                                System.out.println(new App().prettyJson(result)); // Use pretty print for JSON
-                                System.out.println(ANSI_GREEN + "********************" + ANSI_RESET);
-                                break;
-
-                            case "1": // CreateBasil (Write)
-                                System.out.print(ANSI_PURPLE + "\nInput Basil QR Code: " + ANSI_RESET);
-                                basilQR = scanner.nextLine().trim();
-                                System.out.print(ANSI_PURPLE + "Input Extra Info: " + ANSI_RESET);
-                                extraInfo = scanner.nextLine().trim();
-                                
-                                System.out.println(ANSI_CYAN + "Submitting CreateBasil transaction..." + ANSI_RESET);
-                                result = interactingContract.submitTransaction("CreateBasil", basilQR, extraInfo);
-                                String resultString = new String(result).trim();
-                                    
-                                    // --- UPDATED FAILURE CHECK ---
-                                    if (resultString.contains("Not authorized") || resultString.contains("exists")) {
-                                        System.out.println(ANSI_RED + "\n❌ TRANSACTION FAILED (Chaincode Logic Error)" + ANSI_RESET);
-                                        System.out.println(ANSI_RED + "Chaincode Response: " + resultString + ANSI_RESET);
-                                    } else {
-                                        System.out.println(ANSI_GREEN + "\n✅ TRANSACTION SUCCESSFUL (TxID: " + resultString + ")" + ANSI_RESET);
-                                    }
-                                break;
-
-                            case "2": // UpdateBasil (Write)
-                                System.out.print(ANSI_PURPLE + "\nInput Basil QR Code: " + ANSI_RESET);
-                                basilQR = scanner.nextLine().trim();
-                                System.out.print(ANSI_PURPLE + "Input NEW Extra Info: " + ANSI_RESET);
-                                extraInfo = scanner.nextLine().trim();
-                                System.out.print(ANSI_PURPLE + "Input NEW GPS Location: " + ANSI_RESET);
-                                gpsLocation = scanner.nextLine().trim();
-                                
-                                System.out.println(ANSI_CYAN + "Submitting UpdateBasil transaction..." + ANSI_RESET);
-                                result = interactingContract.submitTransaction("UpdateBasil", basilQR, extraInfo, gpsLocation);
-                                resultString = new String(result).trim();
-                                    
-                                    // --- UPDATED FAILURE CHECK ---
-                                    if (resultString.contains("Not authorized") || resultString.contains("exists")) {
-                                        System.out.println(ANSI_RED + "\n❌ TRANSACTION FAILED (Chaincode Logic Error)" + ANSI_RESET);
-                                        System.out.println(ANSI_RED + "Chaincode Response: " + resultString + ANSI_RESET);
-                                    } else {
-                                        System.out.println(ANSI_GREEN + "\n✅ TRANSACTION SUCCESSFUL (TxID: " + resultString + ")" + ANSI_RESET);
-                                    }
-                                break;
-
-                            case "3": // TransferBasil (Write)
-                                System.out.print(ANSI_PURPLE + "\nInput Basil QR Code: " + ANSI_RESET);
-                                basilQR = scanner.nextLine().trim();
-                                
-                                System.out.println(ANSI_BLUE + "\n--- Select New Owner Organization ---" + ANSI_RESET);
-                                System.out.println(ANSI_YELLOW + "  0:" + ANSI_RESET + " Pittaluga & fratelli (Org1MSP)");
-                                System.out.println(ANSI_YELLOW + "  1:" + ANSI_RESET + " Supermarket (Org2MSP)");
-                                System.out.print(ANSI_BLUE + "Enter new owner index (0 or 1): " + ANSI_RESET);
-                                
-                                newOwnerIndex = scanner.nextLine().trim();
-                                switch (newOwnerIndex) {
-                                    case "0": newOwner = "Org1MSP"; break;
-                                    case "1": newOwner = "Org2MSP"; break;
-                                    default: throw new RuntimeException("Wrong new owner organization index");
-                                }
-                                
-                                System.out.println(ANSI_CYAN + "Submitting TransferBasil transaction to " + newOwner + "..." + ANSI_RESET);
-                                result = interactingContract.submitTransaction("TransferBasil", basilQR, newOwner);
-
-                                resultString = new String(result).trim();
-                                    // --- UPDATED FAILURE CHECK ---
-                                    if (resultString.contains("Not authorized") || resultString.contains("exists")) {
-                                        System.out.println(ANSI_RED + "\n❌ TRANSACTION FAILED (Chaincode Logic Error)" + ANSI_RESET);
-                                        System.out.println(ANSI_RED + "Chaincode Response: " + resultString + ANSI_RESET);
-                                    } else {
-                                        System.out.println(ANSI_GREEN + "\n✅ TRANSACTION SUCCESSFUL (TxID: " + resultString + ")" + ANSI_RESET);
-                                    }
-                                break;
-
-                            case "4": // GetHistoryOfBasil (Read)
-                                System.out.print(ANSI_PURPLE + "\nInput Basil QR Code: " + ANSI_RESET);
-                                basilQR = scanner.nextLine().trim();
-                                
-                                System.out.println(ANSI_CYAN + "Executing GetHistoryOfBasil..." + ANSI_RESET);
-                                result = interactingContract.evaluateTransaction("GetHistoryOfBasil", basilQR);
-                                System.out.println(ANSI_GREEN + "\n*** HISTORY RESULT ***" + ANSI_RESET);
-                                System.out.println(new App().prettyJson(result));
-                                System.out.println(ANSI_GREEN + "**********************" + ANSI_RESET);
-                                break;
-                                
-                            case "5": // DeleteBasil (Write)
-                                System.out.print(ANSI_PURPLE + "\nInput Basil QR Code to delete: " + ANSI_RESET);
-                                basilQR = scanner.nextLine().trim();
-                                
-                                System.out.println(ANSI_CYAN + "Submitting DeleteBasil transaction..." + ANSI_RESET);
-                                result = interactingContract.submitTransaction("DeleteBasil", basilQR);
-                                resultString = new String(result).trim();
-                                    
-                                    // --- UPDATED FAILURE CHECK ---
-                                    if (resultString.contains("Not authorized") || resultString.contains("exists")) {
-                                        System.out.println(ANSI_RED + "\n❌ TRANSACTION FAILED (Chaincode Logic Error)" + ANSI_RESET);
-                                        System.out.println(ANSI_RED + "Chaincode Response: " + resultString + ANSI_RESET);
-                                    } else {
-                                        System.out.println(ANSI_GREEN + "\n✅ TRANSACTION SUCCESSFUL (TxID: " + resultString + ")" + ANSI_RESET);
-                                    }
-                                break;
-                                
-                            default:
-                                System.out.println(ANSI_RED + "\n❌ ERROR: Invalid transaction index. Please enter a value between 0 and 5." + ANSI_RESET);
-                                break;
-                        }
-                    } catch (GatewayException e) {
+                } catch (EndorseException e) {
+                    // the chaincode rejects invalid operations at endorsement, so nothing was ordered
+                    BasilError error = BasilError.of(e);
+                    if (error == BasilError.UNKNOWN) {
                         System.out.println(ANSI_RED + "\n❌ FABRIC ERROR: " + e.getMessage() + ANSI_RESET);
-                    } catch (Exception e) {
-                        System.out.println(ANSI_RED + "\n❌ APPLICATION ERROR: " + e.getMessage() + ANSI_RESET);
+                    } else {
+                        System.out.println(ANSI_RED + "\n❌ TRANSACTION REJECTED (" + error + ")" + ANSI_RESET);
+                        System.out.println(ANSI_RED + "Chaincode Response: " + BasilError.describe(e) + ANSI_RESET);
                     }
-
-                    System.out.println(ANSI_YELLOW + "\n==========================================================" + ANSI_RESET);
-                    System.out.print(ANSI_YELLOW + "Press ENTER to continue to the main menu..." + ANSI_RESET);
-                    scanner.nextLine(); // Pause before next iteration
+                } catch (GatewayException e) {
+                    System.out.println(ANSI_RED + "\n❌ FABRIC ERROR: " + e.getMessage() + ANSI_RESET);
+                } catch (Exception e) {
+                    System.out.println(ANSI_RED + "\n❌ APPLICATION ERROR: " + e.getMessage() + ANSI_RESET);
                 }
 
-            } finally {
-                if (channel != null) {
-                    channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
-                }
+                System.out.println(ANSI_YELLOW + "\n==========================================================" + ANSI_RESET);
+                System.out.print(ANSI_YELLOW + "Press ENTER to continue to the main menu..." + ANSI_RESET);
+                scanner.nextLine(); // Pause before next iteration
             }
 
         } finally {
-            if (channel != null) {
-                channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            if (pool != null) {
+                pool.close();
+            }
+        }
+    }
+
+    /**
+     * @param spec comma separated gateway peers, each {@code address/host name}, e.g.
+     *        "localhost:7051/peer0.org1.example.com"
+     * @return the peers, with the TLS CA certificate of each from the test network
+     */
+    private static List<EndpointPool.Endpoint> endpoints(final String spec) {
+        List<EndpointPool.Endpoint> endpoints = new ArrayList<>();
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.trim().split("/");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected address/host name, got " + entry);
+            }
+            String domain = parts[1].substring(parts[1].indexOf('.') + 1);
+            endpoints.add(new EndpointPool.Endpoint(parts[0], parts[1], PATH_TO_TEST_NETWORK.resolve(Paths.get(
+                    "organizations/peerOrganizations/" + domain + "/peers/" + parts[1] + "/tls/ca.crt"))));
+        }
+        return endpoints;
+    }
+
+    private static QueryBasilCache queryCache(final Contract contract, final BasilStateView stateView) {
+        return new QueryBasilCache(contract,
+                Integer.parseInt(System.getenv().getOrDefault("BASIL_CACHE_SIZE", "10000")),
+                Duration.ofSeconds(Long.parseLong(System.getenv().getOrDefault("BASIL_CACHE_TTL_SECONDS", "300"))),
+                Boolean.parseBoolean(System.getenv().getOrDefault("BASIL_CACHE_STRICT", "false")))
+                .invalidatedBy(stateView);
+    }
+
+    /**
+     * @param spec comma separated token=MSP ID pairs, or an empty string
+     * @return MSP ID by API token
+     */
+    private static Map<String, String> apiTokens(final String spec) {
+        Map<String, String> tokens = new HashMap<>();
+        for (String entry : spec.split(",")) {
+            if (entry.isBlank()) {
+                continue;
             }
+            int eq = entry.lastIndexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected token=MSP ID, got an entry without one");
+            }
+            tokens.put(entry.substring(0, eq).trim(), entry.substring(eq + 1).trim());
         }
+        return tokens;
+    }
+
+    private static void runLoad(final LoadTarget target, final LoadGenerator.Options options) throws Exception {
+        System.out.println(ANSI_CYAN + "Running load..." + ANSI_RESET);
+        Map<String, Object> report = new LoadGenerator(target, options).run();
+        System.out.println(ANSI_GREEN + "\n*** LOAD REPORT ***" + ANSI_RESET);
+        System.out.println(new App().prettyJson(new Gson().toJson(report)));
+        System.out.println(ANSI_GREEN + "*******************" + ANSI_RESET);
     }
 
     private String prettyJson(final byte[] json) {
@@ -0,0 +1,61 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+/**
+ * One change published by the basil chaincode in a chaincode event. The event payload is a JSON
+ * array of these; a lot transfer carries the lot ID and the new owner but no QR.
+ */
+public final class BasilChange {
+
+    public static final String CREATED = "CREATED";
+    public static final String UPDATED = "UPDATED";
+    public static final String LEG_RECORDED = "LEG_RECORDED";
+    public static final String TRANSFERRED = "TRANSFERRED";
+    public static final String DELETED = "DELETED";
+    public static final String LOT_ASSIGNED = "LOT_ASSIGNED";
+    public static final String LOT_REMOVED = "LOT_REMOVED";
+    public static final String LOT_TRANSFERRED = "LOT_TRANSFERRED";
+
+    private final String type;
+    private final String qr;
+    private final String owner;
+    private final String lotId;
+    private final Long legTimestamp;
+
+    public BasilChange(final String type, final String qr, final String owner, final String lotId,
+            final Long legTimestamp) {
+        this.type = type;
+        this.qr = qr;
+        this.owner = owner;
+        this.lotId = lotId;
+        this.legTimestamp = legTimestamp;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getQr() {
+        return qr;
+    }
+
+    /** MSP ID of the owner; for lot members the owner of the lot at the time of the change. */
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getLotId() {
+        return lotId;
+    }
+
+    /** Timestamp of the latest leg in epoch seconds, null if none was reported. */
+    public Long getLegTimestamp() {
+        return legTimestamp;
+    }
+
+    @Override
+    public String toString() {
+        return type + " [qr=" + qr + ", owner=" + owner + ", lotId=" + lotId + ", legTimestamp=" + legTimestamp + "]";
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.hyperledger.fabric.client.GatewayException;
+import org.hyperledger.fabric.protos.gateway.ErrorDetail;
+
+/**
+ * Error codes the basil chaincode rejects transactions with. The chaincode prefixes the message of
+ * every rejection with its code, and the gateway passes that message back in the details of the
+ * endorsement error, so a rejected submit never reaches the orderer.
+ */
+public enum BasilError {
+    BASIL_NOT_FOUND,
+    BASIL_ALREADY_EXISTS,
+    BASIL_IN_LOT,
+    BASIL_NOT_IN_LOT,
+    LOT_NOT_FOUND,
+    NOT_AUTHORIZED,
+    INVALID_ARGUMENT,
+    /** Any failure that does not carry a chaincode error code, e.g. a timeout or an MVCC conflict. */
+    UNKNOWN;
+
+    private static final Pattern CODE = Pattern.compile("\\b([A-Z][A-Z_]+): ");
+
+    /**
+     * @param e error returned by the gateway
+     * @return the chaincode error code, or {@link #UNKNOWN} if the error carries none
+     */
+    public static BasilError of(final GatewayException e) {
+        for (ErrorDetail detail : e.getDetails()) {
+            BasilError error = parse(detail.getMessage());
+            if (error != UNKNOWN) {
+                return error;
+            }
+        }
+        return parse(e.getMessage());
+    }
+
+    /**
+     * @param message error message that may contain a code, e.g.
+     *        "chaincode response 500, BASIL_NOT_FOUND: Basil QR1 does not exist"
+     * @return the first known code in the message, or {@link #UNKNOWN}
+     */
+    public static BasilError parse(final String message) {
+        if (message == null) {
+            return UNKNOWN;
+        }
+        Matcher matcher = CODE.matcher(message);
+        while (matcher.find()) {
+            try {
+                BasilError error = valueOf(matcher.group(1));
+                if (error != UNKNOWN) {
+                    return error;
+                }
+            } catch (IllegalArgumentException e) {
+                // not one of ours, keep looking
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * @param e error returned by the gateway
+     * @return the message of the chaincode error without the code, or the gateway message
+     */
+    public static String describe(final GatewayException e) {
+        for (ErrorDetail detail : e.getDetails()) {
+            String message = detail.getMessage();
+            BasilError error = parse(message);
+            if (error != UNKNOWN) {
+                return message.substring(message.indexOf(error.name() + ": ") + error.name().length() + 2);
+            }
+        }
+        return e.getMessage();
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.hyperledger.fabric.client.Contract;
+import org.hyperledger.fabric.client.GatewayException;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Export of every basil on the ledger to gzip compressed JSON lines, for the nightly analytics
+ * dump.
+ *
+ * <p>The QR code key space is split into contiguous ranges that together cover every key: below
+ * {@code prefix + c}, between consecutive split points and from the last one on, with the
+ * characters {@code c} spread over digits and letters. The ranges are scanned in parallel with
+ * GetBasilsByRange, one page at a time, and each is written to its own
+ * {@code part-NNNN.ndjson.gz} file, so memory is bounded by one page per worker. Every page is
+ * written as a complete gzip member; the members of a file decompress as one stream with
+ * {@code zcat} or {@link java.util.zip.GZIPInputStream}.
+ *
+ * <p>After each page, the bookmark of the next page and the length of the part file are saved in
+ * {@code export.checkpoint.json}. Rerunning the export on the same directory truncates each part
+ * file to its saved length and continues its range from the saved bookmark; ranges that were done
+ * are skipped. A range that keeps failing is reported and left to the next run. The checkpoint
+ * fixes the ranges, so a resumed export ignores the prefix and partitions it is given.
+ */
+public final class BasilExport {
+
+    private static final String SPLIT_CHARACTERS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+    private static final String CHECKPOINT = "export.checkpoint.json";
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final Contract contract;
+    private final int parallelism;
+    private final int pageSize;
+    private final Gson gson = new Gson();
+
+    private Path directory;
+    private List<Range> ranges;
+
+    /**
+     * @param contract contract GetBasilsByRange is evaluated on
+     * @param parallelism number of ranges scanned at the same time
+     * @param pageSize number of keys requested per page
+     */
+    public BasilExport(final Contract contract, final int parallelism, final int pageSize) {
+        this.contract = contract;
+        this.parallelism = parallelism;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Exports the world state into a directory, resuming the export found there if any.
+     *
+     * @param directory directory of the part files and the checkpoint
+     * @param prefix common prefix of the QR codes, after which the key space is split
+     * @param partitions number of ranges, at most 62
+     * @return number of ranges and records, failed ranges and elapsed time
+     * @throws IOException if the directory or the checkpoint cannot be read or written
+     * @throws InterruptedException if interrupted while waiting for the ranges
+     */
+    public Map<String, Object> export(final Path directory, final String prefix, final int partitions)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        this.directory = Files.createDirectories(directory);
+        Path checkpointFile = directory.resolve(CHECKPOINT);
+        boolean resumed = Files.exists(checkpointFile);
+        ranges = resumed ? readCheckpoint(checkpointFile) : split(prefix, partitions);
+        writeCheckpoint();
+
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+        Map<Range, Future<?>> scans = new LinkedHashMap<>();
+        for (Range range : ranges) {
+            if (!range.done) {
+                scans.put(range, workers.submit(() -> {
+                    scan(range);
+                    return null;
+                }));
+            }
+        }
+        workers.shutdown();
+
+        List<String> failed = new ArrayList<>();
+        for (Map.Entry<Range, Future<?>> scan : scans.entrySet()) {
+            try {
+                scan.getValue().get();
+            } catch (ExecutionException e) {
+                failed.add(scan.getKey().part + ": " + e.getCause().getMessage());
+            }
+        }
+        workers.awaitTermination(1, TimeUnit.MINUTES);
+
+        long records = 0;
+        for (Range range : ranges) {
+            records += range.records;
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("directory", directory.toAbsolutePath().toString());
+        stats.put("resumed", resumed);
+        stats.put("ranges", ranges.size());
+        stats.put("records", records);
+        stats.put("failedRanges", failed);
+        stats.put("seconds", (System.nanoTime() - start) / 1e9);
+        return stats;
+    }
+
+    /**
+     * @return contiguous ranges covering the whole key space, split after {@code prefix}
+     */
+    static List<Range> split(final String prefix, final int partitions) {
+        int count = Math.max(1, Math.min(partitions, SPLIT_CHARACTERS.length()));
+        List<Range> ranges = new ArrayList<>(count);
+        String start = "";
+        for (int i = 1; i <= count; i++) {
+            String end = i == count ? "" : prefix + SPLIT_CHARACTERS.charAt(i * SPLIT_CHARACTERS.length() / count);
+            ranges.add(new Range(String.format("part-%04d.ndjson.gz", i - 1), start, end));
+            start = end;
+        }
+        return ranges;
+    }
+
+    private void scan(final Range range) throws IOException, GatewayException {
+        Path part = directory.resolve(range.part);
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (channel.size() < range.offset) {
+                // the file lost pages the checkpoint counted, so the range starts over
+                range.reset();
+            }
+            channel.truncate(range.offset);
+            channel.position(range.offset);
+            BufferedOutputStream buffered = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+
+            while (!range.done) {
+                JsonObject page = nextPage(range);
+                JsonArray records = page.getAsJsonArray("records");
+                String bookmark = page.get("bookmark").getAsString();
+                boolean done = page.get("fetchedRecordsCount").getAsInt() < pageSize || bookmark.isEmpty();
+                // an empty range still gets an empty member, so every part file is valid gzip
+                if (records.size() > 0 || done && channel.position() == 0) {
+                    writeMember(buffered, records);
+                    buffered.flush();
+                    channel.force(false);
+                }
+                range.advance(channel.position(), records.size(), bookmark, done);
+                writeCheckpoint();
+            }
+        }
+    }
+
+    private JsonObject nextPage(final Range range) throws GatewayException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                byte[] response = contract.evaluateTransaction("GetBasilsByRange", range.start, range.end,
+                        Integer.toString(pageSize), range.bookmark);
+                return JsonParser.parseString(new String(response, StandardCharsets.UTF_8)).getAsJsonObject();
+            } catch (GatewayException e) {
+                if (attempt == MAX_ATTEMPTS || BasilError.of(e) != BasilError.UNKNOWN) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes one page as a complete gzip member, leaving the underlying stream open.
+     */
+    private static void writeMember(final OutputStream out, final JsonArray records) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(out, 1 << 16);
+        for (JsonElement record : records) {
+            gzip.write(record.toString().getBytes(StandardCharsets.UTF_8));
+            gzip.write('\n');
+        }
+        gzip.finish();
+    }
+
+    /**
+     * Atomically replaces the checkpoint with the progress of every range.
+     */
+    private synchronized void writeCheckpoint() throws IOException {
+        Path checkpointFile = directory.resolve(CHECKPOINT);
+        Path temp = checkpointFile.resolveSibling(CHECKPOINT + ".tmp");
+        List<Range> snapshot = new ArrayList<>(ranges.size());
+        for (Range range : ranges) {
+            snapshot.add(range.copy());
+        }
+        Files.write(temp, gson.toJson(snapshot).getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private List<Range> readCheckpoint(final Path checkpointFile) throws IOException {
+        String json = new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8);
+        List<Range> ranges = new ArrayList<>();
+        for (JsonElement range : JsonParser.parseString(json).getAsJsonArray()) {
+            ranges.add(gson.fromJson(range, Range.class));
+        }
+        return ranges;
+    }
+
+    /**
+     * One key range and how far its export got.
+     */
+    static final class Range {
+        private String part;
+        private String start;
+        private String end;
+        private String bookmark = "";
+        private long offset;
+        private long records;
+        private boolean done;
+
+        Range(final String part, final String start, final String end) {
+            this.part = part;
+            this.start = start;
+            this.end = end;
+        }
+
+        synchronized void advance(final long newOffset, final int pageRecords, final String nextBookmark,
+                final boolean finished) {
+            offset = newOffset;
+            records += pageRecords;
+            bookmark = nextBookmark;
+            done = finished;
+        }
+
+        synchronized void reset() {
+            offset = 0;
+            records = 0;
+            bookmark = "";
+            done = false;
+        }
+
+        synchronized Range copy() {
+            Range copy = new Range(part, start, end);
+            copy.advance(offset, 0, bookmark, done);
+            copy.records = records;
+            return copy;
+        }
+    }
+}
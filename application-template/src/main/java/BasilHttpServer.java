@@ -0,0 +1,354 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.client.Contract;
+import org.hyperledger.fabric.client.EndorseException;
+import org.hyperledger.fabric.client.GatewayException;
+import org.hyperledger.fabric.client.Status;
+import org.hyperledger.fabric.client.SubmittedTransaction;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP/JSON front end for the basil chaincode, so scanners and POS systems can call in
+ * concurrently instead of queueing behind the interactive menu. All handlers share the gateways
+ * and the gRPC channel built by {@link App}.
+ *
+ * <pre>
+ * GET    /basils/{qr}           QueryBasil
+ * POST   /basils                CreateBasil    {"qr": ..., "extraInfo": ...}
+ * PUT    /basils/{qr}           UpdateBasil    {"extraInfo": ..., "gpsPosition": ...}
+ * POST   /basils/{qr}/transfer  TransferBasil  {"newOwner": ...}
+ * GET    /basils/{qr}/history   GetHistoryOfBasil
+ * DELETE /basils/{qr}           DeleteBasil
+ * GET    /endpoints             health and latency of the gateway peers, if exposed
+ * </pre>
+ *
+ * <p>Requests are signed by an organisation chosen by the server, never by the caller: when API
+ * tokens are configured, the {@code Authorization: Bearer} token of a request selects the
+ * organisation it was issued for and requests without a known token are refused with 401; otherwise
+ * every request is signed as Org1MSP. Without tokens, keep the server on the loopback address it
+ * binds to by default. QueryBasil results are cached per organisation. Handlers run on virtual
+ * threads when the JVM has them and on a bounded pool otherwise. At most {@code maxConcurrent}
+ * requests are processed at a time; further requests are refused with 429 rather than queued, so
+ * latency stays predictable under load. Every request has a deadline, lowered per request with the
+ * {@code X-Timeout-Ms} header, that bounds all gateway calls it makes; when it expires the response
+ * is 504.
+ */
+public final class BasilHttpServer implements AutoCloseable {
+
+    private static final String DEFAULT_ORG = "Org1MSP";
+
+    private final Map<String, Contract> contracts;
+    private final Map<String, String> tokens;
+    private final Map<String, QueryBasilCache> queryCaches;
+    private final long timeoutMillis;
+    private final Semaphore permits;
+    private final ExecutorService executor;
+    private final HttpServer server;
+    private final Gson gson = new Gson();
+
+    /**
+     * @param address address to listen on
+     * @param contracts contract of each organisation by MSP ID
+     * @param tokens MSP ID of each API token; if empty, requests need no token and act as Org1MSP
+     * @param queryCaches cache QueryBasil is read through by MSP ID; organisations without one
+     *        always evaluate
+     * @param maxConcurrent maximum number of requests processed at the same time
+     * @param timeoutMillis default deadline of a request
+     * @throws IOException if the address cannot be bound
+     */
+    public BasilHttpServer(final InetSocketAddress address, final Map<String, Contract> contracts,
+            final Map<String, String> tokens, final Map<String, QueryBasilCache> queryCaches,
+            final int maxConcurrent, final long timeoutMillis) throws IOException {
+        for (String org : tokens.values()) {
+            if (!contracts.containsKey(org)) {
+                throw new IllegalArgumentException("API token issued for unknown organisation " + org);
+            }
+        }
+        this.contracts = contracts;
+        this.tokens = tokens;
+        this.queryCaches = queryCaches;
+        this.timeoutMillis = timeoutMillis;
+        this.permits = new Semaphore(maxConcurrent);
+        // twice the permits, so refused requests are answered without waiting for a thread
+        this.executor = VirtualThreads.newExecutor(maxConcurrent * 2);
+        this.server = HttpServer.create(address, 0);
+        server.createContext("/basils", this::handle);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Serves the metrics of the gateway peers on {@code GET /endpoints}.
+     *
+     * @param pool pool the contracts are balanced by
+     * @return this server
+     */
+    public BasilHttpServer withEndpointMetrics(final EndpointPool pool) {
+        server.createContext("/endpoints", exchange -> {
+            try {
+                // peer addresses and health are for the same callers as the transactions
+                if (organisationOf(exchange) == null) {
+                    unauthenticated(exchange);
+                } else {
+                    send(exchange, 200, gson.toJson(pool.metrics()).getBytes(StandardCharsets.UTF_8));
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+        return this;
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        if (!permits.tryAcquire()) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            send(exchange, 429, error("OVERLOADED", "Too many requests in flight"));
+            exchange.close();
+            return;
+        }
+        try {
+            String org = organisationOf(exchange);
+            if (org == null) {
+                unauthenticated(exchange);
+                return;
+            }
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(requestTimeout(exchange));
+            Response response = route(exchange, org, deadline);
+            send(exchange, response.status, response.body);
+        } catch (EndorseException e) {
+            BasilError code = BasilError.of(e);
+            send(exchange, statusOf(code, e), error(code.name(), BasilError.describe(e)));
+        } catch (NotCommittedException e) {
+            send(exchange, 409, error(e.getStatus().getCode().name(), e.getMessage()));
+        } catch (GatewayException e) {
+            send(exchange, statusOf(BasilError.UNKNOWN, e), error(e.getStatus().getCode().name(), e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, error(BasilError.INVALID_ARGUMENT.name(), e.getMessage()));
+        } catch (RuntimeException e) {
+            send(exchange, 500, error("INTERNAL", String.valueOf(e.getMessage())));
+        } finally {
+            permits.release();
+            exchange.close();
+        }
+    }
+
+    private Response route(final HttpExchange exchange, final String org, final long deadline) throws IOException,
+            GatewayException, NotCommittedException {
+        String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+        String method = exchange.getRequestMethod();
+        Contract contract = contracts.get(org);
+
+        if (path.length == 1 && "POST".equals(method)) {
+            JsonObject body = body(exchange);
+            return new Response(201, submit(contract, deadline, "CreateBasil",
+                    field(body, "qr"), field(body, "extraInfo")));
+        }
+        if (path.length == 2) {
+            String qr = path[1];
+            switch (method) {
+                case "GET":
+                    QueryBasilCache queryCache = queryCaches.get(org);
+                    if (queryCache != null && !"true".equals(queryParameter(exchange, "strict"))) {
+                        return ok(queryCache.query(qr,
+                                options -> options.withDeadlineAfter(remaining(deadline), TimeUnit.NANOSECONDS)));
+                    }
+                    return ok(evaluate(contract, deadline, "QueryBasil", qr));
+                case "PUT":
+                    JsonObject body = body(exchange);
+                    return ok(submit(contract, deadline, "UpdateBasil", qr,
+                            field(body, "extraInfo"), field(body, "gpsPosition")));
+                case "DELETE":
+                    return ok(submit(contract, deadline, "DeleteBasil", qr));
+                default:
+                    break;
+            }
+        }
+        if (path.length == 3 && "transfer".equals(path[2]) && "POST".equals(method)) {
+            return ok(submit(contract, deadline, "TransferBasil", path[1], field(body(exchange), "newOwner")));
+        }
+        if (path.length == 3 && "history".equals(path[2]) && "GET".equals(method)) {
+            return ok(evaluate(contract, deadline, "GetHistoryOfBasil", path[1]));
+        }
+        return new Response(404, error("NOT_FOUND", method + " " + exchange.getRequestURI().getPath()));
+    }
+
+    private static byte[] evaluate(final Contract contract, final long deadline, final String name,
+            final String... args) throws GatewayException {
+        return contract.newProposal(name)
+                .addArguments(args)
+                .build()
+                .evaluate(options -> options.withDeadlineAfter(remaining(deadline), TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Endorses, submits and waits for the commit of a transaction, each step bounded by what is
+     * left of the request deadline.
+     */
+    private static byte[] submit(final Contract contract, final long deadline, final String name,
+            final String... args) throws GatewayException, NotCommittedException {
+        SubmittedTransaction transaction = contract.newProposal(name)
+                .addArguments(args)
+                .build()
+                .endorse(options -> options.withDeadlineAfter(remaining(deadline), TimeUnit.NANOSECONDS))
+                .submitAsync(options -> options.withDeadlineAfter(remaining(deadline), TimeUnit.NANOSECONDS));
+        Status status = transaction.getStatus(
+                options -> options.withDeadlineAfter(remaining(deadline), TimeUnit.NANOSECONDS));
+        if (!status.isSuccessful()) {
+            throw new NotCommittedException(status);
+        }
+        return transaction.getResult();
+    }
+
+    private static long remaining(final long deadline) {
+        // an expired deadline still has to be positive to make the call fail fast
+        return Math.max(1, deadline - System.nanoTime());
+    }
+
+    /**
+     * @return MSP ID of the organisation the request acts as, or null if it is not authenticated
+     */
+    private String organisationOf(final HttpExchange exchange) {
+        if (tokens.isEmpty()) {
+            return DEFAULT_ORG;
+        }
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) {
+            return null;
+        }
+        return tokens.get(header.substring("Bearer ".length()).trim());
+    }
+
+    private void unauthenticated(final HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+        send(exchange, 401, error("UNAUTHENTICATED", "Missing or unknown API token"));
+    }
+
+    private long requestTimeout(final HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("X-Timeout-Ms");
+        if (header == null) {
+            return timeoutMillis;
+        }
+        try {
+            return Math.min(timeoutMillis, Math.max(1, Long.parseLong(header)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid X-Timeout-Ms " + header);
+        }
+    }
+
+    private static String queryParameter(final HttpExchange exchange, final String name) {
+        String query = exchange.getRequestURI().getQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            int eq = parameter.indexOf('=');
+            if (eq > 0 && parameter.substring(0, eq).equals(name)) {
+                return parameter.substring(eq + 1);
+            }
+        }
+        return null;
+    }
+
+    private static JsonObject body(final HttpExchange exchange) throws IOException {
+        try (Reader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            return JsonParser.parseReader(reader).getAsJsonObject();
+        } catch (IllegalStateException | JsonParseException e) {
+            throw new IllegalArgumentException("Request body must be a JSON object");
+        }
+    }
+
+    private static String field(final JsonObject body, final String name) {
+        if (!body.has(name) || body.get(name).isJsonNull()) {
+            throw new IllegalArgumentException("Missing field " + name);
+        }
+        return body.get(name).getAsString();
+    }
+
+    private static int statusOf(final BasilError code, final GatewayException e) {
+        switch (code) {
+            case BASIL_NOT_FOUND:
+            case LOT_NOT_FOUND:
+                return 404;
+            case BASIL_ALREADY_EXISTS:
+            case BASIL_IN_LOT:
+            case BASIL_NOT_IN_LOT:
+                return 409;
+            case NOT_AUTHORIZED:
+                return 403;
+            case INVALID_ARGUMENT:
+                return 400;
+            default:
+                switch (e.getStatus().getCode()) {
+                    case DEADLINE_EXCEEDED:
+                        return 504;
+                    case UNAVAILABLE:
+                        return 503;
+                    default:
+                        return 502;
+                }
+        }
+    }
+
+    private static Response ok(final byte[] result) {
+        return new Response(200, result);
+    }
+
+    private byte[] error(final String code, final String message) {
+        Map<String, String> error = new LinkedHashMap<>();
+        error.put("error", code);
+        error.put("message", message);
+        return gson.toJson(error).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void send(final HttpExchange exchange, final int status, final byte[] body) throws IOException {
+        // chaincode results that are not JSON, e.g. "Basil X deleted", are sent as plain text
+        boolean json = body.length > 0 && (body[0] == '{' || body[0] == '[');
+        exchange.getResponseHeaders().set("Content-Type",
+                json ? "application/json" : "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private static final class Response {
+        private final int status;
+        private final byte[] body;
+
+        Response(final int status, final byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,504 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hyperledger.fabric.client.Contract;
+import org.hyperledger.fabric.client.EndorseException;
+import org.hyperledger.fabric.client.GatewayException;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * Non-interactive ingestion of the nightly scan exports of the packing line.
+ *
+ * <p>The input is either CSV with a header row naming the columns {@code op}, {@code qr},
+ * {@code extraInfo}, {@code gpsPosition} and {@code newOwner}, or JSON lines ({@code .jsonl} or
+ * {@code .ndjson}) with the same properties. {@code op} is one of {@code create}, {@code update}
+ * and {@code transfer}; quoted CSV fields must not span lines.
+ *
+ * <p>The file is streamed: at most {@code maxPending} rows are read ahead of the rows that have
+ * completed. Consecutive creates are grouped into one CreateBasilBatch transaction, the other rows
+ * are one transaction each, and all of them go through a {@link SubmissionPipeline}. A row whose
+ * QR code still has an earlier row in flight is started only once that row has completed, so the
+ * rows of one basil are applied in file order while different basils proceed concurrently.
+ *
+ * <p>Rows the chaincode rejects, or that cannot be parsed, are appended to
+ * {@code <input>.rejects.jsonl} with their line number, error code and text. The number of leading
+ * lines that are fully processed is saved to {@code <input>.checkpoint.json} every few seconds,
+ * after the rejects up to it have been flushed, and a rerun skips those lines. Rows after the
+ * checkpoint that completed before an interruption are submitted again, so a create may then
+ * be rejected as already existing.
+ */
+public final class BasilIngest {
+
+    private static final long CHECKPOINT_INTERVAL_MILLIS = 2_000;
+
+    private static final String[] COLUMNS = {"op", "qr", "extraInfo", "gpsPosition", "newOwner"};
+
+    private final Contract contract;
+    private final int window;
+    private final int batchSize;
+    private final int maxPending;
+    private final Gson gson = new Gson();
+
+    /** Last transaction started for each QR code that is still in flight. */
+    private final Map<String, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong transactions = new AtomicLong();
+
+    private Semaphore pending;
+    private SubmissionPipeline pipeline;
+    private ExecutorService dispatcher;
+    private Progress progress;
+    private Writer rejects;
+
+    /**
+     * @param contract contract the rows are submitted to, normally the supplier's
+     * @param window maximum number of transactions in flight
+     * @param batchSize maximum number of creates per CreateBasilBatch transaction; it must not
+     *        exceed the chaincode's BASIL_MAX_BATCH_SIZE
+     * @param maxPending maximum number of rows read but not yet completed
+     */
+    public BasilIngest(final Contract contract, final int window, final int batchSize, final int maxPending) {
+        this.contract = contract;
+        this.window = window;
+        this.batchSize = batchSize;
+        this.maxPending = Math.max(maxPending, batchSize);
+    }
+
+    /**
+     * Ingests a file, resuming after its checkpoint if there is one.
+     *
+     * @param input CSV or JSON lines file
+     * @return row counts and the latency statistics of the pipeline
+     * @throws IOException if the input, checkpoint or reject file cannot be read or written
+     * @throws InterruptedException if interrupted while waiting for transactions
+     */
+    public Map<String, Object> ingest(final Path input) throws IOException, InterruptedException {
+        Path checkpointFile = input.resolveSibling(input.getFileName() + ".checkpoint.json");
+        Path rejectFile = input.resolveSibling(input.getFileName() + ".rejects.jsonl");
+        long resumeAfter = readCheckpoint(checkpointFile);
+        boolean csv = !isJsonLines(input);
+
+        pending = new Semaphore(maxPending);
+        progress = new Progress(resumeAfter);
+        dispatcher = VirtualThreads.newExecutor(window);
+        rejects = Files.newBufferedWriter(rejectFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        long lastCheckpoint = System.currentTimeMillis();
+
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+                SubmissionPipeline submissions = new SubmissionPipeline(contract, window, 5, Duration.ofMillis(50))) {
+            pipeline = submissions;
+            String[] header = csv ? null : COLUMNS;
+            List<Row> batch = new ArrayList<>();
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (header == null) {
+                    header = parseCsv(line);
+                    progress.done(lineNumber);
+                    continue;
+                }
+                if (lineNumber <= resumeAfter) {
+                    continue;
+                }
+                if (line.trim().isEmpty()) {
+                    progress.done(lineNumber);
+                    continue;
+                }
+                if (!pending.tryAcquire()) {
+                    // the open batch may hold the rows everything else is waiting for
+                    startBatch(batch);
+                    pending.acquire();
+                }
+
+                Row row;
+                try {
+                    row = csv ? Row.of(lineNumber, line, header, parseCsv(line)) : Row.of(lineNumber, line);
+                } catch (IllegalArgumentException e) {
+                    reject(lineNumber, line, BasilError.INVALID_ARGUMENT.name(), e.getMessage());
+                    finish(List.of(lineNumber));
+                    continue;
+                }
+
+                if ("create".equals(row.op) && !contains(batch, row.qr)) {
+                    batch.add(row);
+                    if (batch.size() >= batchSize) {
+                        startBatch(batch);
+                    }
+                } else {
+                    if (contains(batch, row.qr)) {
+                        startBatch(batch);
+                    }
+                    start(List.of(row));
+                }
+
+                if (System.currentTimeMillis() - lastCheckpoint >= CHECKPOINT_INTERVAL_MILLIS) {
+                    writeCheckpoint(checkpointFile);
+                    lastCheckpoint = System.currentTimeMillis();
+                }
+            }
+            startBatch(batch);
+            // every row holds a permit until it has completed
+            pending.acquire(maxPending);
+            pending.release(maxPending);
+
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("lines", lineNumber);
+            stats.put("resumedAfter", resumeAfter);
+            stats.put("applied", applied.get());
+            stats.put("rejected", rejected.get());
+            stats.put("transactions", transactions.get());
+            stats.put("pipeline", submissions.stats());
+            return stats;
+        } finally {
+            dispatcher.shutdown();
+            writeCheckpoint(checkpointFile);
+            rejects.close();
+        }
+    }
+
+    private void startBatch(final List<Row> batch) {
+        if (!batch.isEmpty()) {
+            start(new ArrayList<>(batch));
+            batch.clear();
+        }
+    }
+
+    /**
+     * Starts one transaction for the rows once the earlier rows of their QR codes have completed.
+     * A failed earlier row does not hold the later ones back; they are submitted and judged by the
+     * chaincode on their own.
+     */
+    private void start(final List<Row> rows) {
+        List<CompletableFuture<?>> before = new ArrayList<>();
+        for (Row row : rows) {
+            CompletableFuture<?> previous = inFlight.get(row.qr);
+            if (previous != null) {
+                before.add(previous);
+            }
+        }
+
+        CompletableFuture<byte[]> done;
+        if (before.isEmpty()) {
+            // submitting on the reader thread makes a full window stop the reading
+            done = submit(rows);
+        } else {
+            done = CompletableFuture.allOf(before.toArray(new CompletableFuture<?>[0]))
+                    .handle((ignored, error) -> null)
+                    .thenComposeAsync(ignored -> submit(rows), dispatcher);
+        }
+        for (Row row : rows) {
+            inFlight.put(row.qr, done);
+        }
+        transactions.incrementAndGet();
+
+        done.whenComplete((result, error) -> {
+            for (Row row : rows) {
+                inFlight.remove(row.qr, done);
+            }
+            try {
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    for (Row row : rows) {
+                        reject(row.line, row.text, codeOf(cause), messageOf(cause));
+                    }
+                } else if (rows.size() > 1 || "create".equals(rows.get(0).op)) {
+                    batchResults(rows, result);
+                } else {
+                    applied.incrementAndGet();
+                }
+            } finally {
+                List<Long> lines = new ArrayList<>(rows.size());
+                for (Row row : rows) {
+                    lines.add(row.line);
+                }
+                finish(lines);
+            }
+        });
+    }
+
+    private CompletableFuture<byte[]> submit(final List<Row> rows) {
+        Row first = rows.get(0);
+        try {
+            switch (first.op) {
+                case "create":
+                    JsonArray entries = new JsonArray();
+                    for (Row row : rows) {
+                        JsonObject entry = new JsonObject();
+                        entry.addProperty("qr", row.qr);
+                        entry.addProperty("extraInfo", row.value("extraInfo"));
+                        entries.add(entry);
+                    }
+                    return pipeline.submit("CreateBasilBatch", gson.toJson(entries));
+                case "update":
+                    return pipeline.submit("UpdateBasil", first.qr, first.value("extraInfo"),
+                            first.value("gpsPosition"));
+                default:
+                    return pipeline.submit("TransferBasil", first.qr, first.value("newOwner"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * CreateBasilBatch commits even when some of its plants are refused, so each entry's status
+     * decides whether its row was applied.
+     */
+    private void batchResults(final List<Row> rows, final byte[] result) {
+        JsonArray results = JsonParser.parseString(new String(result, StandardCharsets.UTF_8))
+                .getAsJsonObject().getAsJsonArray("results");
+        for (int i = 0; i < rows.size(); i++) {
+            String status = results.get(i).getAsJsonObject().get("status").getAsString();
+            if ("CREATED".equals(status)) {
+                applied.incrementAndGet();
+            } else {
+                reject(rows.get(i).line, rows.get(i).text, status, "Not created");
+            }
+        }
+    }
+
+    private void finish(final List<Long> lines) {
+        for (Long line : lines) {
+            progress.done(line);
+        }
+        pending.release(lines.size());
+    }
+
+    private synchronized void reject(final long line, final String text, final String code, final String message) {
+        rejected.incrementAndGet();
+        JsonObject entry = new JsonObject();
+        entry.addProperty("line", line);
+        entry.addProperty("error", code);
+        entry.addProperty("message", message);
+        entry.addProperty("row", text);
+        try {
+            rejects.write(gson.toJson(entry));
+            rejects.write('\n');
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot write reject file", e);
+        }
+    }
+
+    /**
+     * Flushes the rejects, then atomically replaces the checkpoint, so a checkpointed line never
+     * has a reject that was lost.
+     */
+    private void writeCheckpoint(final Path checkpointFile) throws IOException {
+        long line = progress.completedUpTo();
+        synchronized (this) {
+            rejects.flush();
+        }
+        Map<String, Object> checkpoint = new LinkedHashMap<>();
+        checkpoint.put("line", line);
+        checkpoint.put("applied", applied.get());
+        checkpoint.put("rejected", rejected.get());
+        Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        Files.write(temp, gson.toJson(checkpoint).getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private long readCheckpoint(final Path checkpointFile) throws IOException {
+        if (!Files.exists(checkpointFile)) {
+            return 0;
+        }
+        String json = new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8);
+        return JsonParser.parseString(json).getAsJsonObject().get("line").getAsLong();
+    }
+
+    private static boolean isJsonLines(final Path input) {
+        String name = input.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".jsonl") || name.endsWith(".ndjson");
+    }
+
+    private static boolean contains(final List<Row> rows, final String qr) {
+        for (Row row : rows) {
+            if (row.qr.equals(qr)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String codeOf(final Throwable error) {
+        if (error instanceof EndorseException) {
+            return BasilError.of((EndorseException) error).name();
+        }
+        if (error instanceof NotCommittedException) {
+            return ((NotCommittedException) error).getStatus().getCode().name();
+        }
+        if (error instanceof GatewayException) {
+            return ((GatewayException) error).getStatus().getCode().name();
+        }
+        return error.getClass().getSimpleName();
+    }
+
+    private static String messageOf(final Throwable error) {
+        if (error instanceof EndorseException) {
+            return BasilError.describe((EndorseException) error);
+        }
+        return String.valueOf(error.getMessage());
+    }
+
+    /**
+     * Splits one CSV line; fields may be quoted, with doubled quotes inside.
+     */
+    static String[] parseCsv(final String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    /**
+     * One row of the input with its line number and original text, which is kept for the reject
+     * file.
+     */
+    static final class Row {
+        private final long line;
+        private final String text;
+        private final String op;
+        private final String qr;
+        private final Map<String, String> values;
+
+        private Row(final long line, final String text, final Map<String, String> values) {
+            this.line = line;
+            this.text = text;
+            this.values = values;
+            String op = values.get("op");
+            this.op = op == null ? null : op.trim().toLowerCase(Locale.ROOT);
+            this.qr = values.get("qr");
+            if (!"create".equals(this.op) && !"update".equals(this.op) && !"transfer".equals(this.op)) {
+                throw new IllegalArgumentException("Unknown op " + op);
+            }
+            if (qr == null || qr.isEmpty()) {
+                throw new IllegalArgumentException("Missing qr");
+            }
+            if ("transfer".equals(this.op) && value("newOwner").isEmpty()) {
+                throw new IllegalArgumentException("Missing newOwner");
+            }
+        }
+
+        static Row of(final long line, final String text, final String[] header, final String[] fields) {
+            if (fields.length > header.length) {
+                throw new IllegalArgumentException("Expected at most " + header.length + " fields");
+            }
+            Map<String, String> values = new LinkedHashMap<>();
+            for (int i = 0; i < fields.length; i++) {
+                values.put(header[i].trim(), fields[i]);
+            }
+            return new Row(line, text, values);
+        }
+
+        static Row of(final long line, final String text) {
+            JsonObject object;
+            try {
+                object = JsonParser.parseString(text).getAsJsonObject();
+            } catch (IllegalStateException | JsonParseException e) {
+                throw new IllegalArgumentException("Row is not a JSON object");
+            }
+            Map<String, String> values = new LinkedHashMap<>();
+            for (Map.Entry<String, JsonElement> property : object.entrySet()) {
+                JsonElement value = property.getValue();
+                if (value.isJsonNull()) {
+                    continue;
+                }
+                // getAsString() throws for objects and guesses for arrays, so nested values are refused
+                if (!value.isJsonPrimitive()) {
+                    throw new IllegalArgumentException(
+                            "Field " + property.getKey() + " must be a string, number or boolean");
+                }
+                values.put(property.getKey(), value.getAsString());
+            }
+            return new Row(line, text, values);
+        }
+
+        String value(final String column) {
+            String value = values.get(column);
+            return value == null ? "" : value;
+        }
+    }
+
+    /**
+     * Tracks which lines have completed and the longest prefix of the file that has.
+     */
+    private static final class Progress {
+        private final TreeSet<Long> done = new TreeSet<>();
+        private long completedUpTo;
+
+        Progress(final long completedUpTo) {
+            this.completedUpTo = completedUpTo;
+        }
+
+        synchronized void done(final long line) {
+            if (line <= completedUpTo) {
+                return;
+            }
+            done.add(line);
+            while (done.remove(completedUpTo + 1)) {
+                completedUpTo++;
+            }
+        }
+
+        synchronized long completedUpTo() {
+            return completedUpTo;
+        }
+    }
+}
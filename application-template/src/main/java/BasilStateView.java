@@ -0,0 +1,326 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.hyperledger.fabric.client.ChaincodeEvent;
+import org.hyperledger.fabric.client.ChaincodeEventsRequest;
+import org.hyperledger.fabric.client.CloseableIterator;
+import org.hyperledger.fabric.client.FileCheckpointer;
+import org.hyperledger.fabric.client.GatewayRuntimeException;
+import org.hyperledger.fabric.client.Network;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * In-process view of the current basils, kept up to date from the chaincode events of the basil
+ * chaincode instead of polling QueryBasil.
+ *
+ * <p>The view is saved to a snapshot file every {@value #SNAPSHOT_INTERVAL} events, and the
+ * position of the last applied event is checkpointed only after its snapshot was written, so a
+ * restarted client resumes exactly where its snapshot ends. Without a snapshot the view is
+ * rebuilt from the first block; basils that have not changed since the chaincode started emitting
+ * events are not part of it.
+ */
+public final class BasilStateView implements AutoCloseable {
+
+    private static final int SNAPSHOT_INTERVAL = 500;
+
+    private static final long RECONNECT_DELAY_MILLIS = 5_000;
+
+    private final Network network;
+    private final String chaincodeName;
+    private final Path snapshotFile;
+    private final Path checkpointFile;
+    private final Gson gson = new Gson();
+
+    /** Latest known state by QR. The owner of lot members is looked up in {@link #lotOwners}. */
+    private final Map<String, BasilChange> basils = new HashMap<>();
+    private final Map<String, String> lotOwners = new HashMap<>();
+    private final List<Consumer<BasilChange>> listeners = new CopyOnWriteArrayList<>();
+
+    private FileCheckpointer checkpointer;
+    private ChaincodeEvent lastApplied;
+    private int sinceSnapshot;
+    private long appliedEvents;
+
+    private volatile boolean closed;
+    private volatile CloseableIterator<ChaincodeEvent> events;
+    private Thread worker;
+
+    /**
+     * @param network network the chaincode is deployed on
+     * @param chaincodeName name of the basil chaincode
+     * @param directory directory holding the snapshot and checkpoint files
+     */
+    public BasilStateView(final Network network, final String chaincodeName, final Path directory) {
+        this.network = network;
+        this.chaincodeName = chaincodeName;
+        this.snapshotFile = directory.resolve("basil-view-" + chaincodeName + ".json");
+        this.checkpointFile = directory.resolve("basil-view-" + chaincodeName + ".checkpoint.json");
+    }
+
+    /**
+     * Loads the snapshot and starts following chaincode events in a background thread.
+     *
+     * @return this view
+     * @throws IOException if the snapshot or checkpoint cannot be read
+     */
+    public synchronized BasilStateView start() throws IOException {
+        if (Files.exists(snapshotFile)) {
+            loadSnapshot();
+        } else {
+            // a checkpoint without the state it belongs to would skip events
+            Files.deleteIfExists(checkpointFile);
+        }
+        checkpointer = new FileCheckpointer(checkpointFile);
+        worker = new Thread(this::follow, "basil-state-view");
+        worker.setDaemon(true);
+        worker.start();
+        return this;
+    }
+
+    /**
+     * Registers a callback for every change the view applies, e.g. to invalidate a cache. It is
+     * called on the event thread and must not block.
+     *
+     * @param listener callback receiving each change
+     */
+    public void addListener(final Consumer<BasilChange> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param qr QR code of a basil
+     * @return the latest known state of the basil with its effective owner, or null if unknown
+     */
+    public synchronized BasilChange get(final String qr) {
+        BasilChange basil = basils.get(qr);
+        return basil == null ? null : resolved(basil);
+    }
+
+    /**
+     * @param ownerId MSP ID of an owner
+     * @return the basils the owner currently holds, directly or through a lot
+     */
+    public synchronized List<BasilChange> ownedBy(final String ownerId) {
+        List<BasilChange> owned = new ArrayList<>();
+        for (BasilChange basil : basils.values()) {
+            BasilChange current = resolved(basil);
+            if (ownerId.equals(current.getOwner())) {
+                owned.add(current);
+            }
+        }
+        return owned;
+    }
+
+    /**
+     * @return number of basils in the view
+     */
+    public synchronized int size() {
+        return basils.size();
+    }
+
+    /**
+     * @return number of events applied since the view was started
+     */
+    public synchronized long appliedEvents() {
+        return appliedEvents;
+    }
+
+    /**
+     * Stops following events and saves the view. Waits up to five seconds for the event thread.
+     *
+     * @throws IOException if the snapshot or checkpoint cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        CloseableIterator<ChaincodeEvent> current = events;
+        if (current != null) {
+            current.close();
+        }
+        if (worker != null) {
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (checkpointer != null) {
+                saveSnapshot();
+                checkpointer.close();
+            }
+        }
+    }
+
+    private void follow() {
+        while (!closed) {
+            ChaincodeEventsRequest request;
+            synchronized (this) {
+                request = network.newChaincodeEventsRequest(chaincodeName)
+                        .startBlock(0)
+                        .checkpoint(checkpointer)
+                        .build();
+            }
+            try (CloseableIterator<ChaincodeEvent> iterator = request.getEvents()) {
+                events = iterator;
+                while (iterator.hasNext()) {
+                    apply(iterator.next());
+                }
+            } catch (GatewayRuntimeException e) {
+                if (closed) {
+                    return;
+                }
+                System.err.println("Chaincode event stream failed, reconnecting: " + e.getMessage());
+            } catch (IOException e) {
+                System.err.println("Cannot save basil view snapshot: " + e.getMessage());
+            }
+            try {
+                synchronized (this) {
+                    // resume from the last applied event rather than the last snapshot
+                    saveSnapshot();
+                }
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+            } catch (IOException e) {
+                System.err.println("Cannot save basil view snapshot: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Applies the changes of an event. An event that cannot be read is logged and skipped, so the
+     * view still moves past it instead of stopping at it after every reconnect.
+     */
+    private synchronized void apply(final ChaincodeEvent event) throws IOException {
+        BasilChange[] changes = null;
+        try {
+            changes = gson.fromJson(new String(event.getPayload(), StandardCharsets.UTF_8), BasilChange[].class);
+        } catch (JsonParseException e) {
+            System.err.println("Skipping unreadable " + event.getEventName() + " event in block "
+                    + event.getBlockNumber() + ": " + e.getMessage());
+        }
+        if (changes != null) {
+            for (BasilChange change : changes) {
+                if (change == null || !apply(change)) {
+                    System.err.println("Skipping unknown change in " + event.getEventName() + " event of transaction "
+                            + event.getTransactionId());
+                    continue;
+                }
+                for (Consumer<BasilChange> listener : listeners) {
+                    listener.accept(change);
+                }
+            }
+        }
+        lastApplied = event;
+        appliedEvents++;
+        if (++sinceSnapshot >= SNAPSHOT_INTERVAL) {
+            saveSnapshot();
+        }
+    }
+
+    /**
+     * @return false if the change is not one the view knows how to apply
+     */
+    private boolean apply(final BasilChange change) {
+        if (change.getType() == null) {
+            return false;
+        }
+        switch (change.getType()) {
+            case BasilChange.DELETED:
+                basils.remove(change.getQr());
+                return true;
+            case BasilChange.LEG_RECORDED:
+                // pings only move the latest leg forward
+                BasilChange known = basils.get(change.getQr());
+                if (known != null && change.getLegTimestamp() != null && (known.getLegTimestamp() == null
+                        || known.getLegTimestamp() < change.getLegTimestamp())) {
+                    basils.put(change.getQr(), new BasilChange(known.getType(), known.getQr(), known.getOwner(),
+                            known.getLotId(), change.getLegTimestamp()));
+                }
+                return true;
+            case BasilChange.LOT_TRANSFERRED:
+                if (change.getLotId() == null) {
+                    return false;
+                }
+                lotOwners.put(change.getLotId(), change.getOwner());
+                return true;
+            case BasilChange.CREATED:
+            case BasilChange.UPDATED:
+            case BasilChange.TRANSFERRED:
+            case BasilChange.LOT_ASSIGNED:
+            case BasilChange.LOT_REMOVED:
+                if (change.getQr() == null) {
+                    return false;
+                }
+                if (change.getLotId() != null) {
+                    lotOwners.put(change.getLotId(), change.getOwner());
+                }
+                basils.put(change.getQr(), change);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private BasilChange resolved(final BasilChange basil) {
+        String lotOwner = basil.getLotId() == null ? null : lotOwners.get(basil.getLotId());
+        if (lotOwner == null || lotOwner.equals(basil.getOwner())) {
+            return basil;
+        }
+        return new BasilChange(basil.getType(), basil.getQr(), lotOwner, basil.getLotId(), basil.getLegTimestamp());
+    }
+
+    private void loadSnapshot() throws IOException {
+        try (Reader reader = Files.newBufferedReader(snapshotFile, StandardCharsets.UTF_8)) {
+            Snapshot snapshot = gson.fromJson(reader, Snapshot.class);
+            basils.putAll(snapshot.basils);
+            lotOwners.putAll(snapshot.lotOwners);
+        }
+    }
+
+    /**
+     * Writes the view atomically, then checkpoints the last event it contains.
+     */
+    private void saveSnapshot() throws IOException {
+        if (lastApplied == null || sinceSnapshot == 0) {
+            return;
+        }
+        Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            gson.toJson(new Snapshot(basils, lotOwners), writer);
+        }
+        Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        checkpointer.checkpointChaincodeEvent(lastApplied);
+        sinceSnapshot = 0;
+    }
+
+    private static final class Snapshot {
+        private final Map<String, BasilChange> basils;
+        private final Map<String, String> lotOwners;
+
+        Snapshot(final Map<String, BasilChange> basils, final Map<String, String> lotOwners) {
+            this.basils = basils;
+            this.lotOwners = lotOwners;
+        }
+    }
+}
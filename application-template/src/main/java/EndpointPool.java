@@ -0,0 +1,494 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hyperledger.fabric.client.Contract;
+import org.hyperledger.fabric.client.Gateway;
+import org.hyperledger.fabric.client.GatewayException;
+import org.hyperledger.fabric.client.Network;
+import org.hyperledger.fabric.client.Proposal;
+import org.hyperledger.fabric.client.Transaction;
+
+import io.grpc.Grpc;
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.TlsChannelCredentials;
+
+/**
+ * Gateway peers of every organisation, with one gRPC channel per peer shared by all the
+ * organisations connecting through it.
+ *
+ * <p>{@link #contract(String)} returns a {@link Contract} that spreads calls over the peers of the
+ * organisation: each evaluation, each {@code submitTransaction} and each proposal built with
+ * {@code newProposal} goes to the peer with the fewest outstanding evaluations, endorsements and
+ * submits. A proposal stays on the peer it was built for, since it is signed for that gateway.
+ * Evaluations that fail because the peer is unreachable or overloaded are retried on the next peer;
+ * submits are never retried, as the transaction may already have been ordered.
+ *
+ * <p>A peer is ejected once {@code ejectAfterFailures} calls or probes in a row fail for reasons of
+ * its own (unavailable, deadline exceeded, resource exhausted, or a probe slower than
+ * {@code ejectLatency}), or once the moving average of its evaluation, endorsement and submit
+ * latency exceeds {@code ejectLatency}. Chaincode rejections count as answers. Every peer is probed
+ * in the background by evaluating the chaincode's metadata; an ejected peer is taken back as soon
+ * as a probe is answered within {@code ejectLatency}. When every peer of an organisation is
+ * ejected, calls go to the least busy one anyway rather than failing.
+ *
+ * <p>Chaincode events are not balanced: {@link #network(String)} is the network of the first peer.
+ */
+public final class EndpointPool implements AutoCloseable {
+
+    /**
+     * Contract every Java chaincode provides next to its own; probing its metadata proves the peer
+     * serves the chaincode without invoking, and being counted as, a business transaction.
+     */
+    private static final String SYSTEM_CONTRACT = "org.hyperledger.fabric";
+
+    private static final String PROBE_TRANSACTION = "GetMetadata";
+
+    private static final Method ENDORSE = method(Proposal.class, "endorse");
+
+    /** Weight of the latest sample in the moving average latency of a peer. */
+    private static final double LATENCY_WEIGHT = 0.2;
+
+    /**
+     * A gateway peer: its address, the host name its TLS certificate is issued for and the CA
+     * certificate to verify it with.
+     */
+    public static final class Endpoint {
+        private final String address;
+        private final String authority;
+        private final Path tlsCertificate;
+
+        public Endpoint(final String address, final String authority, final Path tlsCertificate) {
+            this.address = address;
+            this.authority = authority;
+            this.tlsCertificate = tlsCertificate;
+        }
+
+        @Override
+        public String toString() {
+            return address + "/" + authority;
+        }
+    }
+
+    private final long ejectLatencyNanos;
+    private final int ejectAfterFailures;
+    private final Duration probeInterval;
+
+    private final Map<String, Peer> peers = new LinkedHashMap<>();
+    private final Map<String, List<Target>> organizations = new LinkedHashMap<>();
+    private final List<Gateway> gateways = new ArrayList<>();
+    private final AtomicInteger rotation = new AtomicInteger();
+    private final ScheduledExecutorService prober = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "endpoint-prober");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param ejectLatency moving average latency above which a peer is ejected
+     * @param ejectAfterFailures number of consecutive failed calls after which a peer is ejected
+     * @param probeInterval time between two probes of every peer
+     */
+    public EndpointPool(final Duration ejectLatency, final int ejectAfterFailures, final Duration probeInterval) {
+        this.ejectLatencyNanos = ejectLatency.toNanos();
+        this.ejectAfterFailures = ejectAfterFailures;
+        this.probeInterval = probeInterval;
+    }
+
+    /**
+     * Connects an organisation to each of its gateway peers. Peers already connected for another
+     * organisation reuse their channel.
+     *
+     * @param mspId MSP ID of the organisation
+     * @param builder gateway settings of the organisation: identity, signer and call options
+     * @param endpoints gateway peers of the organisation, at least one
+     * @param channelName channel the chaincode is deployed on
+     * @param chaincodeName name of the chaincode
+     * @return this pool
+     * @throws IOException if the TLS certificate of a peer cannot be read
+     */
+    public synchronized EndpointPool connect(final String mspId, final Gateway.Builder builder,
+            final List<Endpoint> endpoints, final String channelName, final String chaincodeName) throws IOException {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("No gateway peer for " + mspId);
+        }
+        List<Target> targets = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            Peer peer = peers.get(endpoint.address);
+            if (peer == null) {
+                peer = new Peer(endpoint.address, Grpc.newChannelBuilder(endpoint.address,
+                        TlsChannelCredentials.newBuilder().trustManager(endpoint.tlsCertificate.toFile()).build())
+                        .overrideAuthority(endpoint.authority)
+                        .build());
+                peers.put(endpoint.address, peer);
+            }
+            Gateway gateway = builder.connection(peer.channel).connect();
+            gateways.add(gateway);
+            Network network = gateway.getNetwork(channelName);
+            Contract contract = network.getContract(chaincodeName);
+            if (peer.probe == null) {
+                peer.probe = network.getContract(chaincodeName, SYSTEM_CONTRACT);
+            }
+            targets.add(new Target(peer, network, contract));
+        }
+        organizations.put(mspId, targets);
+        return this;
+    }
+
+    /**
+     * Starts probing the peers.
+     *
+     * @return this pool
+     */
+    public EndpointPool start() {
+        long interval = probeInterval.toMillis();
+        prober.scheduleWithFixedDelay(this::probeAll, interval, interval, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * @param mspId MSP ID of a connected organisation
+     * @return contract whose calls are spread over the peers of the organisation
+     */
+    public Contract contract(final String mspId) {
+        List<Target> targets = targetsOf(mspId);
+        return (Contract) Proxy.newProxyInstance(Contract.class.getClassLoader(), new Class<?>[] {Contract.class},
+                (proxy, method, args) -> route(proxy, targets, method, args));
+    }
+
+    /**
+     * @param mspId MSP ID of a connected organisation
+     * @return network of the first peer of the organisation, for chaincode events
+     */
+    public Network network(final String mspId) {
+        return targetsOf(mspId).get(0).network;
+    }
+
+    /**
+     * @return state, call counts and latency of every peer, by address
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        for (Peer peer : peersSnapshot()) {
+            metrics.put(peer.address, peer.metrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * Closes the gateways and waits up to five seconds for each channel to terminate.
+     */
+    @Override
+    public void close() {
+        prober.shutdownNow();
+        List<Peer> closing;
+        synchronized (this) {
+            for (Gateway gateway : gateways) {
+                gateway.close();
+            }
+            gateways.clear();
+            closing = new ArrayList<>(peers.values());
+            peers.clear();
+        }
+        for (Peer peer : closing) {
+            try {
+                peer.channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private synchronized List<Target> targetsOf(final String mspId) {
+        List<Target> targets = organizations.get(mspId);
+        if (targets == null) {
+            throw new IllegalArgumentException("Unknown organisation " + mspId);
+        }
+        return targets;
+    }
+
+    private synchronized List<Peer> peersSnapshot() {
+        return new ArrayList<>(peers.values());
+    }
+
+    private Object route(final Object proxy, final List<Target> targets, final Method method, final Object[] args)
+            throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return objectMethod(proxy, method, args);
+        }
+        if ("submitTransaction".equals(method.getName())) {
+            Target target = select(targets, Set.of());
+            return submitTransaction(target, args);
+        }
+        if (!method.getName().startsWith("evaluate")) {
+            Target target = select(targets, Set.of());
+            return call(target.peer, target.contract, method, args);
+        }
+        Set<Peer> tried = new HashSet<>();
+        while (true) {
+            Target target = select(targets, tried);
+            try {
+                return call(target.peer, target.contract, method, args);
+            } catch (GatewayException e) {
+                tried.add(target.peer);
+                if (!isEndpointFailure(e) || tried.size() == targets.size()) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs {@link Contract#submitTransaction} as its endorse and submit steps, so they are
+     * accounted like those of a proposal built with {@code newProposal}.
+     */
+    private byte[] submitTransaction(final Target target, final Object[] args) throws Throwable {
+        Proposal.Builder builder = target.contract.newProposal((String) args[0]);
+        if (args.length > 1 && args[1] instanceof String[]) {
+            builder.addArguments((String[]) args[1]);
+        } else if (args.length > 1) {
+            builder.addArguments((byte[][]) args[1]);
+        }
+        Transaction transaction = (Transaction) call(target.peer, builder.build(), ENDORSE, null);
+        return transaction.submit();
+    }
+
+    /**
+     * @return the healthy peer with the fewest outstanding calls, or the least busy ejected one if
+     *         none is healthy; ties go round robin
+     */
+    private Target select(final List<Target> targets, final Set<Peer> excluded) {
+        int start = Math.floorMod(rotation.getAndIncrement(), targets.size());
+        Target best = null;
+        for (int i = 0; i < targets.size(); i++) {
+            Target target = targets.get((start + i) % targets.size());
+            if (excluded.contains(target.peer)) {
+                continue;
+            }
+            if (best == null
+                    || !target.peer.ejected && best.peer.ejected
+                    || target.peer.ejected == best.peer.ejected
+                            && target.peer.outstanding.get() < best.peer.outstanding.get()) {
+                best = target;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Calls a method of a gateway object on a peer. Objects it returns, such as proposals and
+     * transactions, are wrapped so that their own calls are accounted to the same peer.
+     */
+    private Object call(final Peer peer, final Object target, final Method method, final Object[] args)
+            throws Throwable {
+        if (!isRemote(method)) {
+            return wrap(peer, method, invoke(target, method, args));
+        }
+        // commit waits take a block interval whatever the peer's health, so only proposals and
+        // the hand-off of endorsed transactions are timed
+        boolean proposal = method.getName().startsWith("evaluate") || "endorse".equals(method.getName())
+                || "submitAsync".equals(method.getName());
+        if (proposal) {
+            peer.outstanding.incrementAndGet();
+        }
+        long start = System.nanoTime();
+        try {
+            Object result = invoke(target, method, args);
+            peer.completed(proposal, System.nanoTime() - start, false);
+            return wrap(peer, method, result);
+        } catch (GatewayException e) {
+            peer.completed(proposal, System.nanoTime() - start, isEndpointFailure(e));
+            throw e;
+        } finally {
+            if (proposal) {
+                peer.outstanding.decrementAndGet();
+            }
+        }
+    }
+
+    private Object wrap(final Peer peer, final Method method, final Object value) {
+        Class<?> type = method.getReturnType();
+        if (value == null || !type.isInterface() || !type.getName().startsWith("org.hyperledger.fabric.client.")) {
+            return value;
+        }
+        InvocationHandler handler = (proxy, m, args) -> m.getDeclaringClass() == Object.class
+                ? objectMethod(proxy, m, args)
+                : call(peer, value, m, args);
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    private static Method method(final Class<?> type, final String name, final Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Object invoke(final Object target, final Method method, final Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Object objectMethod(final Object proxy, final Method method, final Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return "EndpointPool proxy@" + Integer.toHexString(System.identityHashCode(proxy));
+        }
+    }
+
+    /**
+     * @return whether a method talks to the peer, which the gateway API marks by its checked
+     *         exceptions
+     */
+    private static boolean isRemote(final Method method) {
+        for (Class<?> exception : method.getExceptionTypes()) {
+            if (GatewayException.class.isAssignableFrom(exception)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isEndpointFailure(final GatewayException e) {
+        Status.Code code = e.getStatus().getCode();
+        return code == Status.Code.UNAVAILABLE || code == Status.Code.DEADLINE_EXCEEDED
+                || code == Status.Code.RESOURCE_EXHAUSTED;
+    }
+
+    private void probeAll() {
+        for (Peer peer : peersSnapshot()) {
+            long start = System.nanoTime();
+            boolean answered;
+            try {
+                peer.probe.newProposal(PROBE_TRANSACTION)
+                        .build()
+                        .evaluate(options -> options.withDeadlineAfter(2 * ejectLatencyNanos, TimeUnit.NANOSECONDS));
+                answered = true;
+            } catch (GatewayException e) {
+                answered = !isEndpointFailure(e);
+            } catch (RuntimeException e) {
+                answered = false;
+            }
+            peer.probed(answered, System.nanoTime() - start);
+        }
+    }
+
+    private static final class Target {
+        private final Peer peer;
+        private final Network network;
+        private final Contract contract;
+
+        Target(final Peer peer, final Network network, final Contract contract) {
+            this.peer = peer;
+            this.network = network;
+            this.contract = contract;
+        }
+    }
+
+    private final class Peer {
+        private final String address;
+        private final ManagedChannel channel;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final LatencyStats latency = new LatencyStats();
+        private Contract probe;
+
+        private volatile boolean ejected;
+        private long calls;
+        private long failures;
+        private long ejections;
+        private int consecutiveFailures;
+        private double averageNanos;
+        private long lastProbeNanos;
+
+        Peer(final String address, final ManagedChannel channel) {
+            this.address = address;
+            this.channel = channel;
+        }
+
+        synchronized void completed(final boolean proposal, final long nanos, final boolean failed) {
+            calls++;
+            if (failed) {
+                failures++;
+                failed();
+                return;
+            }
+            consecutiveFailures = 0;
+            if (proposal) {
+                latency.record(nanos);
+                averageNanos = averageNanos == 0 ? nanos : averageNanos + LATENCY_WEIGHT * (nanos - averageNanos);
+                if (averageNanos > ejectLatencyNanos) {
+                    eject();
+                }
+            }
+        }
+
+        synchronized void probed(final boolean answered, final long nanos) {
+            lastProbeNanos = nanos;
+            if (!answered || nanos > ejectLatencyNanos) {
+                // one slow probe, e.g. behind a garbage collection, must not eject the peer
+                failed();
+            } else {
+                consecutiveFailures = 0;
+                if (ejected) {
+                    // start over from the probe, not from the latency that got the peer ejected
+                    averageNanos = nanos;
+                    ejected = false;
+                }
+            }
+        }
+
+        private void failed() {
+            if (++consecutiveFailures >= ejectAfterFailures) {
+                eject();
+            }
+        }
+
+        private void eject() {
+            if (!ejected) {
+                ejected = true;
+                ejections++;
+            }
+        }
+
+        synchronized Map<String, Object> metrics() {
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            metrics.put("healthy", !ejected);
+            metrics.put("outstanding", outstanding.get());
+            metrics.put("calls", calls);
+            metrics.put("failures", failures);
+            metrics.put("ejections", ejections);
+            metrics.put("averageMillis", averageNanos / 1e6);
+            metrics.put("lastProbeMillis", lastProbeNanos / 1e6);
+            metrics.put("proposals", latency.snapshot());
+            return metrics;
+        }
+    }
+}
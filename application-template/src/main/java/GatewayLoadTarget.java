@@ -0,0 +1,79 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import org.hyperledger.fabric.client.Contract;
+import org.hyperledger.fabric.client.GatewayException;
+import org.hyperledger.fabric.client.GatewayRuntimeException;
+import org.hyperledger.fabric.client.Status;
+import org.hyperledger.fabric.client.SubmittedTransaction;
+import org.hyperledger.fabric.client.Transaction;
+import org.hyperledger.fabric.protos.peer.TxValidationCode;
+
+/**
+ * Runs load against the deployed chaincode: writes as the supplier, reads as the supermarket,
+ * like the interactive menu does. Failed transactions are not retried, so conflicts show up in
+ * the report.
+ */
+public final class GatewayLoadTarget implements LoadTarget {
+
+    private final Contract writer;
+    private final Contract reader;
+
+    /**
+     * @param writer contract creates and updates are submitted to
+     * @param reader contract queries are evaluated on
+     */
+    public GatewayLoadTarget(final Contract writer, final Contract reader) {
+        this.writer = writer;
+        this.reader = reader;
+    }
+
+    @Override
+    public Outcome run(final Operation operation, final String qr, final long[] phases) {
+        long t0 = System.nanoTime();
+        try {
+            if (operation == Operation.QUERY) {
+                reader.evaluateTransaction(operation.getTransaction(), qr);
+                phases[ENDORSE] = System.nanoTime() - t0;
+                return Outcome.OK;
+            }
+
+            String[] args = operation == Operation.CREATE
+                    ? new String[] {qr, "load test"}
+                    : new String[] {qr, "load test", "44.4056,8.9463"};
+            Transaction transaction = writer.newProposal(operation.getTransaction())
+                    .addArguments(args)
+                    .build()
+                    .endorse();
+            long t1 = System.nanoTime();
+            phases[ENDORSE] = t1 - t0;
+            SubmittedTransaction submitted = transaction.submitAsync();
+            long t2 = System.nanoTime();
+            phases[SUBMIT] = t2 - t1;
+            Status status = submitted.getStatus();
+            long t3 = System.nanoTime();
+            phases[COMMIT] = t3 - t2;
+            if (status.isSuccessful()) {
+                return Outcome.OK;
+            }
+            TxValidationCode code = status.getCode();
+            return code == TxValidationCode.MVCC_READ_CONFLICT || code == TxValidationCode.PHANTOM_READ_CONFLICT
+                    ? Outcome.MVCC_CONFLICT
+                    : Outcome.COMMIT_FAILED;
+        } catch (GatewayException e) {
+            // endorse and evaluate errors both carry the chaincode error code
+            if (BasilError.of(e) == BasilError.UNKNOWN) {
+                return Outcome.ERROR;
+            }
+            if (phases[ENDORSE] == 0) {
+                // refused while endorsing, which took until now
+                phases[ENDORSE] = System.nanoTime() - t0;
+            }
+            return Outcome.REJECTED;
+        } catch (GatewayRuntimeException e) {
+            // e.g. the connection closed while waiting for the commit status
+            return Outcome.ERROR;
+        }
+    }
+}
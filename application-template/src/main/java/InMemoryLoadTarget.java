@@ -0,0 +1,84 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stand-in for the network, so load runs can be repeated without one. It keeps a versioned
+ * key-value store and validates transactions the way a peer does: endorsement reads the version
+ * of the QR key and applies the chaincode's checks, commit fails with an MVCC conflict if the
+ * version changed in between. Each phase takes a configurable mean delay, jittered by up to 50%
+ * either way.
+ */
+public final class InMemoryLoadTarget implements LoadTarget {
+
+    /** Version of each existing QR key. */
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+
+    private final long endorseNanos;
+    private final long submitNanos;
+    private final long commitNanos;
+
+    /**
+     * @param endorseMillis mean endorsement and evaluation delay
+     * @param submitMillis mean delay of sending to the orderer
+     * @param commitMillis mean delay until the block with the transaction is committed
+     */
+    public InMemoryLoadTarget(final double endorseMillis, final double submitMillis, final double commitMillis) {
+        this.endorseNanos = (long) (endorseMillis * 1_000_000);
+        this.submitNanos = (long) (submitMillis * 1_000_000);
+        this.commitNanos = (long) (commitMillis * 1_000_000);
+    }
+
+    @Override
+    public Outcome run(final Operation operation, final String qr, final long[] phases) {
+        long t0 = System.nanoTime();
+        pause(endorseNanos);
+        Long readVersion = versions.get(qr);
+        phases[ENDORSE] = System.nanoTime() - t0;
+        if (operation == Operation.QUERY) {
+            return readVersion == null ? Outcome.REJECTED : Outcome.OK;
+        }
+        if ((operation == Operation.CREATE) != (readVersion == null)) {
+            // BASIL_ALREADY_EXISTS or BASIL_NOT_FOUND
+            return Outcome.REJECTED;
+        }
+
+        long t1 = System.nanoTime();
+        pause(submitNanos);
+        long t2 = System.nanoTime();
+        pause(commitNanos);
+        Outcome outcome = commit(qr, readVersion);
+        long t3 = System.nanoTime();
+
+        phases[SUBMIT] = t2 - t1;
+        phases[COMMIT] = t3 - t2;
+        return outcome;
+    }
+
+    /**
+     * Applies the write if the key is still at the version endorsement read.
+     */
+    private Outcome commit(final String qr, final Long readVersion) {
+        if (readVersion == null) {
+            return versions.putIfAbsent(qr, 1L) == null ? Outcome.OK : Outcome.MVCC_CONFLICT;
+        }
+        return versions.replace(qr, readVersion, readVersion + 1) ? Outcome.OK : Outcome.MVCC_CONFLICT;
+    }
+
+    private static void pause(final long meanNanos) {
+        if (meanNanos <= 0) {
+            return;
+        }
+        long nanos = meanNanos / 2 + ThreadLocalRandom.current().nextLong(meanNanos + 1);
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Thread-safe latency recorder with fixed memory, on the same HdrHistogram settings as the load
+ * generator: microseconds up to an hour with three significant digits.
+ */
+public final class LatencyStats {
+
+    private static final long HIGHEST_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    private final Histogram histogram = new ConcurrentHistogram(HIGHEST_MICROS, 3);
+
+    /**
+     * @param nanos duration of one operation
+     */
+    public void record(final long nanos) {
+        histogram.recordValue(Math.min(HIGHEST_MICROS, Math.max(1, nanos / 1000)));
+    }
+
+    public long count() {
+        return histogram.getTotalCount();
+    }
+
+    /**
+     * @return count, mean, p50, p95, p99 and max in milliseconds
+     */
+    public Map<String, Object> snapshot() {
+        // a copy, so the values are consistent while other threads keep recording
+        Histogram copy = histogram.copy();
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("count", copy.getTotalCount());
+        snapshot.put("meanMillis", copy.getMean() / 1000);
+        snapshot.put("p50Millis", copy.getValueAtPercentile(50) / 1000.0);
+        snapshot.put("p95Millis", copy.getValueAtPercentile(95) / 1000.0);
+        snapshot.put("p99Millis", copy.getValueAtPercentile(99) / 1000.0);
+        snapshot.put("maxMillis", copy.getMaxValue() / 1000.0);
+        return snapshot;
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Load generator and latency benchmark for the basil chaincode.
+ *
+ * <p>A number of workers run a weighted mix of CreateBasil, UpdateBasil and QueryBasil against a
+ * {@link LoadTarget}. Without a target rate every worker starts its next operation as soon as the
+ * previous one ended (closed loop). With a target rate operations are scheduled at fixed
+ * intervals and their latency is measured from the scheduled start, so a stalled target is not
+ * hidden by the workers slowing down with it.
+ *
+ * <p>Latency is recorded in HdrHistograms per operation and per phase (endorse, submit, commit)
+ * after the warm-up. The report is a JSON file with the percentiles, throughput, rejection,
+ * commit failure and MVCC conflict rates of each operation.
+ */
+public final class LoadGenerator {
+
+    /** Latencies are recorded in microseconds, up to an hour, with three significant digits. */
+    private static final long HIGHEST_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    private static final String[] PHASES = {"endorse", "submit", "commit"};
+
+    private final LoadTarget target;
+    private final Options options;
+    private final String runPrefix = "load-" + Long.toString(System.currentTimeMillis(), 36) + "-";
+
+    private final Map<LoadTarget.Operation, Stats> stats = new EnumMap<>(LoadTarget.Operation.class);
+    private final AtomicLong nextQr = new AtomicLong();
+    private final AtomicLong scheduled = new AtomicLong();
+
+    /** QR codes created so far, which updates and queries pick from. */
+    private final List<String> created = new ArrayList<>();
+
+    private long startNanos;
+    private long measureFromNanos;
+    private long endNanos;
+
+    public LoadGenerator(final LoadTarget target, final Options options) {
+        this.target = target;
+        this.options = options;
+        for (LoadTarget.Operation operation : LoadTarget.Operation.values()) {
+            stats.put(operation, new Stats());
+        }
+    }
+
+    /**
+     * Runs the load, writes the report and returns it.
+     *
+     * @return the report
+     * @throws IOException if the report cannot be written
+     * @throws InterruptedException if interrupted while the workers run
+     * @throws IllegalStateException if the workers do not finish within ten minutes of the end of the run
+     */
+    public Map<String, Object> run() throws IOException, InterruptedException {
+        startNanos = System.nanoTime();
+        measureFromNanos = startNanos + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+        endNanos = measureFromNanos + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+        Instant startedAt = Instant.now();
+
+        ExecutorService workers = Executors.newFixedThreadPool(options.concurrency);
+        for (int i = 0; i < options.concurrency; i++) {
+            workers.execute(this::work);
+        }
+        workers.shutdown();
+        if (!workers.awaitTermination(options.warmupSeconds + options.durationSeconds + 600, TimeUnit.SECONDS)) {
+            // operations still hanging must not keep recording into the report
+            workers.shutdownNow();
+            throw new IllegalStateException("Load workers did not finish within 10 minutes of the end of the run");
+        }
+
+        Map<String, Object> report = report(startedAt);
+        try (Writer writer = Files.newBufferedWriter(options.report, StandardCharsets.UTF_8)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(report, writer);
+        }
+        return report;
+    }
+
+    private void work() {
+        long[] phases = new long[PHASES.length];
+        while (true) {
+            long start;
+            if (options.rate > 0) {
+                start = startNanos + (long) (scheduled.getAndIncrement() * 1e9 / options.rate);
+                if (start >= endNanos) {
+                    return;
+                }
+                long wait = start - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            } else {
+                start = System.nanoTime();
+                if (start >= endNanos) {
+                    return;
+                }
+            }
+
+            LoadTarget.Operation operation = options.pick();
+            String qr = operation == LoadTarget.Operation.CREATE ? null : existingQr();
+            if (qr == null) {
+                // nothing to read or update yet
+                operation = LoadTarget.Operation.CREATE;
+                qr = runPrefix + nextQr.getAndIncrement();
+            }
+
+            phases[LoadTarget.ENDORSE] = 0;
+            phases[LoadTarget.SUBMIT] = 0;
+            phases[LoadTarget.COMMIT] = 0;
+            LoadTarget.Outcome outcome = target.run(operation, qr, phases);
+            long end = System.nanoTime();
+
+            if (operation == LoadTarget.Operation.CREATE && outcome == LoadTarget.Outcome.OK) {
+                synchronized (created) {
+                    created.add(qr);
+                }
+            }
+            if (start >= measureFromNanos) {
+                stats.get(operation).record(outcome, end - start, phases);
+            }
+        }
+    }
+
+    /**
+     * @return a created QR code, drawn from the hottest {@code hotKeys} ones if set, or null
+     */
+    private String existingQr() {
+        synchronized (created) {
+            if (created.isEmpty()) {
+                return null;
+            }
+            int bound = options.hotKeys > 0 ? Math.min(options.hotKeys, created.size()) : created.size();
+            return created.get(ThreadLocalRandom.current().nextInt(bound));
+        }
+    }
+
+    private Map<String, Object> report(final Instant startedAt) {
+        double seconds = options.durationSeconds;
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("target", options.target);
+        report.put("startedAt", startedAt.toString());
+        report.put("mode", options.rate > 0 ? "rate" : "closed-loop");
+        report.put("concurrency", options.concurrency);
+        report.put("targetRate", options.rate);
+        report.put("warmupSeconds", options.warmupSeconds);
+        report.put("durationSeconds", options.durationSeconds);
+        report.put("hotKeys", options.hotKeys);
+        report.put("mix", options.mix);
+
+        Map<String, Object> operations = new LinkedHashMap<>();
+        long total = 0;
+        long ok = 0;
+        for (Map.Entry<LoadTarget.Operation, Stats> entry : stats.entrySet()) {
+            Stats operation = entry.getValue();
+            total += operation.latency.getTotalCount();
+            ok += operation.counts[LoadTarget.Outcome.OK.ordinal()].get();
+            operations.put(entry.getKey().getTransaction(), operation.report(seconds));
+        }
+        report.put("operations", operations);
+        report.put("throughputPerSecond", ok / seconds);
+        report.put("attemptsPerSecond", total / seconds);
+        return report;
+    }
+
+    /**
+     * Histograms and outcome counts of one operation.
+     */
+    private static final class Stats {
+        private final Histogram latency = new ConcurrentHistogram(HIGHEST_MICROS, 3);
+        private final Histogram[] phases = new Histogram[PHASES.length];
+        private final AtomicLong[] counts = new AtomicLong[LoadTarget.Outcome.values().length];
+
+        Stats() {
+            for (int i = 0; i < phases.length; i++) {
+                phases[i] = new ConcurrentHistogram(HIGHEST_MICROS, 3);
+            }
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new AtomicLong();
+            }
+        }
+
+        void record(final LoadTarget.Outcome outcome, final long nanos, final long[] phaseNanos) {
+            counts[outcome.ordinal()].incrementAndGet();
+            latency.recordValue(micros(nanos));
+            for (int i = 0; i < phases.length; i++) {
+                if (phaseNanos[i] > 0) {
+                    phases[i].recordValue(micros(phaseNanos[i]));
+                }
+            }
+        }
+
+        Map<String, Object> report(final double seconds) {
+            long attempts = latency.getTotalCount();
+            long committedOrFailed = counts[LoadTarget.Outcome.OK.ordinal()].get()
+                    + counts[LoadTarget.Outcome.MVCC_CONFLICT.ordinal()].get()
+                    + counts[LoadTarget.Outcome.COMMIT_FAILED.ordinal()].get();
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("attempts", attempts);
+            for (LoadTarget.Outcome outcome : LoadTarget.Outcome.values()) {
+                report.put(outcome.name().toLowerCase(Locale.ROOT), counts[outcome.ordinal()].get());
+            }
+            report.put("throughputPerSecond", counts[LoadTarget.Outcome.OK.ordinal()].get() / seconds);
+            // both rates are relative to the transactions that reached validation
+            report.put("mvccConflictRate", rate(counts[LoadTarget.Outcome.MVCC_CONFLICT.ordinal()].get(),
+                    committedOrFailed));
+            report.put("commitFailureRate", rate(counts[LoadTarget.Outcome.MVCC_CONFLICT.ordinal()].get()
+                    + counts[LoadTarget.Outcome.COMMIT_FAILED.ordinal()].get(), committedOrFailed));
+            report.put("latencyMillis", percentiles(latency));
+            Map<String, Object> phaseReport = new LinkedHashMap<>();
+            for (int i = 0; i < phases.length; i++) {
+                if (phases[i].getTotalCount() > 0) {
+                    phaseReport.put(PHASES[i], percentiles(phases[i]));
+                }
+            }
+            report.put("phasesMillis", phaseReport);
+            return report;
+        }
+
+        private static Map<String, Object> percentiles(final Histogram histogram) {
+            Map<String, Object> percentiles = new LinkedHashMap<>();
+            percentiles.put("count", histogram.getTotalCount());
+            percentiles.put("mean", histogram.getMean() / 1000);
+            percentiles.put("p50", histogram.getValueAtPercentile(50) / 1000.0);
+            percentiles.put("p90", histogram.getValueAtPercentile(90) / 1000.0);
+            percentiles.put("p99", histogram.getValueAtPercentile(99) / 1000.0);
+            percentiles.put("p99.9", histogram.getValueAtPercentile(99.9) / 1000.0);
+            percentiles.put("max", histogram.getMaxValue() / 1000.0);
+            return percentiles;
+        }
+
+        private static double rate(final long part, final long whole) {
+            return whole == 0 ? 0 : (double) part / whole;
+        }
+
+        private static long micros(final long nanos) {
+            return Math.min(HIGHEST_MICROS, Math.max(1, nanos / 1000));
+        }
+    }
+
+    /**
+     * Command line options of a load run, e.g.
+     * {@code --load --target memory --concurrency 32 --duration 60 --mix create=20,update=30,query=50}.
+     */
+    public static final class Options {
+        private String target = "gateway";
+        private int concurrency = 16;
+        private double rate;
+        private long warmupSeconds = 5;
+        private long durationSeconds = 30;
+        private int hotKeys;
+        private final Map<String, Integer> mix = new LinkedHashMap<>();
+        private Path report = Paths.get("load-report.json");
+        private double[] memoryLatencyMillis = {5, 2, 100};
+
+        private final LoadTarget.Operation[] operations = LoadTarget.Operation.values();
+        private final int[] cumulativeWeights = new int[operations.length];
+
+        /**
+         * @param args command line, starting with {@code --load}
+         * @return the parsed options
+         * @throws IllegalArgumentException if an option is unknown or malformed
+         */
+        public static Options parse(final String[] args) {
+            Options options = new Options();
+            String mix = "create=20,update=30,query=50";
+            for (int i = 1; i < args.length; i++) {
+                String name = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value of " + name);
+                }
+                String value = args[++i];
+                switch (name) {
+                    case "--target":
+                        if (!"gateway".equals(value) && !"memory".equals(value)) {
+                            throw new IllegalArgumentException("Target must be gateway or memory");
+                        }
+                        options.target = value;
+                        break;
+                    case "--concurrency":
+                        options.concurrency = Integer.parseInt(value);
+                        break;
+                    case "--rate":
+                        options.rate = Double.parseDouble(value);
+                        break;
+                    case "--warmup":
+                        options.warmupSeconds = Long.parseLong(value);
+                        break;
+                    case "--duration":
+                        options.durationSeconds = Long.parseLong(value);
+                        break;
+                    case "--hot-keys":
+                        options.hotKeys = Integer.parseInt(value);
+                        break;
+                    case "--mix":
+                        mix = value;
+                        break;
+                    case "--report":
+                        options.report = Paths.get(value);
+                        break;
+                    case "--memory-latency-ms":
+                        String[] parts = value.split(",");
+                        if (parts.length != 3) {
+                            throw new IllegalArgumentException("Expected endorse,submit,commit latencies");
+                        }
+                        for (int p = 0; p < 3; p++) {
+                            options.memoryLatencyMillis[p] = Double.parseDouble(parts[p].trim());
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + name);
+                }
+            }
+            options.parseMix(mix);
+            return options;
+        }
+
+        public boolean isInMemory() {
+            return "memory".equals(target);
+        }
+
+        /**
+         * @return the in-memory target with the configured phase latencies
+         */
+        public LoadTarget inMemoryTarget() {
+            return new InMemoryLoadTarget(memoryLatencyMillis[0], memoryLatencyMillis[1], memoryLatencyMillis[2]);
+        }
+
+        private void parseMix(final String value) {
+            for (String part : value.split(",")) {
+                String[] weight = part.split("=");
+                if (weight.length != 2) {
+                    throw new IllegalArgumentException("Invalid mix entry " + part);
+                }
+                LoadTarget.Operation operation = LoadTarget.Operation.valueOf(weight[0].trim().toUpperCase(Locale.ROOT));
+                mix.put(operation.name().toLowerCase(Locale.ROOT), Integer.parseInt(weight[1].trim()));
+            }
+            int sum = 0;
+            for (int i = 0; i < operations.length; i++) {
+                sum += mix.getOrDefault(operations[i].name().toLowerCase(Locale.ROOT), 0);
+                cumulativeWeights[i] = sum;
+            }
+            if (sum <= 0) {
+                throw new IllegalArgumentException("Mix has no weight");
+            }
+        }
+
+        private LoadTarget.Operation pick() {
+            int roll = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            for (int i = 0; i < operations.length; i++) {
+                if (roll < cumulativeWeights[i]) {
+                    return operations[i];
+                }
+            }
+            return operations[operations.length - 1];
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+/**
+ * System under test of the {@link LoadGenerator}: the basil chaincode behind the gateways, or
+ * the in-memory stand-in.
+ */
+public interface LoadTarget {
+
+    /** Index of the endorse (or evaluate) phase in the phase array. */
+    int ENDORSE = 0;
+    /** Index of the submit-to-orderer phase in the phase array. */
+    int SUBMIT = 1;
+    /** Index of the wait-for-commit phase in the phase array. */
+    int COMMIT = 2;
+
+    enum Operation {
+        CREATE("CreateBasil"),
+        UPDATE("UpdateBasil"),
+        QUERY("QueryBasil");
+
+        private final String transaction;
+
+        Operation(final String transaction) {
+            this.transaction = transaction;
+        }
+
+        public String getTransaction() {
+            return transaction;
+        }
+    }
+
+    enum Outcome {
+        OK,
+        /** Refused by the chaincode at endorsement, e.g. BASIL_NOT_FOUND. */
+        REJECTED,
+        /** Ordered but invalidated by an MVCC read or phantom read conflict. */
+        MVCC_CONFLICT,
+        /** Ordered but invalidated for any other reason. */
+        COMMIT_FAILED,
+        /** Failed in the gateway or the transport, e.g. a deadline. */
+        ERROR
+    }
+
+    /**
+     * Runs one operation.
+     *
+     * @param operation the operation
+     * @param qr QR code the operation is on
+     * @param phases receives the duration of each phase in nanoseconds, indexed by
+     *        {@link #ENDORSE}, {@link #SUBMIT} and {@link #COMMIT}; queries only have the first
+     * @return how the operation ended
+     */
+    Outcome run(Operation operation, String qr, long[] phases);
+}
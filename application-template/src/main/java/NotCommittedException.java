@@ -0,0 +1,24 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import org.hyperledger.fabric.client.Status;
+
+/**
+ * A transaction was endorsed and ordered but failed validation, e.g. with an MVCC read conflict.
+ */
+public final class NotCommittedException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Status status;
+
+    public NotCommittedException(final Status status) {
+        super("Transaction " + status.getTransactionId() + " failed to commit with status " + status.getCode());
+        this.status = status;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import org.hyperledger.fabric.client.Contract;
+import org.hyperledger.fabric.client.GatewayException;
+
+import io.grpc.CallOptions;
+
+/**
+ * Read-through cache of QueryBasil results keyed by QR code, for checkout scanners that read the
+ * same few plants over and over.
+ *
+ * <p>Entries are evicted least recently used first once {@code maxEntries} is reached and expire
+ * after {@code ttl}. They are invalidated by the chaincode events of {@link BasilStateView}: any
+ * change to a QR drops its entry and a lot transfer drops the entries of the lot's members. A
+ * query that was running while its key was invalidated does not populate the cache, so a result
+ * read before a commit is never cached after its event. The TTL bounds staleness while the event
+ * stream is disconnected.
+ *
+ * <p>In strict mode, or through {@link #queryStrict(String)}, every read goes to the peer.
+ */
+public final class QueryBasilCache {
+
+    private final Contract contract;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final boolean strict;
+
+    private final LinkedHashMap<String, Entry> entries;
+
+    /** Queries in flight; an invalidation of their QR marks them stale. */
+    private final List<Load> loads = new ArrayList<>();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
+    private long bypasses;
+    private long missNanos;
+
+    /**
+     * @param contract contract QueryBasil is evaluated on
+     * @param maxEntries maximum number of cached results
+     * @param ttl time after which a result is read from the peer again
+     * @param strict whether every read bypasses the cache
+     */
+    public QueryBasilCache(final Contract contract, final int maxEntries, final Duration ttl, final boolean strict) {
+        this.contract = contract;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.strict = strict;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, QueryBasilCache.Entry> eldest) {
+                if (size() > QueryBasilCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Subscribes the cache to the changes seen by a state view.
+     *
+     * @param view view following the chaincode events
+     * @return this cache
+     */
+    public QueryBasilCache invalidatedBy(final BasilStateView view) {
+        view.addListener(this::invalidate);
+        return this;
+    }
+
+    /**
+     * @param qr QR code of the basil
+     * @return the QueryBasil result, from the cache when possible
+     * @throws GatewayException if the evaluation fails
+     */
+    public byte[] query(final String qr) throws GatewayException {
+        return query(qr, UnaryOperator.identity());
+    }
+
+    /**
+     * @param qr QR code of the basil
+     * @param options options of the evaluation on a miss, e.g. its deadline
+     * @return the QueryBasil result, from the cache when possible
+     * @throws GatewayException if the evaluation fails
+     */
+    public byte[] query(final String qr, final UnaryOperator<CallOptions> options) throws GatewayException {
+        if (strict) {
+            return queryStrict(qr, options);
+        }
+        Load load;
+        synchronized (this) {
+            Entry entry = entries.get(qr);
+            if (entry != null) {
+                if (System.nanoTime() - entry.loadedAt < ttlNanos) {
+                    hits++;
+                    return entry.result;
+                }
+                entries.remove(qr);
+                expirations++;
+            }
+            misses++;
+            load = new Load(qr);
+            loads.add(load);
+        }
+
+        long start = System.nanoTime();
+        byte[] result;
+        try {
+            result = evaluate(qr, options);
+        } finally {
+            synchronized (this) {
+                missNanos += System.nanoTime() - start;
+                loads.remove(load);
+            }
+        }
+
+        synchronized (this) {
+            if (!load.stale) {
+                entries.put(qr, new Entry(result, lotIdOf(result), start));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param qr QR code of the basil
+     * @return the QueryBasil result read from the peer
+     * @throws GatewayException if the evaluation fails
+     */
+    public byte[] queryStrict(final String qr) throws GatewayException {
+        return queryStrict(qr, UnaryOperator.identity());
+    }
+
+    private byte[] queryStrict(final String qr, final UnaryOperator<CallOptions> options) throws GatewayException {
+        synchronized (this) {
+            bypasses++;
+        }
+        return evaluate(qr, options);
+    }
+
+    private byte[] evaluate(final String qr, final UnaryOperator<CallOptions> options) throws GatewayException {
+        return contract.newProposal("QueryBasil")
+                .addArguments(qr)
+                .build()
+                .evaluate(options);
+    }
+
+    /**
+     * Drops the entries a change affects.
+     *
+     * @param change change published by the chaincode
+     */
+    public synchronized void invalidate(final BasilChange change) {
+        if (BasilChange.LOT_TRANSFERRED.equals(change.getType())) {
+            // members are not listed in the event, and the owner of each of them changes
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                if (change.getLotId().equals(it.next().lotId)) {
+                    it.remove();
+                    invalidations++;
+                }
+            }
+            for (Load load : loads) {
+                load.stale = true;
+            }
+            return;
+        }
+        if (entries.remove(change.getQr()) != null) {
+            invalidations++;
+        }
+        for (Load load : loads) {
+            if (load.qr.equals(change.getQr())) {
+                load.stale = true;
+            }
+        }
+    }
+
+    /**
+     * @return hit, miss, eviction and latency counters, and the evaluate time the hits saved
+     */
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long lookups = hits + misses;
+        double avgMissMillis = misses == 0 ? 0 : missNanos / 1e6 / misses;
+        stats.put("size", entries.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("strict", strict);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRatio", lookups == 0 ? 0 : (double) hits / lookups);
+        stats.put("evictions", evictions);
+        stats.put("expirations", expirations);
+        stats.put("invalidations", invalidations);
+        stats.put("bypasses", bypasses);
+        stats.put("avgMissMillis", avgMissMillis);
+        stats.put("savedMillis", hits * avgMissMillis);
+        return stats;
+    }
+
+    /**
+     * Finds the lotId of a QueryBasil result without parsing it. Quotes in string values are
+     * always escaped, so the unescaped property prefix can only be the lotId field.
+     */
+    private static String lotIdOf(final byte[] result) {
+        String json = new String(result, StandardCharsets.UTF_8);
+        String prefix = "\"lotId\":\"";
+        int start = json.indexOf(prefix);
+        if (start < 0) {
+            return null;
+        }
+        start += prefix.length();
+        int end = json.indexOf('"', start);
+        return end < 0 ? null : json.substring(start, end);
+    }
+
+    private static final class Entry {
+        private final byte[] result;
+        private final String lotId;
+        private final long loadedAt;
+
+        Entry(final byte[] result, final String lotId, final long loadedAt) {
+            this.result = result;
+            this.lotId = lotId;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private static final class Load {
+        private final String qr;
+        private boolean stale;
+
+        Load(final String qr) {
+            this.qr = qr;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hyperledger.fabric.client.Contract;
+import org.hyperledger.fabric.client.GatewayException;
+import org.hyperledger.fabric.client.Status;
+import org.hyperledger.fabric.client.SubmittedTransaction;
+import org.hyperledger.fabric.client.Transaction;
+import org.hyperledger.fabric.protos.peer.TxValidationCode;
+
+/**
+ * Submits transactions without waiting for each commit before starting the next one.
+ *
+ * <p>Each transaction is endorsed, sent to the orderer with {@code submitAsync} and then waits
+ * for its commit status on its own thread, so up to {@code window} transactions are in flight and
+ * throughput is no longer capped at one transaction per block. {@link #submit} blocks while the
+ * window is full, which pushes back on producers instead of queueing without bound.
+ *
+ * <p>A transaction invalidated by an MVCC read or phantom read conflict is endorsed again after
+ * a jittered exponential backoff, up to {@code maxAttempts} times. Latency is recorded separately
+ * for the endorse, submit and commit stages.
+ */
+public final class SubmissionPipeline implements AutoCloseable {
+
+    private final Contract contract;
+    private final Semaphore window;
+    private final ExecutorService executor;
+    private final int maxAttempts;
+    private final long baseBackoffNanos;
+    private final long maxBackoffNanos;
+
+    private final LatencyStats endorseLatency = new LatencyStats();
+    private final LatencyStats submitLatency = new LatencyStats();
+    private final LatencyStats commitLatency = new LatencyStats();
+    private final LatencyStats totalLatency = new LatencyStats();
+    private final AtomicLong committed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+
+    /**
+     * @param contract contract to submit to
+     * @param window maximum number of transactions in flight
+     * @param maxAttempts attempts per transaction, including the first, on MVCC conflicts
+     * @param baseBackoff backoff before the first retry; it doubles with every further retry
+     */
+    public SubmissionPipeline(final Contract contract, final int window, final int maxAttempts,
+            final Duration baseBackoff) {
+        this.contract = contract;
+        this.window = new Semaphore(window);
+        this.executor = VirtualThreads.newExecutor(window);
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffNanos = baseBackoff.toNanos();
+        this.maxBackoffNanos = baseBackoff.toNanos() << 6;
+    }
+
+    /**
+     * Starts a transaction, waiting first for a free slot in the window.
+     *
+     * @param name transaction name
+     * @param args transaction arguments
+     * @return future completed with the transaction result once it committed, or exceptionally
+     *         with a {@link GatewayException} or {@link NotCommittedException}
+     * @throws InterruptedException if interrupted while waiting for the window
+     */
+    public CompletableFuture<byte[]> submit(final String name, final String... args) throws InterruptedException {
+        window.acquire();
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(run(name, args));
+                    committed.incrementAndGet();
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    result.completeExceptionally(e);
+                } finally {
+                    window.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            window.release();
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * @return transaction counts and per-stage latency
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("committed", committed.get());
+        stats.put("failed", failed.get());
+        stats.put("mvccRetries", retries.get());
+        stats.put("endorse", endorseLatency.snapshot());
+        stats.put("submit", submitLatency.snapshot());
+        stats.put("commit", commitLatency.snapshot());
+        stats.put("total", totalLatency.snapshot());
+        return stats;
+    }
+
+    /**
+     * Waits up to a minute for the transactions in flight to finish and stops the pipeline.
+     * Transactions still running after that, or when the wait is interrupted, are cancelled.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private byte[] run(final String name, final String[] args) throws GatewayException, NotCommittedException,
+            InterruptedException {
+        long start = System.nanoTime();
+        for (int attempt = 1;; attempt++) {
+            long t0 = System.nanoTime();
+            Transaction transaction = contract.newProposal(name)
+                    .addArguments(args)
+                    .build()
+                    .endorse();
+            long t1 = System.nanoTime();
+            SubmittedTransaction submitted = transaction.submitAsync();
+            long t2 = System.nanoTime();
+            Status status = submitted.getStatus();
+            long t3 = System.nanoTime();
+
+            endorseLatency.record(t1 - t0);
+            submitLatency.record(t2 - t1);
+            commitLatency.record(t3 - t2);
+
+            if (status.isSuccessful()) {
+                totalLatency.record(t3 - start);
+                return submitted.getResult();
+            }
+            if (!isConflict(status.getCode()) || attempt >= maxAttempts) {
+                throw new NotCommittedException(status);
+            }
+            retries.incrementAndGet();
+            TimeUnit.NANOSECONDS.sleep(backoff(attempt));
+        }
+    }
+
+    private static boolean isConflict(final TxValidationCode code) {
+        return code == TxValidationCode.MVCC_READ_CONFLICT || code == TxValidationCode.PHANTOM_READ_CONFLICT;
+    }
+
+    /**
+     * Full jitter: a uniformly random delay up to the exponential bound, so transactions that
+     * conflicted with each other do not collide again on the retry.
+     */
+    private long backoff(final int attempt) {
+        long bound = Math.min(maxBackoffNanos, baseBackoffNanos << Math.min(attempt - 1, 30));
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+}
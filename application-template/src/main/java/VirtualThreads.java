@@ -0,0 +1,29 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors that run each task on a virtual thread where the JVM has them (Java 21+). The
+ * application is built for Java 11, so the factory method is looked up reflectively.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @param fallbackThreads size of the platform thread pool used when virtual threads are not
+     *        available
+     * @return executor starting a virtual thread per task, or a fixed thread pool
+     */
+    public static ExecutorService newExecutor(final int fallbackThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(fallbackThreads);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public final class BasilIngestTest {
+
+    private static final String[] HEADER = {"op", "qr", "extraInfo", "gpsPosition", "newOwner"};
+
+    @Test
+    public void splitsCsvLines() {
+        assertArrayEquals(new String[] {"create", "QR-1", "fresh", "", ""},
+                BasilIngest.parseCsv("create,QR-1,fresh,,"));
+        assertArrayEquals(new String[] {"update", "QR-1", "say \"ciao\", basil", "44.4,8.9"},
+                BasilIngest.parseCsv("update,QR-1,\"say \"\"ciao\"\", basil\",\"44.4,8.9\""));
+    }
+
+    @Test
+    public void rejectsUnterminatedQuotes() {
+        assertThrows(IllegalArgumentException.class, () -> BasilIngest.parseCsv("create,\"QR-1,fresh"));
+    }
+
+    @Test
+    public void readsCsvRows() {
+        BasilIngest.Row row = BasilIngest.Row.of(2, "", HEADER,
+                BasilIngest.parseCsv("Transfer,QR-1,,,Org2MSP"));
+
+        assertEquals("QR-1", row.value("qr"));
+        assertEquals("Org2MSP", row.value("newOwner"));
+        assertEquals("", row.value("gpsPosition"));
+    }
+
+    @Test
+    public void rejectsInvalidCsvRows() {
+        assertThrows(IllegalArgumentException.class,
+                () -> BasilIngest.Row.of(2, "", HEADER, BasilIngest.parseCsv("create,QR-1,a,b,c,d")));
+        assertThrows(IllegalArgumentException.class,
+                () -> BasilIngest.Row.of(2, "", HEADER, BasilIngest.parseCsv("plant,QR-1")));
+        assertThrows(IllegalArgumentException.class,
+                () -> BasilIngest.Row.of(2, "", HEADER, BasilIngest.parseCsv("create,")));
+        assertThrows(IllegalArgumentException.class,
+                () -> BasilIngest.Row.of(2, "", HEADER, BasilIngest.parseCsv("transfer,QR-1")));
+    }
+
+    @Test
+    public void readsJsonLines() {
+        BasilIngest.Row row = BasilIngest.Row.of(1,
+                "{\"op\":\"update\",\"qr\":\"QR-1\",\"extraInfo\":null,\"gpsPosition\":\"44.4,8.9\",\"batch\":7}");
+
+        assertEquals("QR-1", row.value("qr"));
+        assertEquals("44.4,8.9", row.value("gpsPosition"));
+        assertEquals("", row.value("extraInfo"));
+        assertEquals("7", row.value("batch"));
+    }
+
+    @Test
+    public void rejectsInvalidJsonLines() {
+        assertThrows(IllegalArgumentException.class, () -> BasilIngest.Row.of(1, "[\"create\",\"QR-1\"]"));
+        assertThrows(IllegalArgumentException.class, () -> BasilIngest.Row.of(1, "{\"op\":\"create\""));
+        assertThrows(IllegalArgumentException.class,
+                () -> BasilIngest.Row.of(1, "{\"op\":\"create\",\"qr\":\"QR-1\",\"extraInfo\":{\"note\":\"x\"}}"));
+        assertThrows(IllegalArgumentException.class,
+                () -> BasilIngest.Row.of(1, "{\"op\":\"create\",\"qr\":[\"QR-1\"]}"));
+    }
+}
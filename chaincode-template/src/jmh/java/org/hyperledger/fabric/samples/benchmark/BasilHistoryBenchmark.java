@@ -0,0 +1,95 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.benchmark;
+
+import static org.hyperledger.fabric.samples.benchmark.BenchmarkLedger.DEEP;
+import static org.hyperledger.fabric.samples.benchmark.BenchmarkLedger.RETAILER;
+import static org.hyperledger.fabric.samples.benchmark.BenchmarkLedger.SUPPLIER;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.samples.memory.InMemoryChaincode;
+import org.hyperledger.fabric.samples.memory.InMemoryTransaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the transaction functions that depend on how often a basil was written, for several
+ * history depths and record sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BasilHistoryBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int historyDepth;
+
+    @Param({"64", "1024"})
+    public int recordSize;
+
+    private InMemoryChaincode chaincode;
+    private String extraInfo;
+
+    @Setup(Level.Trial)
+    public void populate() {
+        // the lot needs its members; the other basils only add realistic neighbours to the key space
+        chaincode = BenchmarkLedger.populate(BenchmarkLedger.LOT_SIZE + 10, recordSize, historyDepth);
+        extraInfo = BenchmarkLedger.extraInfo(recordSize);
+    }
+
+    @Benchmark
+    public InMemoryTransaction getHistoryOfBasil() {
+        return chaincode.endorse(RETAILER, "GetHistoryOfBasil",
+                (contract, ctx) -> contract.GetHistoryOfBasil(ctx, DEEP));
+    }
+
+    @Benchmark
+    public InMemoryTransaction getHistoryNewestTen() {
+        return chaincode.endorse(RETAILER, "GetHistoryOfBasilWindow",
+                (contract, ctx) -> contract.GetHistoryOfBasilWindow(ctx, DEEP, 10, 0, 0, "newest"));
+    }
+
+    @Benchmark
+    public InMemoryTransaction getHistoryOldestTen() {
+        return chaincode.endorse(RETAILER, "GetHistoryOfBasilWindow",
+                (contract, ctx) -> contract.GetHistoryOfBasilWindow(ctx, DEEP, 10, 0, 0, "oldest"));
+    }
+
+    @Benchmark
+    public InMemoryTransaction getBasilRoute() {
+        return chaincode.endorse(RETAILER, "GetBasilRoute", (contract, ctx) -> contract.GetBasilRoute(ctx, DEEP, 0, 0));
+    }
+
+    @Benchmark
+    public InMemoryTransaction getProvenanceSummary() {
+        return chaincode.endorse(RETAILER, "GetProvenanceSummary",
+                (contract, ctx) -> contract.GetProvenanceSummary(ctx, DEEP));
+    }
+
+    @Benchmark
+    public InMemoryTransaction queryBasil() {
+        return chaincode.endorse(RETAILER, "QueryBasil", (contract, ctx) -> contract.QueryBasil(ctx, DEEP));
+    }
+
+    @Benchmark
+    public InMemoryTransaction updateBasil() {
+        return chaincode.endorse(SUPPLIER, "UpdateBasil",
+                (contract, ctx) -> contract.UpdateBasil(ctx, DEEP, extraInfo, "44.41000,8.95000"));
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.benchmark;
+
+import static org.hyperledger.fabric.samples.benchmark.BenchmarkLedger.LOT;
+import static org.hyperledger.fabric.samples.benchmark.BenchmarkLedger.LOT_SIZE;
+import static org.hyperledger.fabric.samples.benchmark.BenchmarkLedger.RETAILER;
+import static org.hyperledger.fabric.samples.benchmark.BenchmarkLedger.SUPPLIER;
+import static org.hyperledger.fabric.samples.benchmark.BenchmarkLedger.qr;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.samples.memory.InMemoryChaincode;
+import org.hyperledger.fabric.samples.memory.InMemoryTransaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Endorsement cost of every transaction function of BasilContract, for several record sizes.
+ *
+ * <p>Each invocation simulates the transaction against the same populated ledger and discards
+ * its write set, the way a peer endorses a proposal, so the state does not drift between
+ * invocations. GetBasilsByQuery is left out: it needs CouchDB, which the in-memory ledger does not
+ * model.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BasilTransactionBenchmark {
+
+    /** Length of the extra info of every basil, which dominates the size of its record. */
+    @Param({"64", "1024", "16384"})
+    public int recordSize;
+
+    @Param({"1000"})
+    public int basils;
+
+    private InMemoryChaincode chaincode;
+    private String extraInfo;
+    private String batch;
+
+    /** A basil outside the lot, owned by the supplier. */
+    private String free;
+
+    /** A member of the lot. */
+    private String member;
+
+    @Setup(Level.Trial)
+    public void populate() {
+        chaincode = BenchmarkLedger.populate(basils, recordSize, 1);
+        extraInfo = BenchmarkLedger.extraInfo(recordSize);
+        free = qr(LOT_SIZE);
+        member = qr(0);
+
+        StringBuilder entries = new StringBuilder("[");
+        for (int i = 0; i < 100; i++) {
+            if (i > 0) {
+                entries.append(',');
+            }
+            entries.append("{\"qr\":\"NEW-").append(i).append("\",\"extraInfo\":\"").append(extraInfo).append("\"}");
+        }
+        batch = entries.append(']').toString();
+    }
+
+    @Benchmark
+    public InMemoryTransaction queryBasil() {
+        return chaincode.endorse(RETAILER, "QueryBasil", (contract, ctx) -> contract.QueryBasil(ctx, free));
+    }
+
+    @Benchmark
+    public InMemoryTransaction queryLotMember() {
+        return chaincode.endorse(RETAILER, "QueryBasil", (contract, ctx) -> contract.QueryBasil(ctx, member));
+    }
+
+    @Benchmark
+    public InMemoryTransaction createBasil() {
+        return chaincode.endorse(SUPPLIER, "CreateBasil",
+                (contract, ctx) -> contract.CreateBasil(ctx, "NEW", extraInfo));
+    }
+
+    @Benchmark
+    public InMemoryTransaction createBasilBatch() {
+        return chaincode.endorse(SUPPLIER, "CreateBasilBatch",
+                (contract, ctx) -> contract.CreateBasilBatch(ctx, batch));
+    }
+
+    @Benchmark
+    public InMemoryTransaction updateBasil() {
+        return chaincode.endorse(SUPPLIER, "UpdateBasil",
+                (contract, ctx) -> contract.UpdateBasil(ctx, free, extraInfo, "44.41000,8.95000"));
+    }
+
+    @Benchmark
+    public InMemoryTransaction recordBasilLeg() {
+        return chaincode.endorse(SUPPLIER, "RecordBasilLeg",
+                (contract, ctx) -> contract.RecordBasilLeg(ctx, free, "44.41000,8.95000"));
+    }
+
+    @Benchmark
+    public InMemoryTransaction transferBasil() {
+        return chaincode.endorse(SUPPLIER, "TransferBasil",
+                (contract, ctx) -> contract.TransferBasil(ctx, free, RETAILER));
+    }
+
+    @Benchmark
+    public InMemoryTransaction deleteBasil() {
+        return chaincode.endorse(SUPPLIER, "DeleteBasil", (contract, ctx) -> contract.DeleteBasil(ctx, free));
+    }
+
+    @Benchmark
+    public InMemoryTransaction assignToLot() {
+        return chaincode.endorse(SUPPLIER, "AssignToLot", (contract, ctx) -> contract.AssignToLot(ctx, LOT, free));
+    }
+
+    @Benchmark
+    public InMemoryTransaction removeFromLot() {
+        return chaincode.endorse(SUPPLIER, "RemoveFromLot", (contract, ctx) -> contract.RemoveFromLot(ctx, member));
+    }
+
+    @Benchmark
+    public InMemoryTransaction transferLot() {
+        return chaincode.endorse(SUPPLIER, "TransferLot", (contract, ctx) -> contract.TransferLot(ctx, LOT, RETAILER));
+    }
+
+    @Benchmark
+    public InMemoryTransaction queryLot() {
+        return chaincode.endorse(RETAILER, "QueryLot", (contract, ctx) -> contract.QueryLot(ctx, LOT));
+    }
+
+    @Benchmark
+    public InMemoryTransaction getInventoryStats() {
+        return chaincode.endorse(SUPPLIER, "GetInventoryStats",
+                (contract, ctx) -> contract.GetInventoryStats(ctx, SUPPLIER));
+    }
+
+    @Benchmark
+    public InMemoryTransaction compactCounters() {
+        return chaincode.endorse(SUPPLIER, "CompactCounters",
+                (contract, ctx) -> contract.CompactCounters(ctx, SUPPLIER));
+    }
+
+    @Benchmark
+    public InMemoryTransaction getBasilsInBoundingBox() {
+        return chaincode.endorse(RETAILER, "GetBasilsInBoundingBox",
+                (contract, ctx) -> contract.GetBasilsInBoundingBox(ctx, 44.40, 8.90, 44.45, 8.905, 100, ""));
+    }
+
+    @Benchmark
+    public InMemoryTransaction getAllBasils() {
+        return chaincode.endorse(RETAILER, "GetAllBasils", (contract, ctx) -> contract.GetAllBasils(ctx, 100, ""));
+    }
+
+    @Benchmark
+    public InMemoryTransaction getBasilsByRange() {
+        return chaincode.endorse(RETAILER, "GetBasilsByRange",
+                (contract, ctx) -> contract.GetBasilsByRange(ctx, qr(100), qr(300), 100, ""));
+    }
+
+    @Benchmark
+    public InMemoryTransaction getBasilsByOwner() {
+        return chaincode.endorse(SUPPLIER, "GetBasilsByOwner",
+                (contract, ctx) -> contract.GetBasilsByOwner(ctx, SUPPLIER, 100, ""));
+    }
+
+    @Benchmark
+    public InMemoryTransaction getProvenanceSummary() {
+        return chaincode.endorse(RETAILER, "GetProvenanceSummary",
+                (contract, ctx) -> contract.GetProvenanceSummary(ctx, member));
+    }
+}
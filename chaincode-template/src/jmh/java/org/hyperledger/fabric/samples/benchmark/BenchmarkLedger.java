@@ -0,0 +1,81 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.benchmark;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.hyperledger.fabric.samples.memory.InMemoryChaincode;
+import org.hyperledger.fabric.samples.memory.InMemoryLedger;
+
+/**
+ * Ledger the benchmarks run against, populated through the contract itself so that every index,
+ * counter and provenance record exists as it would on a peer.
+ *
+ * <p>Basils {@code QR-000000} to {@code QR-nnnnnn} are created by the supplier and updated once,
+ * so each has a position. The first {@value #LOT_SIZE} belong to lot {@value #LOT}. Basil
+ * {@value #DEEP} is updated {@code historyDepth} times.
+ */
+final class BenchmarkLedger {
+
+    static final String SUPPLIER = "Org1MSP";
+    static final String RETAILER = "Org2MSP";
+
+    static final String LOT = "LOT-0";
+    static final int LOT_SIZE = 50;
+
+    /** Basil with a deep history. */
+    static final String DEEP = "QR-DEEP";
+
+    private BenchmarkLedger() {
+    }
+
+    /**
+     * @param basils number of basils, at least {@value #LOT_SIZE} plus a few spare
+     * @param recordSize length of the extra info of every basil
+     * @param historyDepth number of versions of {@value #DEEP}
+     * @return the contract deployed on the populated ledger
+     */
+    static InMemoryChaincode populate(final int basils, final int recordSize, final int historyDepth) {
+        InMemoryChaincode chaincode = new InMemoryChaincode(new InMemoryLedger());
+        String extraInfo = extraInfo(recordSize);
+        for (int i = 0; i < basils; i++) {
+            String qr = qr(i);
+            chaincode.submit(SUPPLIER, "CreateBasil", (contract, ctx) -> contract.CreateBasil(ctx, qr, extraInfo));
+            String position = position(i);
+            chaincode.submit(SUPPLIER, "UpdateBasil",
+                    (contract, ctx) -> contract.UpdateBasil(ctx, qr, extraInfo, position));
+        }
+        for (int i = 0; i < LOT_SIZE; i++) {
+            String qr = qr(i);
+            chaincode.submit(SUPPLIER, "AssignToLot", (contract, ctx) -> contract.AssignToLot(ctx, LOT, qr));
+        }
+
+        chaincode.submit(SUPPLIER, "CreateBasil", (contract, ctx) -> contract.CreateBasil(ctx, DEEP, extraInfo));
+        for (int i = 1; i < historyDepth; i++) {
+            String position = position(i);
+            chaincode.submit(SUPPLIER, "UpdateBasil",
+                    (contract, ctx) -> contract.UpdateBasil(ctx, DEEP, extraInfo, position));
+        }
+        return chaincode;
+    }
+
+    static String qr(final int i) {
+        return String.format("QR-%06d", i);
+    }
+
+    /**
+     * @return a position a few hundred metres from the previous one, around Genoa
+     */
+    static String position(final int i) {
+        return String.format(Locale.ROOT, "%.5f,%.5f", 44.40 + (i % 100) * 0.001, 8.90 + (i / 100) * 0.001);
+    }
+
+    static String extraInfo(final int length) {
+        char[] info = new char[length];
+        Arrays.fill(info, 'x');
+        return new String(info);
+    }
+}
@@ -26,6 +26,9 @@ public final class Basil {
     @Property()
     private BasilLeg basilLeg;
 
+    @Property()
+    private String lotId;
+
     public String getQr() {
         return qr;
     }
@@ -42,6 +45,10 @@ public final class Basil {
         return basilLeg;
     }
 
+    public String getLotId() {
+        return lotId;
+    }
+
     public Basil(@JsonProperty("qr") final String qr,
                  @JsonProperty("extraInfo") final String extraInfo,
                  @JsonProperty("owner") final Owner owner)
@@ -61,6 +68,18 @@ public final class Basil {
     this.basilLeg = basilLeg;
 }
 
+    public Basil(@JsonProperty("qr") final String qr,
+                 @JsonProperty("extraInfo") final String extraInfo,
+                 @JsonProperty("owner") final Owner owner,
+                 @JsonProperty("basilLeg") final BasilLeg basilLeg,
+                 @JsonProperty("lotId") final String lotId) {
+        this.qr = qr;
+        this.extraInfo = extraInfo;
+        this.owner = owner;
+        this.basilLeg = basilLeg;
+        this.lotId = lotId;
+    }
+
     @Override
     public boolean equals(final Object obj) {
         if (this == obj) {
@@ -90,6 +109,7 @@ public final class Basil {
                 + " [qr=" + qr
                 + ", extraInfo=" + extraInfo
                 + ", owner=" + owner  
-                + ", basilLeg=" + basilLeg + "]";
+                + ", basilLeg=" + basilLeg
+                + ", lotId=" + lotId + "]";
     }
 }
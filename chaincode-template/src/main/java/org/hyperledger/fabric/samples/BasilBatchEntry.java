@@ -0,0 +1,68 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import java.util.Objects;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import com.owlike.genson.annotation.JsonProperty;
+
+/**
+ * One plant of a {@code CreateBasilBatch} request.
+ */
+@DataType()
+public final class BasilBatchEntry {
+
+    @Property()
+    private String qr;
+
+    @Property()
+    private String extraInfo;
+
+    public String getQr() {
+        return qr;
+    }
+
+    public String getExtraInfo() {
+        return extraInfo;
+    }
+
+    public BasilBatchEntry(@JsonProperty("qr") final String qr,
+                           @JsonProperty("extraInfo") final String extraInfo) {
+        this.qr = qr;
+        this.extraInfo = extraInfo;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if ((obj == null) || (getClass() != obj.getClass())) {
+            return false;
+        }
+
+        BasilBatchEntry other = (BasilBatchEntry) obj;
+
+        return Objects.equals(qr, other.qr)
+                && Objects.equals(extraInfo, other.extraInfo);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(qr, extraInfo);
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName()
+                + "@" + Integer.toHexString(hashCode())
+                + " [qr=" + qr
+                + ", extraInfo=" + extraInfo + "]";
+    }
+}
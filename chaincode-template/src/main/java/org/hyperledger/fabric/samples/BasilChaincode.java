@@ -0,0 +1,23 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import org.hyperledger.fabric.contract.ContractRouter;
+
+/**
+ * Entry point of the chaincode process: starts the {@link ChaincodeMetrics} exporter, then hands
+ * over to the contract router. Benchmarks and the simulator load the contract without it, so they
+ * run without an exporter.
+ */
+public final class BasilChaincode {
+
+    private BasilChaincode() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        ChaincodeMetrics.INSTANCE.startExporter();
+        ContractRouter.main(args);
+    }
+}
@@ -0,0 +1,443 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import com.owlike.genson.Genson;
+
+/**
+ * Reflection-free JSON codec for {@link Basil} and its nested {@link Owner} and {@link BasilLeg}.
+ *
+ * <p>The wire format is the one Genson produces for these classes: properties in alphabetical
+ * order, absent values written as {@code null}. Basils additionally carry a {@code docType} of
+ * {@value #DOC_TYPE} that the CouchDB indexes and rich queries select on. Documents containing
+ * anything the fast path does not recognise, such as fields added by a later version, are decoded
+ * by Genson instead, so existing ledger data decodes exactly as before.
+ */
+final class BasilCodec {
+
+    static final String DOC_TYPE = "basil";
+
+    private static final Genson GENSON = new Genson();
+
+    private BasilCodec() {
+    }
+
+    /**
+     * @param basil the basil to encode
+     * @return JSON document as stored in the world state
+     */
+    static String toJson(final Basil basil) {
+        return ChaincodeMetrics.serialization(() -> encode(basil));
+    }
+
+    private static String encode(final Basil basil) {
+        StringBuilder out = new StringBuilder(192);
+        out.append("{\"basilLeg\":");
+        BasilLeg leg = basil.getBasilLeg();
+        if (leg == null) {
+            out.append("null");
+        } else {
+            writeLeg(out, leg);
+        }
+        out.append(",\"docType\":\"").append(DOC_TYPE).append('"');
+        out.append(",\"extraInfo\":");
+        writeString(out, basil.getExtraInfo());
+        out.append(",\"lotId\":");
+        writeString(out, basil.getLotId());
+        out.append(",\"owner\":");
+        Owner owner = basil.getOwner();
+        if (owner == null) {
+            out.append("null");
+        } else {
+            out.append("{\"ownerID\":");
+            writeString(out, owner.getOwnerID());
+            out.append(",\"ownerName\":");
+            writeString(out, owner.getOwnerName());
+            out.append('}');
+        }
+        out.append(",\"qr\":");
+        writeString(out, basil.getQr());
+        return out.append('}').toString();
+    }
+
+    /**
+     * Tells whether a stored basil belongs to a lot without decoding it. Quotes inside string
+     * values are always escaped, so the unescaped property prefix can only be the lotId field.
+     *
+     * @param json JSON document as stored in the world state
+     * @return true if the document has a non-null lotId
+     */
+    static boolean hasLot(final String json) {
+        return json.contains("\"lotId\":\"");
+    }
+
+    /**
+     * Tells whether a stored basil carries the docType rich queries select on, which basils
+     * written before the docType existed lack.
+     *
+     * @param json JSON document as stored in the world state
+     * @return true if the document has the basil docType
+     */
+    static boolean hasDocType(final String json) {
+        return json.contains("\"docType\":\"" + DOC_TYPE + "\"");
+    }
+
+    /**
+     * @param json JSON document as stored in the world state
+     * @return the decoded basil
+     */
+    static Basil fromJson(final String json) {
+        return ChaincodeMetrics.serialization(() -> decode(json));
+    }
+
+    private static Basil decode(final String json) {
+        try {
+            return new Reader(json).readBasil();
+        } catch (UnsupportedDocument e) {
+            return GENSON.deserialize(json, Basil.class);
+        }
+    }
+
+    /**
+     * @param leg the leg to encode
+     * @return JSON document with the same layout as the nested basilLeg of a basil
+     */
+    static String toJson(final BasilLeg leg) {
+        return ChaincodeMetrics.serialization(() -> encode(leg));
+    }
+
+    private static String encode(final BasilLeg leg) {
+        StringBuilder out = new StringBuilder(64);
+        writeLeg(out, leg);
+        return out.toString();
+    }
+
+    /**
+     * @param json JSON document of a single leg
+     * @return the decoded leg
+     */
+    static BasilLeg legFromJson(final String json) {
+        return ChaincodeMetrics.serialization(() -> decodeLeg(json));
+    }
+
+    private static BasilLeg decodeLeg(final String json) {
+        try {
+            return new Reader(json).readLegDocument();
+        } catch (UnsupportedDocument e) {
+            return GENSON.deserialize(json, BasilLeg.class);
+        }
+    }
+
+    private static void writeLeg(final StringBuilder out, final BasilLeg leg) {
+        out.append("{\"gpsPosition\":");
+        writeString(out, leg.getGpsPosition());
+        out.append(",\"timestamp\":");
+        Long timestamp = leg.getTimestamp();
+        if (timestamp == null) {
+            out.append("null");
+        } else {
+            out.append(timestamp.longValue());
+        }
+        out.append('}');
+    }
+
+    static void writeString(final StringBuilder out, final String value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\b':
+                    out.append("\\b");
+                    break;
+                case '\f':
+                    out.append("\\f");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * Signals a document the fast path does not handle; the caller falls back to Genson.
+     */
+    private static final class UnsupportedDocument extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedDocument() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Single-pass reader over the known Basil document layout. Field order is not assumed.
+     */
+    private static final class Reader {
+
+        private final String json;
+
+        private int pos;
+
+        Reader(final String json) {
+            this.json = json;
+        }
+
+        Basil readBasil() {
+            String qr = null;
+            String extraInfo = null;
+            Owner owner = null;
+            BasilLeg basilLeg = null;
+            String lotId = null;
+
+            expect('{');
+            if (!tryConsume('}')) {
+                do {
+                    String name = readString();
+                    expect(':');
+                    switch (name) {
+                        case "qr":
+                            qr = readNullableString();
+                            break;
+                        case "extraInfo":
+                            extraInfo = readNullableString();
+                            break;
+                        case "docType":
+                            readNullableString();
+                            break;
+                        case "lotId":
+                            lotId = readNullableString();
+                            break;
+                        case "owner":
+                            owner = tryConsumeNull() ? null : readOwner();
+                            break;
+                        case "basilLeg":
+                            basilLeg = tryConsumeNull() ? null : readLeg();
+                            break;
+                        default:
+                            throw new UnsupportedDocument();
+                    }
+                } while (tryConsume(','));
+                expect('}');
+            }
+            expectEnd();
+            return new Basil(qr, extraInfo, owner, basilLeg, lotId);
+        }
+
+        BasilLeg readLegDocument() {
+            BasilLeg leg = readLeg();
+            expectEnd();
+            return leg;
+        }
+
+        private Owner readOwner() {
+            String ownerID = null;
+            expect('{');
+            if (!tryConsume('}')) {
+                do {
+                    String name = readString();
+                    expect(':');
+                    switch (name) {
+                        case "ownerID":
+                            ownerID = readNullableString();
+                            break;
+                        case "ownerName":
+                            // derived from the owner ID, exactly as the Owner constructor does
+                            readNullableString();
+                            break;
+                        default:
+                            throw new UnsupportedDocument();
+                    }
+                } while (tryConsume(','));
+                expect('}');
+            }
+            return Owner.of(ownerID);
+        }
+
+        private BasilLeg readLeg() {
+            Long timestamp = null;
+            String gpsPosition = null;
+            expect('{');
+            if (!tryConsume('}')) {
+                do {
+                    String name = readString();
+                    expect(':');
+                    switch (name) {
+                        case "timestamp":
+                            timestamp = tryConsumeNull() ? null : readLong();
+                            break;
+                        case "gpsPosition":
+                            gpsPosition = readNullableString();
+                            break;
+                        default:
+                            throw new UnsupportedDocument();
+                    }
+                } while (tryConsume(','));
+                expect('}');
+            }
+            return new BasilLeg(timestamp, gpsPosition);
+        }
+
+        private String readNullableString() {
+            return tryConsumeNull() ? null : readString();
+        }
+
+        private String readString() {
+            expect('"');
+            int start = pos;
+            // fast path: no escapes
+            while (pos < json.length()) {
+                char c = json.charAt(pos);
+                if (c == '"') {
+                    return json.substring(start, pos++);
+                }
+                if (c == '\\') {
+                    break;
+                }
+                pos++;
+            }
+            StringBuilder value = new StringBuilder(json.substring(start, pos));
+            while (pos < json.length()) {
+                char c = json.charAt(pos++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (pos >= json.length()) {
+                    break;
+                }
+                char escaped = json.charAt(pos++);
+                switch (escaped) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        value.append(escaped);
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'u':
+                        if (pos + 4 > json.length()) {
+                            throw new UnsupportedDocument();
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw new UnsupportedDocument();
+                        }
+                        pos += 4;
+                        break;
+                    default:
+                        throw new UnsupportedDocument();
+                }
+            }
+            throw new UnsupportedDocument();
+        }
+
+        private long readLong() {
+            skipWhitespace();
+            int start = pos;
+            if (pos < json.length() && json.charAt(pos) == '-') {
+                pos++;
+            }
+            long value = 0;
+            int digits = 0;
+            while (pos < json.length()) {
+                char c = json.charAt(pos);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                value = value * 10 + (c - '0');
+                pos++;
+                digits++;
+            }
+            // fractions, exponents and values that may overflow go through Genson
+            if (digits == 0 || digits > 18 || (pos < json.length() && "eE.".indexOf(json.charAt(pos)) >= 0)) {
+                throw new UnsupportedDocument();
+            }
+            return json.charAt(start) == '-' ? -value : value;
+        }
+
+        private boolean tryConsumeNull() {
+            skipWhitespace();
+            if (json.startsWith("null", pos)) {
+                pos += 4;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean tryConsume(final char expected) {
+            skipWhitespace();
+            if (pos < json.length() && json.charAt(pos) == expected) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(final char expected) {
+            if (!tryConsume(expected)) {
+                throw new UnsupportedDocument();
+            }
+        }
+
+        private void expectEnd() {
+            skipWhitespace();
+            if (pos != json.length()) {
+                throw new UnsupportedDocument();
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos < json.length()) {
+                char c = json.charAt(pos);
+                if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                    return;
+                }
+                pos++;
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+/**
+ * Transaction context of {@link BasilContract} that caches world state reads and decoded basils
+ * for the duration of one invocation and buffers writes until {@link #flush()}.
+ *
+ * <p>Repeated reads of the same key cost one shim round trip, repeated writes to the same key
+ * collapse into one, and reads observe the transaction's own pending writes, which the shim
+ * alone does not offer.
+ */
+public final class BasilContext extends Context {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    /** Marker for a pending delete in {@link #writes}. */
+    private static final Object DELETE = new Object();
+
+    /** Values as read from the world state; missing keys are cached as an empty array. */
+    private final Map<String, byte[]> reads = new HashMap<>();
+
+    /** Decoded basils by QR, including pending writes; a null value means the basil is absent. */
+    private final Map<String, Basil> basils = new HashMap<>();
+
+    /** Pending writes in the order they were made: byte[], Basil or {@link #DELETE}. */
+    private final Map<String, Object> writes = new LinkedHashMap<>();
+
+    /** Changes to publish as the transaction's chaincode event. */
+    private final List<BasilEvent> events = new ArrayList<>();
+
+    public BasilContext(final ChaincodeStub stub) {
+        super(stub);
+    }
+
+    /**
+     * @param key world state key
+     * @return the value seen by this transaction, an empty array if the key does not exist
+     */
+    public byte[] getState(final String key) {
+        Object pending = writes.get(key);
+        if (pending != null) {
+            if (pending == DELETE) {
+                return EMPTY;
+            }
+            if (pending instanceof Basil) {
+                return BasilCodec.toJson((Basil) pending).getBytes(StandardCharsets.UTF_8);
+            }
+            return (byte[]) pending;
+        }
+        byte[] value = reads.get(key);
+        if (value == null) {
+            value = getStub().getState(key);
+            if (value == null) {
+                value = EMPTY;
+            }
+            reads.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * @param key world state key
+     * @return the value seen by this transaction, an empty string if the key does not exist
+     */
+    public String getStringState(final String key) {
+        Object pending = writes.get(key);
+        if (pending instanceof Basil) {
+            return BasilCodec.toJson((Basil) pending);
+        }
+        return new String(getState(key), StandardCharsets.UTF_8);
+    }
+
+    public void putState(final String key, final byte[] value) {
+        basils.remove(key);
+        writes.put(key, value);
+    }
+
+    public void putStringState(final String key, final String value) {
+        putState(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void delState(final String key) {
+        basils.put(key, null);
+        writes.put(key, DELETE);
+    }
+
+    /**
+     * @param qr QR code of the basil
+     * @return the decoded basil, or null if it does not exist
+     */
+    public Basil getBasil(final String qr) {
+        if (basils.containsKey(qr)) {
+            return basils.get(qr);
+        }
+        byte[] value = getState(qr);
+        Basil basil = value.length == 0 ? null : BasilCodec.fromJson(new String(value, StandardCharsets.UTF_8));
+        basils.put(qr, basil);
+        return basil;
+    }
+
+    /**
+     * Stores a basil under its QR code; it is encoded once, when the transaction is flushed.
+     *
+     * @param basil the basil to store
+     */
+    public void putBasil(final Basil basil) {
+        basils.put(basil.getQr(), basil);
+        writes.put(basil.getQr(), basil);
+    }
+
+    /**
+     * @param key world state key
+     * @return true if this transaction has written or deleted the key
+     */
+    public boolean isPendingWrite(final String key) {
+        return writes.containsKey(key);
+    }
+
+    /**
+     * Records a change to publish with the transaction's chaincode event.
+     *
+     * @param event the change
+     */
+    void emit(final BasilEvent event) {
+        events.add(event);
+    }
+
+    /**
+     * Sends the pending writes to the peer, one shim call per key, and sets the chaincode event
+     * if the transaction made any changes.
+     */
+    public void flush() {
+        ChaincodeStub stub = getStub();
+        for (Map.Entry<String, Object> write : writes.entrySet()) {
+            Object value = write.getValue();
+            if (value == DELETE) {
+                stub.delState(write.getKey());
+            } else if (value instanceof Basil) {
+                stub.putStringState(write.getKey(), BasilCodec.toJson((Basil) value));
+            } else {
+                stub.putState(write.getKey(), (byte[]) value);
+            }
+        }
+        writes.clear();
+        if (!events.isEmpty()) {
+            stub.setEvent(events.get(0).getType(), BasilEvent.payload(events));
+            events.clear();
+        }
+    }
+}
@@ -4,10 +4,14 @@
 
 package org.hyperledger.fabric.samples;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
 import java.time.Instant;
 
 import org.hyperledger.fabric.contract.Context;
@@ -18,11 +22,13 @@ import org.hyperledger.fabric.contract.annotation.Default;
 import org.hyperledger.fabric.contract.annotation.Info;
 import org.hyperledger.fabric.contract.annotation.License;
 import org.hyperledger.fabric.contract.annotation.Transaction;
-import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.json.JSONObject;
 
 import com.owlike.genson.Genson;
 
@@ -42,243 +48,1081 @@ import com.owlike.genson.Genson;
 @Default
 public final class BasilContract implements ContractInterface {
 
+    static final int DEFAULT_MAX_BATCH_SIZE = 500;
+
+    /**
+     * Upper bound on the number of plants a single CreateBasilBatch proposal may register, so one
+     * proposal stays well below the peer's gRPC message limit. Configurable per peer through the
+     * BASIL_MAX_BATCH_SIZE environment variable of the chaincode container; a value that is not a
+     * positive integer falls back to the default.
+     */
+    static final int MAX_BATCH_SIZE = maxBatchSize(System.getenv("BASIL_MAX_BATCH_SIZE"));
+
+    /**
+     * Composite-key index from owner MSP to the QR codes it holds. Index entries carry no data,
+     * the plant itself is always read from its QR key.
+     */
+    static final String OWNER_INDEX = "owner~qr";
+
+    private static final byte[] INDEX_VALUE = new byte[] {0x00};
+
+    private static final String COMPOSITE_KEY_NAMESPACE = "\u0000";
+
+    private static final String HISTORY_NEWEST_FIRST = "newest";
+
+    private static final String HISTORY_OLDEST_FIRST = "oldest";
+
+    private static final String DIRECT_BOOKMARK = "d|";
+
+    private static final String LOT_BOOKMARK = "l|";
+
     private final Genson genson = new Genson();
 
+    @Override
+    public Context createContext(final ChaincodeStub stub) {
+        return new BasilContext(ChaincodeMetrics.INSTANCE.instrument(stub));
+    }
 
+    @Override
+    public void beforeTransaction(final Context ctx) {
+        ChaincodeMetrics.INSTANCE.begin(ctx.getStub().getFunction());
+    }
 
+    @Override
+    public void afterTransaction(final Context ctx, final Object result) {
+        ((BasilContext) ctx).flush();
+        ChaincodeMetrics.INSTANCE.end();
+    }
 
     @Transaction(intent = Transaction.TYPE.EVALUATE)
-    public String QueryBasil(final Context ctx, final String qr) {
-        ChaincodeStub stub = ctx.getStub();
-        return stub.getStringState(qr);
+    public String QueryBasil(final BasilContext ctx, final String qr) {
+        String basilJSON = ctx.getStringState(qr);
+        if (basilJSON.isEmpty()) {
+            return basilJSON;
+        }
+
+        // pings recorded through RecordBasilLeg do not rewrite the basil itself
+        BasilLeg latestLeg = LegLog.latest(ctx, qr);
+        if (latestLeg == null && !BasilCodec.hasLot(basilJSON)) {
+            return basilJSON;
+        }
+        Basil basil = ctx.getBasil(qr);
+        BasilLeg basilLeg = basil.getBasilLeg();
+        if (isNewer(latestLeg, basilLeg)) {
+            basilLeg = latestLeg;
+        }
+        // members of a lot take their owner from the lot
+        Owner owner = Lots.resolveOwner(ctx, basil);
+        if (basilLeg == basil.getBasilLeg() && owner.equals(basil.getOwner())) {
+            return basilJSON;
+        }
+        return BasilCodec.toJson(new Basil(qr, basil.getExtraInfo(), owner, basilLeg, basil.getLotId()));
     }
 
     @Transaction(intent = Transaction.TYPE.SUBMIT)
-    public String CreateBasil(final Context ctx, final String qr, final String extraInfo) {
-
-        ChaincodeStub stub = ctx.getStub();
+    public String CreateBasil(final BasilContext ctx, final String qr, final String extraInfo) {
 
         String ownerId = ctx.getClientIdentity().getMSPID();
 
         if("Org1MSP".equals(ownerId)){
             //its okay because org1 is the supplier and can create basils
-            
-            String basilJSON = QueryBasil(ctx, qr);
-            if (basilJSON != null && !basilJSON.isEmpty()) {
+
+            if (ctx.getBasil(qr) != null) {
                 // if basil exists
-                return "Basil already exists";
+                throw BasilErrors.BASIL_ALREADY_EXISTS.exception("Basil " + qr + " already exists");
             }
 
-
-            Owner owner = new Owner(ownerId);
+            Owner owner = Owner.of(ownerId);
 
             Basil basil = new Basil(qr, extraInfo, owner);
-            basilJSON = genson.serialize(basil);
-            stub.putStringState(qr, basilJSON);
-            return basilJSON;
+            ctx.putBasil(basil);
+            addToOwnerIndex(ctx, ownerId, qr);
+            InventoryCounters.count(ctx, basil, 1);
+            InventoryCounters.created(ctx, ownerId, 1);
+            Provenances.created(ctx, basil);
+            endorsedBy(ctx, basil);
+            ctx.emit(BasilEvent.of(BasilEvent.CREATED, basil, owner));
+            return BasilCodec.toJson(basil);
 
         }else{
-            return "Not authorized. Only supplier can create basils";
+            throw BasilErrors.NOT_AUTHORIZED.exception("Only supplier can create basils");
         }
     }
 
+    /**
+     * Registers a whole harvest in one proposal instead of one CreateBasil round trip per plant.
+     *
+     * @param ctx the transaction context
+     * @param entriesJSON JSON array of {"qr": ..., "extraInfo": ...} entries
+     * @return summary with the number of created plants and a status for every entry
+     */
     @Transaction(intent = Transaction.TYPE.SUBMIT)
-    public String DeleteBasil(final Context ctx, final String qr) {
+    public String CreateBasilBatch(final BasilContext ctx, final String entriesJSON) {
 
-        ChaincodeStub stub = ctx.getStub();
+        String ownerId = ctx.getClientIdentity().getMSPID();
 
-        String basilJSON = QueryBasil(ctx, qr);
-        if (basilJSON == null || basilJSON.isEmpty()) {
+        if (!"Org1MSP".equals(ownerId)) {
+            throw BasilErrors.NOT_AUTHORIZED.exception("Only supplier can create basils");
+        }
+
+        BasilBatchEntry[] entries = ChaincodeMetrics.serialization(
+                () -> genson.deserialize(entriesJSON, BasilBatchEntry[].class));
+        if (entries == null || entries.length == 0) {
+            throw BasilErrors.INVALID_ARGUMENT.exception("Batch is empty");
+        }
+        if (entries.length > MAX_BATCH_SIZE) {
+            throw BasilErrors.INVALID_ARGUMENT.exception("Batch of " + entries.length
+                    + " basils exceeds the maximum of " + MAX_BATCH_SIZE);
+        }
+
+        Owner owner = Owner.of(ownerId);
+        List<Map<String, Object>> results = new ArrayList<>(entries.length);
+        int created = 0;
+
+        for (BasilBatchEntry entry : entries) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("qr", entry.getQr());
+
+            if (entry.getQr() == null || entry.getQr().isEmpty()) {
+                result.put("status", "INVALID");
+            } else if (ctx.getBasil(entry.getQr()) != null) {
+                // the context sees plants created earlier in this batch as well
+                result.put("status", ctx.isPendingWrite(entry.getQr()) ? "DUPLICATE_IN_BATCH" : "ALREADY_EXISTS");
+            } else {
+                Basil basil = new Basil(entry.getQr(), entry.getExtraInfo(), owner);
+                ctx.putBasil(basil);
+                addToOwnerIndex(ctx, ownerId, entry.getQr());
+                InventoryCounters.count(ctx, basil, 1);
+                Provenances.created(ctx, basil);
+                endorsedBy(ctx, basil);
+                ctx.emit(BasilEvent.of(BasilEvent.CREATED, basil, owner));
+                result.put("status", "CREATED");
+                created++;
+            }
+            results.add(result);
+        }
+
+        InventoryCounters.created(ctx, ownerId, created);
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("created", created);
+        summary.put("results", results);
+        return ChaincodeMetrics.serialization(() -> genson.serialize(summary));
+    }
+
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String DeleteBasil(final BasilContext ctx, final String qr) {
+
+        Basil basil = ctx.getBasil(qr);
+        if (basil == null) {
             // if basil does not exist
-            return "Basil does not exist";
+            throw BasilErrors.BASIL_NOT_FOUND.exception("Basil " + qr + " does not exist");
         }
         // set the owner to the calling MSP
         String callingMSP = ctx.getClientIdentity().getMSPID();
 
-        Basil basil = genson.deserialize(basilJSON, Basil.class);
-
-        if (!callingMSP.contentEquals(basil.getOwner().getOwnerID())) {
+        if (!callingMSP.contentEquals(Lots.resolveOwner(ctx, basil).getOwnerID())) {
             // only the owner can delete the basil
-            return "Not authorized. Only the owner can delete the basil";
+            throw BasilErrors.NOT_AUTHORIZED.exception("Only the owner can delete the basil");
         }
 
-        stub.delState(qr);
+        ctx.delState(qr);
+        InventoryCounters.count(ctx, basil, -1);
+        Provenances.deleted(ctx, qr);
+        if (basil.getLotId() != null) {
+            leaveLot(ctx, basil.getLotId(), qr);
+        } else {
+            removeFromOwnerIndex(ctx, basil.getOwner().getOwnerID(), qr);
+        }
+        LegLog.delete(ctx, qr);
+        GeoIndex.move(ctx, basil, basil.getBasilLeg(), null);
+        ctx.emit(BasilEvent.of(BasilEvent.DELETED, basil, Owner.of(callingMSP)));
         return "Basil " + qr + " deleted";
     }
 
     @Transaction(intent = Transaction.TYPE.SUBMIT)
-    public String UpdateBasil(final Context ctx, final String qr, final String extraInfo, final String gpsPosition) {
-
-        ChaincodeStub stub = ctx.getStub();
+    public String UpdateBasil(final BasilContext ctx, final String qr, final String extraInfo, final String gpsPosition) {
 
-                // set the owner to the calling MSP
+        // set the owner to the calling MSP
         String callingMSP = ctx.getClientIdentity().getMSPID();
 
         if("Org1MSP".equals(callingMSP)){
             //its okay because org1 is the supplier and can update basils
-            String basilJSON = QueryBasil(ctx, qr);
-            if (basilJSON == null || basilJSON.isEmpty()) {
+            Basil basil = ctx.getBasil(qr);
+            if (basil == null) {
                 // if basil does not exist
-                return "Basil does not exist";
+                throw BasilErrors.BASIL_NOT_FOUND.exception("Basil " + qr + " does not exist");
             }
 
-
-            Basil basil = genson.deserialize(basilJSON, Basil.class);
-
-            if (!callingMSP.contentEquals(basil.getOwner().getOwnerID())) {
+            if (!callingMSP.contentEquals(Lots.resolveOwner(ctx, basil).getOwnerID())) {
                 // only the owner can update the basil
-                return "Not authorized. Only the owner can update the basil";
+                throw BasilErrors.NOT_AUTHORIZED.exception("Only the owner can update the basil");
             }
 
-            Instant timestamp = stub.getTxTimestamp();
+            Instant timestamp = ctx.getStub().getTxTimestamp();
             Long timestampSeconds = timestamp.getEpochSecond();
 
-            Basil newBasil = new Basil(qr, extraInfo, basil.getOwner(), new BasilLeg(timestampSeconds, gpsPosition));
-            basilJSON = genson.serialize(newBasil);
-            stub.putStringState(qr, basilJSON);
-            return basilJSON;
+            Basil newBasil = new Basil(qr, extraInfo, basil.getOwner(), new BasilLeg(timestampSeconds, gpsPosition),
+                    basil.getLotId());
+            ctx.putBasil(newBasil);
+            LegLog.append(ctx, newBasil, newBasil.getBasilLeg());
+            GeoIndex.move(ctx, newBasil, basil.getBasilLeg(), newBasil.getBasilLeg());
+            if (basil.getBasilLeg() == null) {
+                InventoryCounters.add(ctx, InventoryCounters.holderOf(basil), InventoryCounters.IN_TRANSIT, 1);
+            }
+            Provenances.updated(ctx, basil, newBasil.getBasilLeg());
+            ctx.emit(BasilEvent.of(BasilEvent.UPDATED, newBasil, Owner.of(callingMSP)));
+            return BasilCodec.toJson(newBasil);
         }else{
-            return "Not authorized. Only supplier can update basils";
+            throw BasilErrors.NOT_AUTHORIZED.exception("Only supplier can update basils");
+        }
+    }
+
+    /**
+     * Records a GPS ping for a basil without rewriting it. The leg is appended to the leg log under
+     * its own key, so concurrent pings for the same QR never cause MVCC read conflicts with each
+     * other. The latest leg is returned by QueryBasil and the whole trail by GetBasilRoute.
+     *
+     * @param ctx the transaction context
+     * @param qr QR code of the basil
+     * @param gpsPosition position reported by the tracker
+     * @return the recorded leg
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String RecordBasilLeg(final BasilContext ctx, final String qr, final String gpsPosition) {
+
+        String callingMSP = ctx.getClientIdentity().getMSPID();
+
+        if (!"Org1MSP".equals(callingMSP)) {
+            throw BasilErrors.NOT_AUTHORIZED.exception("Only supplier can update basils");
+        }
+
+        Basil basil = ctx.getBasil(qr);
+        if (basil == null) {
+            throw BasilErrors.BASIL_NOT_FOUND.exception("Basil " + qr + " does not exist");
+        }
+        Owner owner = Lots.resolveOwner(ctx, basil);
+        if (!callingMSP.contentEquals(owner.getOwnerID())) {
+            throw BasilErrors.NOT_AUTHORIZED.exception("Only the owner can record legs of the basil");
         }
 
+        long timestampSeconds = ctx.getStub().getTxTimestamp().getEpochSecond();
+        ctx.emit(new BasilEvent(BasilEvent.LEG_RECORDED, qr, owner.getOwnerID(), basil.getLotId(), timestampSeconds));
+        return LegLog.append(ctx, basil, new BasilLeg(timestampSeconds, gpsPosition));
+    }
 
+    /**
+     * Retrieves the GPS trail of a basil in time order.
+     *
+     * @param ctx the transaction context
+     * @param qr QR code of the basil
+     * @param fromTimestamp first leg timestamp to include in epoch seconds, 0 for the first leg
+     * @param toTimestamp last leg timestamp to include in epoch seconds, 0 for the latest leg
+     * @return JSON array of legs, oldest first
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetBasilRoute(final BasilContext ctx, final String qr, final long fromTimestamp,
+            final long toTimestamp) {
+        return LegLog.route(ctx, qr, fromTimestamp, toTimestamp);
     }
 
     @Transaction(intent = Transaction.TYPE.SUBMIT)
-    public String TransferBasil(final Context ctx, final String qr, final String newOwner) {
-
-        ChaincodeStub stub = ctx.getStub();
+    public String TransferBasil(final BasilContext ctx, final String qr, final String newOwner) {
 
         // set the owner to the calling MSP
         String callingMSP = ctx.getClientIdentity().getMSPID();
 
         if("Org1MSP".equals(callingMSP)){
             //its okay because org1 is the supplier and can transfer basils";
-            String basilJSON = QueryBasil(ctx, qr);
-            if (basilJSON == null || basilJSON.isEmpty()) {
+            Basil basil = ctx.getBasil(qr);
+            if (basil == null) {
                 // if basil does not exist
-                return "Basil does not exist";
+                throw BasilErrors.BASIL_NOT_FOUND.exception("Basil " + qr + " does not exist");
             }
 
-
-            Basil basil = genson.deserialize(basilJSON, Basil.class);
+            if (basil.getLotId() != null) {
+                // lot members change hands with their lot
+                throw BasilErrors.BASIL_IN_LOT.exception("Basil belongs to lot " + basil.getLotId()
+                        + ". Transfer the lot or remove the basil from it first");
+            }
 
             if (!callingMSP.contentEquals(basil.getOwner().getOwnerID())) {
                 // only the owner can transfer the basil
-                return "Not authorized. Only the owner can transfer the basil";
+                throw BasilErrors.NOT_AUTHORIZED.exception("Only the owner can transfer the basil");
             }
 
-            Basil newBasil = new Basil(qr, basil.getExtraInfo(), new Owner(newOwner), basil.getBasilLeg());
-            basilJSON = genson.serialize(newBasil);
-            stub.putStringState(qr, basilJSON);
-            return basilJSON;
+            Basil newBasil = new Basil(qr, basil.getExtraInfo(), Owner.of(newOwner), basil.getBasilLeg());
+            ctx.putBasil(newBasil);
+            removeFromOwnerIndex(ctx, basil.getOwner().getOwnerID(), qr);
+            addToOwnerIndex(ctx, newOwner, qr);
+            InventoryCounters.count(ctx, basil, -1);
+            InventoryCounters.count(ctx, newBasil, 1);
+            Provenances.transferred(ctx, basil, newOwner);
+            handOver(ctx, newBasil);
+            ctx.emit(BasilEvent.of(BasilEvent.TRANSFERRED, newBasil, newBasil.getOwner()));
+            return BasilCodec.toJson(newBasil);
         }else{
-            return "Not authorized. Only supplier can transfer basils";
+            throw BasilErrors.NOT_AUTHORIZED.exception("Only supplier can transfer basils");
+        }
+    }
+
+    /**
+     * Adds a basil to a lot, creating the lot for the caller if it does not exist yet. From then
+     * on the basil takes its owner from the lot.
+     *
+     * @param ctx the transaction context
+     * @param lotId ID of the lot
+     * @param qr QR code of the basil
+     * @return the lot after the basil was added
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String AssignToLot(final BasilContext ctx, final String lotId, final String qr) {
+
+        if (lotId == null || lotId.isEmpty() || lotId.indexOf('|') >= 0) {
+            throw BasilErrors.INVALID_ARGUMENT.exception("Invalid lot ID " + lotId);
+        }
+
+        String callingMSP = ctx.getClientIdentity().getMSPID();
+
+        Basil basil = ctx.getBasil(qr);
+        if (basil == null) {
+            throw BasilErrors.BASIL_NOT_FOUND.exception("Basil " + qr + " does not exist");
+        }
+        if (basil.getLotId() != null) {
+            throw BasilErrors.BASIL_IN_LOT.exception("Basil " + qr + " already belongs to lot " + basil.getLotId());
+        }
+        if (!callingMSP.contentEquals(basil.getOwner().getOwnerID())) {
+            throw BasilErrors.NOT_AUTHORIZED.exception("Only the owner can assign the basil to a lot");
         }
+
+        Lot lot = Lots.get(ctx, lotId);
+        if (lot == null) {
+            lot = new Lot(lotId, basil.getOwner(), 0);
+            Lots.addToOwner(ctx, callingMSP, lotId);
+        } else if (!callingMSP.contentEquals(lot.getOwner().getOwnerID())) {
+            throw BasilErrors.NOT_AUTHORIZED.exception("Only the owner of the lot can assign basils to it");
+        }
+
+        Lot newLot = new Lot(lotId, lot.getOwner(), lot.getMemberCount() + 1);
+        Lots.put(ctx, newLot);
+        Basil newBasil = new Basil(qr, basil.getExtraInfo(), basil.getOwner(), basil.getBasilLeg(), lotId);
+        ctx.putBasil(newBasil);
+        removeFromOwnerIndex(ctx, callingMSP, qr);
+        Lots.addMember(ctx, lotId, qr);
+        InventoryCounters.count(ctx, basil, -1);
+        InventoryCounters.count(ctx, newBasil, 1);
+        Provenances.joinedLot(ctx, basil, lotId);
+        // the lot may change hands without touching its members, so they need every party
+        handOver(ctx, newBasil);
+        ctx.emit(BasilEvent.of(BasilEvent.LOT_ASSIGNED, newBasil, newLot.getOwner()));
+        return Lots.toJson(newLot);
     }
 
-    // /**
-    //  * Retrieves all assets from the ledger.
-    //  *
-    //  * @param ctx the transaction context
-    //  * @return array of assets found on the ledger
-    //  */
-    // @Transaction(intent = Transaction.TYPE.EVALUATE)
-    // public String GetAllBills(final Context ctx) {
-    //     ChaincodeStub stub = ctx.getStub();
+    /**
+     * Takes a basil out of its lot. The basil keeps the lot's current owner as its own.
+     *
+     * @param ctx the transaction context
+     * @param qr QR code of the basil
+     * @return the basil after it left the lot
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String RemoveFromLot(final BasilContext ctx, final String qr) {
 
-    //     List<BillOfLading> queryResults = new ArrayList<BillOfLading>();
+        String callingMSP = ctx.getClientIdentity().getMSPID();
 
-    //     // To retrieve all assets from the ledger use getStateByRange with empty startKey & endKey.
-    //     // Giving empty startKey & endKey is interpreted as all the keys from beginning to end.
-    //     // As another example, if you use startKey = 'asset0', endKey = 'asset9' ,
-    //     // then getStateByRange will retrieve asset with keys between asset0 (inclusive) and asset9 (exclusive) in lexical order.
-    //     QueryResultsIterator<KeyValue> results = stub.getStateByRange("", "");
+        Basil basil = ctx.getBasil(qr);
+        if (basil == null) {
+            throw BasilErrors.BASIL_NOT_FOUND.exception("Basil " + qr + " does not exist");
+        }
+        if (basil.getLotId() == null) {
+            throw BasilErrors.BASIL_NOT_IN_LOT.exception("Basil " + qr + " does not belong to a lot");
+        }
 
-    //     for (KeyValue result: results) {
-    //         BillOfLading bill = genson.deserialize(result.getStringValue(), BillOfLading.class);
-    //         queryResults.add(bill);
-    //         System.out.println(bill.toString());
-    //     }
+        Owner owner = Lots.resolveOwner(ctx, basil);
+        if (!callingMSP.contentEquals(owner.getOwnerID())) {
+            throw BasilErrors.NOT_AUTHORIZED.exception("Only the owner of the lot can remove basils from it");
+        }
 
-    //     final String response = genson.serialize(queryResults);
+        Basil newBasil = new Basil(qr, basil.getExtraInfo(), owner, basil.getBasilLeg(), null);
+        ctx.putBasil(newBasil);
+        // before leaveLot, which drops the lot's transfers along with an emptied lot
+        Provenances.leftLot(ctx, basil);
+        leaveLot(ctx, basil.getLotId(), qr);
+        addToOwnerIndex(ctx, owner.getOwnerID(), qr);
+        handOver(ctx, newBasil);
+        InventoryCounters.count(ctx, basil, -1);
+        InventoryCounters.count(ctx, newBasil, 1);
+        ctx.emit(BasilEvent.of(BasilEvent.LOT_REMOVED, newBasil, owner));
+        return BasilCodec.toJson(newBasil);
+    }
 
-    //     return response;
-    // }
+    /**
+     * Hands a whole lot to a new owner. Members resolve their owner through the lot, so this is a
+     * single write of the lot record regardless of how many basils it holds.
+     *
+     * @param ctx the transaction context
+     * @param lotId ID of the lot
+     * @param newOwner MSP ID of the new owner
+     * @return the lot after the transfer
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String TransferLot(final BasilContext ctx, final String lotId, final String newOwner) {
 
+        String callingMSP = ctx.getClientIdentity().getMSPID();
 
+        if (!"Org1MSP".equals(callingMSP)) {
+            throw BasilErrors.NOT_AUTHORIZED.exception("Only supplier can transfer basils");
+        }
+
+        Lot lot = Lots.get(ctx, lotId);
+        if (lot == null) {
+            throw BasilErrors.LOT_NOT_FOUND.exception("Lot " + lotId + " does not exist");
+        }
+        if (!callingMSP.contentEquals(lot.getOwner().getOwnerID())) {
+            throw BasilErrors.NOT_AUTHORIZED.exception("Only the owner can transfer the lot");
+        }
+
+        Lot newLot = new Lot(lotId, Owner.of(newOwner), lot.getMemberCount());
+        Lots.put(ctx, newLot);
+        Lots.removeFromOwner(ctx, lot.getOwner().getOwnerID(), lotId);
+        Lots.addToOwner(ctx, newOwner, lotId);
+        Provenances.lotTransferred(ctx, lotId, newOwner);
+        ctx.emit(new BasilEvent(BasilEvent.LOT_TRANSFERRED, null, newOwner, lotId, null));
+        return Lots.toJson(newLot);
+    }
+
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String QueryLot(final BasilContext ctx, final String lotId) {
+        Lot lot = Lots.get(ctx, lotId);
+        return lot == null ? "" : Lots.toJson(lot);
+    }
+
+    /**
+     * Retrieves the inventory statistics of an owner by summing the counter entries of the owner
+     * and of its lots, without scanning any basils.
+     *
+     * @param ctx the transaction context
+     * @param ownerId MSP ID of the owner
+     * @return the owner's basil count, in-transit count and creations per day
+     */
     @Transaction(intent = Transaction.TYPE.EVALUATE)
-    public String GetHistoryOfBasil(final Context ctx, String basilID) {
+    public String GetInventoryStats(final BasilContext ctx, final String ownerId) {
+        Map<String, Long> totals = InventoryCounters.sum(ctx, InventoryCounters.ownerHolder(ownerId));
+        for (String lotId : lotsOf(ctx, ownerId)) {
+            InventoryCounters.sum(ctx, InventoryCounters.lotHolder(lotId))
+                    .forEach((metric, value) -> totals.merge(metric, value, Long::sum));
+        }
+
+        Map<String, Long> createdPerDay = new TreeMap<>();
+        for (Map.Entry<String, Long> total : totals.entrySet()) {
+            if (total.getKey().startsWith(InventoryCounters.CREATED_PREFIX)) {
+                createdPerDay.put(total.getKey().substring(InventoryCounters.CREATED_PREFIX.length()), total.getValue());
+            }
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ownerId", ownerId);
+        stats.put("owned", totals.getOrDefault(InventoryCounters.OWNED, 0L));
+        stats.put("inTransit", totals.getOrDefault(InventoryCounters.IN_TRANSIT, 0L));
+        stats.put("createdPerDay", createdPerDay);
+        return ChaincodeMetrics.serialization(() -> genson.serialize(stats));
+    }
+
+    /**
+     * Folds the counter entries of an owner and of its lots into one checkpoint per metric. Run
+     * it periodically, outside peak hours, to keep GetInventoryStats cheap.
+     *
+     * @param ctx the transaction context
+     * @param ownerId MSP ID of the owner
+     * @return the number of counter entries folded
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String CompactCounters(final BasilContext ctx, final String ownerId) {
+
+        String callingMSP = ctx.getClientIdentity().getMSPID();
+
+        if (!callingMSP.contentEquals(ownerId)) {
+            throw BasilErrors.NOT_AUTHORIZED.exception("Only the owner can compact its counters");
+        }
+
+        int folded = InventoryCounters.compact(ctx, InventoryCounters.ownerHolder(ownerId));
+        for (String lotId : lotsOf(ctx, ownerId)) {
+            folded += InventoryCounters.compact(ctx, InventoryCounters.lotHolder(lotId));
+        }
+        return "{\"folded\":" + folded + "}";
+    }
+
+    /**
+     * Retrieves one page of the basils last seen inside a bounding box, for example a warehouse or
+     * a region affected by a food-safety recall. Positions come from the spatial index kept by
+     * UpdateBasil; pings recorded through RecordBasilLeg do not rewrite the basil and are not indexed.
+     *
+     * @param ctx the transaction context
+     * @param minLat southern edge in degrees
+     * @param minLon western edge in degrees
+     * @param maxLat northern edge in degrees
+     * @param maxLon eastern edge in degrees
+     * @param pageSize maximum number of index entries to scan for this page
+     * @param bookmark bookmark returned by the previous page, empty for the first page
+     * @return page of basils together with the bookmark of the next page
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetBasilsInBoundingBox(final BasilContext ctx, final double minLat, final double minLon,
+            final double maxLat, final double maxLon, final int pageSize, final String bookmark) {
+        if (minLat > maxLat || minLon > maxLon || minLat < -90 || maxLat > 90 || minLon < -180 || maxLon > 180) {
+            throw BasilErrors.INVALID_ARGUMENT.exception("Invalid bounding box");
+        }
+        return GeoIndex.query(ctx, minLat, minLon, maxLat, maxLon, pageSize, bookmark);
+    }
+
+    /**
+     * Retrieves one page of the basils matching a CouchDB selector. Only selectors that one of the
+     * packaged indexes can serve are accepted, so a query can never turn into an unbounded scan
+     * of the state database.
+     *
+     * <p>Members of a lot keep the owner they had when they joined it, so a selector on
+     * owner.ownerID must be a plain equality: the basils the owner holds directly are selected on
+     * their own owner and the members of its lots through the lot, with the bookmarks of
+     * GetBasilsByOwner.
+     *
+     * @param ctx the transaction context
+     * @param selectorJSON CouchDB selector on owner.ownerID and/or basilLeg.timestamp
+     * @param pageSize maximum number of basils to return, at least 1
+     * @param bookmark bookmark returned by the previous page, empty for the first page
+     * @return page of basils together with the bookmark of the next page
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetBasilsByQuery(final BasilContext ctx, final String selectorJSON, final int pageSize,
+            final String bookmark) {
+        if (pageSize < 1) {
+            throw BasilErrors.INVALID_ARGUMENT.exception("Page size must be at least 1");
+        }
         ChaincodeStub stub = ctx.getStub();
-        
-        // Używamy ogólnego iteratora - to musi działać w 2.5.0
-        QueryResultsIterator<KeyModification> results = null; 
-        List<Map<String, Object>> historyRecords = new ArrayList<>();
 
+        JSONObject selector = RichQuery.parse(selectorJSON);
+        String ownerId = RichQuery.owner(selector);
+        if (ownerId != null) {
+            return queryOwnerHoldings(ctx, selector, ownerId, pageSize, bookmark);
+        }
+
+        RawJsonPage page = new RawJsonPage();
+        Lots.OwnerResolver owners = new Lots.OwnerResolver(ctx);
+        QueryResultsIteratorWithMetadata<KeyValue> results =
+                stub.getQueryResultWithPagination(RichQuery.build(selector), pageSize, bookmark);
+        try {
+            for (KeyValue result : results) {
+                page.add(owners.resolve(result.getStringValue()));
+            }
+            return page.toJson(results.getMetadata().getFetchedRecordsCount(),
+                    results.getMetadata().getBookmark());
+        } finally {
+            closeQuietly(results);
+        }
+    }
+
+    /**
+     * Retrieves one page of all basils on the ledger. Internal index entries are skipped and the
+     * stored JSON is copied into the response without a decode/encode round trip, so peer memory
+     * is bounded by the page size and not by the size of the ledger.
+     *
+     * @param ctx the transaction context
+     * @param pageSize maximum number of keys to scan for this page, at least 1
+     * @param bookmark bookmark returned by the previous page, empty for the first page
+     * @return page of basils together with the bookmark of the next page
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetAllBasils(final BasilContext ctx, final int pageSize, final String bookmark) {
+        // Empty startKey & endKey is interpreted as all the simple keys from beginning to end.
+        return GetBasilsByRange(ctx, "", "", pageSize, bookmark);
+    }
+
+    /**
+     * Retrieves one page of the basils whose QR codes fall in a key range, so that a full export
+     * can be split into ranges scanned in parallel. Records are copied as GetAllBasils copies
+     * them.
+     *
+     * @param ctx the transaction context
+     * @param startKey first QR code of the range, inclusive; empty for the first basil
+     * @param endKey end of the range, exclusive; empty for the last basil
+     * @param pageSize maximum number of keys to scan for this page, at least 1
+     * @param bookmark bookmark returned by the previous page, empty for the first page
+     * @return page of basils together with the bookmark of the next page
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetBasilsByRange(final BasilContext ctx, final String startKey, final String endKey,
+            final int pageSize, final String bookmark) {
+        if (pageSize < 1) {
+            throw BasilErrors.INVALID_ARGUMENT.exception("Page size must be at least 1");
+        }
+        ChaincodeStub stub = ctx.getStub();
+
+        RawJsonPage page = new RawJsonPage();
+        Lots.OwnerResolver owners = new Lots.OwnerResolver(ctx);
+        QueryResultsIteratorWithMetadata<KeyValue> results =
+                stub.getStateByRangeWithPagination(startKey, endKey, pageSize, bookmark);
         try {
-            // Pobierz iterator z historią
-            results = stub.getHistoryForKey(basilID);
+            for (KeyValue result : results) {
+                if (result.getKey().startsWith(COMPOSITE_KEY_NAMESPACE)) {
+                    continue;
+                }
+                // only lot members are decoded, to show the owner of their lot
+                page.add(owners.resolve(result.getStringValue()));
+            }
+            return page.toJson(results.getMetadata().getFetchedRecordsCount(),
+                    results.getMetadata().getBookmark());
+        } finally {
+            closeQuietly(results);
+        }
+    }
+
+    /**
+     * Retrieves the provenance summary of a basil: when it was created, the chain of owners, the
+     * first and last leg reported through UpdateBasil or RecordBasilLeg and the number of
+     * UpdateBasil calls. The summary is maintained on every write, so this is a point read plus
+     * the two ends of the leg log; GetHistoryOfBasil remains available for audits that need every
+     * version.
+     *
+     * @param ctx the transaction context
+     * @param qr QR code of the basil
+     * @return the provenance summary, or an empty string if the basil does not exist
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetProvenanceSummary(final BasilContext ctx, final String qr) {
+        return Provenances.summaryJson(ctx, qr);
+    }
+
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetHistoryOfBasil(final BasilContext ctx, final String basilID) {
+        return GetHistoryOfBasilWindow(ctx, basilID, 0, 0, 0, HISTORY_NEWEST_FIRST);
+    }
+
+    /**
+     * Retrieves a bounded window of the history of a basil. Iteration stops as soon as the limit
+     * or the start of the window is reached, and stored values are copied into the response
+     * verbatim, so the cost no longer grows with the full history of long-lived plants.
+     *
+     * <p>Every record has the same shape as in GetHistoryOfBasil:
+     * {@code {"txId":...,"timestamp":...,"isDeleted":...,"asset":...}}.
+     *
+     * @param ctx the transaction context
+     * @param basilID QR code of the basil
+     * @param limit maximum number of records to return, 0 for no limit
+     * @param fromTimestamp oldest commit time to include in epoch milliseconds, 0 for no lower bound
+     * @param toTimestamp newest commit time to include in epoch milliseconds, 0 for no upper bound
+     * @param order "newest" for newest-first or "oldest" for oldest-first
+     * @return JSON array of history records
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetHistoryOfBasilWindow(final BasilContext ctx, final String basilID, final int limit,
+            final long fromTimestamp, final long toTimestamp, final String order) {
+        ChaincodeStub stub = ctx.getStub();
+
+        boolean oldestFirst;
+        if (order == null || order.isEmpty() || HISTORY_NEWEST_FIRST.equals(order)) {
+            oldestFirst = false;
+        } else if (HISTORY_OLDEST_FIRST.equals(order)) {
+            oldestFirst = true;
+        } else {
+            throw BasilErrors.INVALID_ARGUMENT.exception("Unknown history order " + order
+                    + ", expected " + HISTORY_NEWEST_FIRST + " or " + HISTORY_OLDEST_FIRST);
+        }
+
+        // The history database returns modifications newest first, so newest-first windows can stop
+        // at the limit. Oldest-first windows keep only the last `limit` records seen in the window.
+        StringBuilder newestFirst = new StringBuilder();
+        ArrayDeque<String> oldestWindow = new ArrayDeque<>();
+        int count = 0;
 
-            // Przetwarzaj każdy historyczny rekord
+        QueryResultsIterator<KeyModification> results = stub.getHistoryForKey(basilID);
+        try {
             for (KeyModification modification : results) {
-                Map<String, Object> record = new HashMap<>();
-                
-                // 1. Dodaj metadane transakcji
-                record.put("txId", modification.getTxId());
-                record.put("timestamp", modification.getTimestamp().toEpochMilli()); 
-                record.put("isDeleted", modification.isDeleted());
-
-                // 2. Dodaj stan zasobu
-                if (modification.isDeleted()) {
-                    record.put("asset", "DELETED");
+                long timestamp = modification.getTimestamp().toEpochMilli();
+                if (toTimestamp > 0 && timestamp > toTimestamp) {
+                    continue;
+                }
+                if (fromTimestamp > 0 && timestamp < fromTimestamp) {
+                    break;
+                }
+
+                if (oldestFirst) {
+                    oldestWindow.addLast(historyRecord(modification, timestamp));
+                    if (limit > 0 && oldestWindow.size() > limit) {
+                        oldestWindow.removeFirst();
+                    }
                 } else {
-                    String jsonValue = modification.getStringValue();
-                    Basil historicalBasil = genson.deserialize(jsonValue, Basil.class);
-                    record.put("asset", historicalBasil);
+                    if (count > 0) {
+                        newestFirst.append(',');
+                    }
+                    newestFirst.append(historyRecord(modification, timestamp));
+                    count++;
+                    if (limit > 0 && count >= limit) {
+                        break;
+                    }
                 }
-                
-                historyRecords.add(record);
             }
-
-        } catch (Exception e) {
-            // Jeśli cokolwiek pójdzie źle, rzuć prosty błąd
-            throw new RuntimeException("Nie udało się pobrać historii dla " + basilID + ": " + e.getMessage());
-            
         } finally {
-            // 3. ZAWSZE zamknij iterator w finally, żeby uniknąć wycieków zasobów
-            if (results != null) {
+            closeQuietly(results);
+        }
+
+        if (!oldestFirst) {
+            return "[" + newestFirst + "]";
+        }
+        StringBuilder response = new StringBuilder("[");
+        Iterator<String> records = oldestWindow.descendingIterator();
+        while (records.hasNext()) {
+            response.append(records.next());
+            if (records.hasNext()) {
+                response.append(',');
+            }
+        }
+        return response.append(']').toString();
+    }
+
+    private static String historyRecord(final KeyModification modification, final long timestamp) {
+        String asset = modification.isDeleted()
+                ? JSONObject.quote("DELETED")
+                : modification.getStringValue();
+        return "{\"txId\":" + JSONObject.quote(modification.getTxId())
+                + ",\"timestamp\":" + timestamp
+                + ",\"isDeleted\":" + modification.isDeleted()
+                + ",\"asset\":" + asset + "}";
+    }
+
+    /**
+     * Retrieves one page of the basils held by an owner, first those it holds directly through the
+     * owner~qr index and then the members of its lots, so the cost depends on the owner's holdings
+     * and not on the size of the ledger.
+     *
+     * @param ctx the transaction context
+     * @param ownerId MSP ID of the owner
+     * @param pageSize maximum number of basils to return, at least 1
+     * @param bookmark bookmark returned by the previous page, empty for the first page
+     * @return page of basils together with the bookmark of the next page
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetBasilsByOwner(final BasilContext ctx, final String ownerId, final int pageSize, final String bookmark) {
+        if (pageSize < 1) {
+            throw BasilErrors.INVALID_ARGUMENT.exception("Page size must be at least 1");
+        }
+        ChaincodeStub stub = ctx.getStub();
+
+        String[] position = ownerBookmark(bookmark);
+        RawJsonPage page = new RawJsonPage();
+        int fetched = 0;
+
+        if (position[0] == null) {
+            QueryResultsIteratorWithMetadata<KeyValue> results = stub.getStateByPartialCompositeKeyWithPagination(
+                    stub.createCompositeKey(OWNER_INDEX, ownerId), pageSize, position[1]);
+            try {
+                for (KeyValue result : results) {
+                    String qr = stub.splitCompositeKey(result.getKey()).getAttributes().get(1);
+                    String basilJSON = ctx.getStringState(qr);
+                    if (!basilJSON.isEmpty()) {
+                        page.add(basilJSON);
+                    }
+                }
+                fetched = results.getMetadata().getFetchedRecordsCount();
+                if (fetched >= pageSize) {
+                    // an empty peer bookmark means the index is exhausted, so the lots come next
+                    String next = results.getMetadata().getBookmark();
+                    return page.toJson(fetched, next.isEmpty() ? LOT_BOOKMARK + "|" : DIRECT_BOOKMARK + next);
+                }
+            } finally {
+                closeQuietly(results);
+            }
+            position = new String[] {"", ""};
+        }
+
+        return addLotMembers(ctx, ownerId, page, fetched, pageSize, position[0], position[1],
+                (lotId, requested, memberBookmark) -> stub.getStateByPartialCompositeKeyWithPagination(
+                        stub.createCompositeKey(Lots.LOT_MEMBER_INDEX, lotId), requested, memberBookmark),
+                member -> ctx.getStringState(stub.splitCompositeKey(member.getKey()).getAttributes().get(1)));
+    }
+
+    /**
+     * Retrieves one page of the basils of an owner that match a selector, first those it holds
+     * directly and then the members of its lots, in the same two phases as GetBasilsByOwner.
+     */
+    private static String queryOwnerHoldings(final BasilContext ctx, final JSONObject selector,
+            final String ownerId, final int pageSize, final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+
+        String[] position = ownerBookmark(bookmark);
+        RawJsonPage page = new RawJsonPage();
+        int fetched = 0;
+
+        if (position[0] == null) {
+            QueryResultsIteratorWithMetadata<KeyValue> results =
+                    stub.getQueryResultWithPagination(RichQuery.heldDirectly(selector), pageSize, position[1]);
+            try {
+                for (KeyValue result : results) {
+                    page.add(result.getStringValue());
+                }
+                fetched = results.getMetadata().getFetchedRecordsCount();
+                if (fetched >= pageSize) {
+                    String next = results.getMetadata().getBookmark();
+                    return page.toJson(fetched, next.isEmpty() ? LOT_BOOKMARK + "|" : DIRECT_BOOKMARK + next);
+                }
+            } finally {
+                closeQuietly(results);
+            }
+            position = new String[] {"", ""};
+        }
+
+        return addLotMembers(ctx, ownerId, page, fetched, pageSize, position[0], position[1],
+                (lotId, requested, memberBookmark) -> stub.getQueryResultWithPagination(
+                        RichQuery.lotMembers(selector, lotId), requested, memberBookmark),
+                KeyValue::getStringValue);
+    }
+
+    /**
+     * Parses the bookmark of an owner page, {@code d|<peer bookmark>} while paging through the
+     * basils the owner holds directly and {@code l|<lotId>|<peer bookmark>} while paging through
+     * the members of its lots.
+     *
+     * @param bookmark bookmark returned by the previous page, empty for the first page
+     * @return the lot the page starts in, null for the directly held basils, and the peer bookmark
+     */
+    private static String[] ownerBookmark(final String bookmark) {
+        if (bookmark == null || bookmark.isEmpty()) {
+            return new String[] {null, ""};
+        }
+        if (bookmark.startsWith(DIRECT_BOOKMARK)) {
+            return new String[] {null, bookmark.substring(DIRECT_BOOKMARK.length())};
+        }
+        int separator = bookmark.indexOf('|', LOT_BOOKMARK.length());
+        if (!bookmark.startsWith(LOT_BOOKMARK) || separator < 0) {
+            throw BasilErrors.INVALID_ARGUMENT.exception("Invalid bookmark " + bookmark);
+        }
+        return new String[] {bookmark.substring(LOT_BOOKMARK.length(), separator), bookmark.substring(separator + 1)};
+    }
+
+    /**
+     * Fills the rest of an owner page with the members of the owner's lots, in lot ID order,
+     * starting at the lot of the bookmark.
+     *
+     * @param page page holding the directly held basils already fetched
+     * @param fetched number of records fetched for the page so far
+     * @param members fetches one page of the members of a lot
+     * @param basilOf stored basil of a fetched member, empty if it no longer exists
+     * @return page of basils together with the bookmark of the next page
+     */
+    private static String addLotMembers(final BasilContext ctx, final String ownerId, final RawJsonPage page,
+            final int fetched, final int pageSize, final String lotBookmark, final String innerBookmark,
+            final MemberPages members, final Function<KeyValue, String> basilOf) {
+        ChaincodeStub stub = ctx.getStub();
+
+        Lots.OwnerResolver owners = new Lots.OwnerResolver(ctx);
+        int total = fetched;
+        QueryResultsIterator<KeyValue> lots = stub.getStateByPartialCompositeKey(
+                stub.createCompositeKey(Lots.OWNER_LOT_INDEX, ownerId));
+        try {
+            for (KeyValue lotEntry : lots) {
+                String lotId = stub.splitCompositeKey(lotEntry.getKey()).getAttributes().get(1);
+                if (lotId.compareTo(lotBookmark) < 0) {
+                    continue;
+                }
+                if (total >= pageSize) {
+                    // the previous lot filled the page exactly, so the next page starts here
+                    return page.toJson(total, LOT_BOOKMARK + lotId + "|");
+                }
+                String memberBookmark = lotId.equals(lotBookmark) ? innerBookmark : "";
+                int requested = pageSize - total;
+                QueryResultsIteratorWithMetadata<KeyValue> results = members.fetch(lotId, requested, memberBookmark);
                 try {
-                    results.close();
-                } catch (Exception e) {
-                    // Po prostu zignoruj błąd zamykania, ale wypisz ostrzeżenie
-                    System.err.println("Błąd zamykania iteratora: " + e.getMessage());
+                    for (KeyValue member : results) {
+                        String basilJSON = basilOf.apply(member);
+                        if (!basilJSON.isEmpty()) {
+                            page.add(owners.resolve(basilJSON));
+                        }
+                    }
+                    int count = results.getMetadata().getFetchedRecordsCount();
+                    total += count;
+                    String next = results.getMetadata().getBookmark();
+                    if (count >= requested && !next.isEmpty()) {
+                        return page.toJson(total, LOT_BOOKMARK + lotId + "|" + next);
+                    }
+                } finally {
+                    closeQuietly(results);
+                }
+            }
+        } finally {
+            closeQuietly(lots);
+        }
+        return page.toJson(total, "");
+    }
+
+    /**
+     * Brings basils written by earlier versions of the chaincode up to date: adds them to the
+     * owner~qr index, so that GetBasilsByOwner finds them, and rewrites records without a docType,
+     * so that GetBasilsByQuery finds them. Each organisation reindexes the basils it holds; run it
+     * repeatedly, passing the returned nextKey, until nextKey is empty. Paginated queries are not
+     * allowed in submit transactions, so a batch is bounded by the limit instead.
+     *
+     * @param ctx the transaction context
+     * @param startKey QR code to resume from, inclusive; empty for the first basil
+     * @param limit maximum number of basils to scan in this transaction
+     * @return the number of basils scanned, indexed and rewritten, and the key to resume from
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String ReindexBasils(final BasilContext ctx, final String startKey, final int limit) {
+        if (limit < 1) {
+            throw BasilErrors.INVALID_ARGUMENT.exception("Limit must be at least 1");
+        }
+        ChaincodeStub stub = ctx.getStub();
+        String callingMSP = ctx.getClientIdentity().getMSPID();
+
+        int scanned = 0;
+        int indexed = 0;
+        int rewritten = 0;
+        String nextKey = "";
+        QueryResultsIterator<KeyValue> results = stub.getStateByRange(startKey, "");
+        try {
+            for (KeyValue result : results) {
+                if (result.getKey().startsWith(COMPOSITE_KEY_NAMESPACE)) {
+                    continue;
+                }
+                if (scanned == limit) {
+                    nextKey = result.getKey();
+                    break;
+                }
+                scanned++;
+                String basilJSON = result.getStringValue();
+                Basil basil = BasilCodec.fromJson(basilJSON);
+                Owner owner = Lots.resolveOwner(ctx, basil);
+                if (owner == null || !callingMSP.equals(owner.getOwnerID())) {
+                    // every basil is reindexed by its owner
+                    continue;
+                }
+                if (!BasilCodec.hasDocType(basilJSON)) {
+                    ctx.putBasil(basil);
+                    rewritten++;
+                }
+                // lot members are found through the lot
+                String indexKey = stub.createCompositeKey(OWNER_INDEX, callingMSP, basil.getQr()).toString();
+                if (basil.getLotId() == null && ctx.getState(indexKey).length == 0) {
+                    addToOwnerIndex(ctx, callingMSP, basil.getQr());
+                    indexed++;
                 }
             }
+        } finally {
+            closeQuietly(results);
         }
+        return "{\"scanned\":" + scanned + ",\"indexed\":" + indexed + ",\"rewritten\":" + rewritten
+                + ",\"nextKey\":" + JSONObject.quote(nextKey) + "}";
+    }
 
-        // 4. Zwróć zserializowaną listę
-        return genson.serialize(historyRecords);
+    private static List<String> lotsOf(final BasilContext ctx, final String ownerId) {
+        ChaincodeStub stub = ctx.getStub();
+        List<String> lotIds = new ArrayList<>();
+        QueryResultsIterator<KeyValue> lots = stub.getStateByPartialCompositeKey(
+                stub.createCompositeKey(Lots.OWNER_LOT_INDEX, ownerId));
+        try {
+            for (KeyValue lotEntry : lots) {
+                lotIds.add(stub.splitCompositeKey(lotEntry.getKey()).getAttributes().get(1));
+            }
+        } finally {
+            closeQuietly(lots);
+        }
+        return lotIds;
     }
 
-    // @Transaction(intent = Transaction.TYPE.EVALUATE)
-    // public String GetAllBillsOfOrganisation(final Context ctx, String organisationID) {
-    //     ChaincodeStub stub = ctx.getStub();
+    /**
+     * Drops a basil from a lot's member index and count, deleting the lot once it is empty.
+     */
+    private static void leaveLot(final BasilContext ctx, final String lotId, final String qr) {
+        Lots.removeMember(ctx, lotId, qr);
+        Lot lot = Lots.get(ctx, lotId);
+        if (lot == null) {
+            return;
+        }
+        if (lot.getMemberCount() <= 1) {
+            Lots.delete(ctx, lotId);
+            Lots.removeFromOwner(ctx, lot.getOwner().getOwnerID(), lotId);
+            Provenances.lotDeleted(ctx, lotId);
+        } else {
+            Lots.put(ctx, new Lot(lotId, lot.getOwner(), lot.getMemberCount() - 1));
+        }
+    }
 
-    //     List<BillOfLading> queryResults = new ArrayList<BillOfLading>();
+    private static void addToOwnerIndex(final BasilContext ctx, final String ownerId, final String qr) {
+        CompositeKey key = ctx.getStub().createCompositeKey(OWNER_INDEX, ownerId, qr);
+        ctx.putState(key.toString(), INDEX_VALUE);
+        // removing the entry again, i.e. any change of ownership, needs every organisation
+        KeyEndorsement.allParties(ctx, key.toString());
+    }
 
-    //     QueryResultsIterator<KeyValue> results = stub.getStateByRange("", "");
+    /**
+     * Lets peers of the owner alone endorse the next changes to a new basil and its summary.
+     */
+    private static void endorsedBy(final BasilContext ctx, final Basil basil) {
+        KeyEndorsement.forBasil(ctx, basil.getQr(), basil);
+        KeyEndorsement.forBasil(ctx, Provenances.summaryKey(ctx, basil.getQr()), basil);
+    }
 
-    //     for (KeyValue result: results) {
-    //         BillOfLading bill = genson.deserialize(result.getStringValue(), BillOfLading.class);
-    //         if (!bill.getOwner().contentEquals(organisationID)) {
-    //             continue;
-    //         }
-    //         queryResults.add(bill);
-    //         System.out.println(bill.toString());
-    //     }
+    /**
+     * Hands every key that describes a basil alone to its new holder: its owner, or every party
+     * while it is in a lot.
+     */
+    private static void handOver(final BasilContext ctx, final Basil basil) {
+        endorsedBy(ctx, basil);
+        LegLog.endorse(ctx, basil);
+        GeoIndex.endorse(ctx, basil);
+    }
 
-    //     final String response = genson.serialize(queryResults);
+    private static void removeFromOwnerIndex(final BasilContext ctx, final String ownerId, final String qr) {
+        CompositeKey key = ctx.getStub().createCompositeKey(OWNER_INDEX, ownerId, qr);
+        ctx.delState(key.toString());
+    }
 
-    //     return response;
-    // }
+    /**
+     * @return true if the leg was recorded after the current one; legs without a timestamp are
+     *         treated as the oldest
+     */
+    private static boolean isNewer(final BasilLeg leg, final BasilLeg current) {
+        if (leg == null || leg.getTimestamp() == null) {
+            return false;
+        }
+        return current == null || current.getTimestamp() == null || current.getTimestamp() < leg.getTimestamp();
+    }
+
+    /**
+     * @param configured value of BASIL_MAX_BATCH_SIZE, possibly null
+     * @return the configured batch size, or the default if it is not a positive integer
+     */
+    static int maxBatchSize(final String configured) {
+        if (configured == null || configured.isBlank()) {
+            return DEFAULT_MAX_BATCH_SIZE;
+        }
+        try {
+            int size = Integer.parseInt(configured.trim());
+            if (size > 0) {
+                return size;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        System.err.println("Ignoring BASIL_MAX_BATCH_SIZE=" + configured + ", it must be a positive integer; using "
+                + DEFAULT_MAX_BATCH_SIZE);
+        return DEFAULT_MAX_BATCH_SIZE;
+    }
+
+    static void closeQuietly(final AutoCloseable results) {
+        if (results == null) {
+            return;
+        }
+        try {
+            results.close();
+        } catch (Exception e) {
+            System.err.println("Failed to close query iterator: " + e.getMessage());
+        }
+    }
+
+    /**
+     * One page of the members of a lot.
+     */
+    @FunctionalInterface
+    private interface MemberPages {
+        QueryResultsIteratorWithMetadata<KeyValue> fetch(String lotId, int pageSize, String bookmark);
+    }
 }
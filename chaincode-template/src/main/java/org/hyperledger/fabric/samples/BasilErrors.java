@@ -0,0 +1,32 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+
+/**
+ * Error codes of {@link BasilContract}. A rejected transaction throws instead of returning a
+ * message, so endorsement fails and nothing is sent to the orderer. The code is the payload of
+ * the exception and also prefixes its message, which is what gateway clients receive in the
+ * endorsement error details.
+ */
+enum BasilErrors {
+    BASIL_NOT_FOUND,
+    BASIL_ALREADY_EXISTS,
+    BASIL_IN_LOT,
+    BASIL_NOT_IN_LOT,
+    LOT_NOT_FOUND,
+    NOT_AUTHORIZED,
+    INVALID_ARGUMENT;
+
+    /**
+     * @param message human readable description
+     * @return exception carrying this code
+     */
+    ChaincodeException exception(final String message) {
+        ChaincodeMetrics.INSTANCE.rejected();
+        return new ChaincodeException(name() + ": " + message, name());
+    }
+}
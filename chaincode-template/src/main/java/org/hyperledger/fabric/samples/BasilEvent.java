@@ -0,0 +1,95 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Compact description of one change made by a transaction, published to clients as a chaincode
+ * event so they can follow the ledger without polling QueryBasil.
+ *
+ * <p>A transaction can set only one chaincode event, so {@link BasilContext} collects the changes
+ * of a transaction and publishes them together: the event is named after the type of the first
+ * change and its payload is a JSON array of
+ * {@code {"type":...,"qr":...,"owner":...,"lotId":...,"legTimestamp":...}} objects. A lot
+ * transfer carries the lot ID and no QR; its members take the new owner.
+ */
+final class BasilEvent {
+
+    static final String CREATED = "CREATED";
+
+    static final String UPDATED = "UPDATED";
+
+    static final String LEG_RECORDED = "LEG_RECORDED";
+
+    static final String TRANSFERRED = "TRANSFERRED";
+
+    static final String DELETED = "DELETED";
+
+    static final String LOT_ASSIGNED = "LOT_ASSIGNED";
+
+    static final String LOT_REMOVED = "LOT_REMOVED";
+
+    static final String LOT_TRANSFERRED = "LOT_TRANSFERRED";
+
+    private final String type;
+
+    private final String qr;
+
+    private final String owner;
+
+    private final String lotId;
+
+    private final Long legTimestamp;
+
+    BasilEvent(final String type, final String qr, final String owner, final String lotId, final Long legTimestamp) {
+        this.type = type;
+        this.qr = qr;
+        this.owner = owner;
+        this.lotId = lotId;
+        this.legTimestamp = legTimestamp;
+    }
+
+    /**
+     * @param type type of the change
+     * @param basil the basil after the change, or before it for a delete
+     * @param owner the owner the basil resolves to, which for lot members is the lot's owner
+     * @return event describing the change
+     */
+    static BasilEvent of(final String type, final Basil basil, final Owner owner) {
+        BasilLeg leg = basil.getBasilLeg();
+        return new BasilEvent(type, basil.getQr(), owner.getOwnerID(), basil.getLotId(),
+                leg == null ? null : leg.getTimestamp());
+    }
+
+    String getType() {
+        return type;
+    }
+
+    /**
+     * @param events changes made by one transaction
+     * @return the event payload
+     */
+    static byte[] payload(final List<BasilEvent> events) {
+        StringBuilder out = new StringBuilder(events.size() * 96 + 2).append('[');
+        for (int i = 0; i < events.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            BasilEvent event = events.get(i);
+            out.append("{\"type\":");
+            BasilCodec.writeString(out, event.type);
+            out.append(",\"qr\":");
+            BasilCodec.writeString(out, event.qr);
+            out.append(",\"owner\":");
+            BasilCodec.writeString(out, event.owner);
+            out.append(",\"lotId\":");
+            BasilCodec.writeString(out, event.lotId);
+            out.append(",\"legTimestamp\":").append(event.legTimestamp).append('}');
+        }
+        return out.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
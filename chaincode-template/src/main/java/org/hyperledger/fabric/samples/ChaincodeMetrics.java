@@ -0,0 +1,563 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.logging.Logger;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Where the invocations of {@link BasilContract} spend their time inside the peer, per
+ * transaction function: total latency, time in shim calls and in JSON serialization, state reads
+ * and writes with their sizes, and range and history records scanned.
+ *
+ * <p>An invocation is timed from {@link BasilContract#beforeTransaction} to
+ * {@link BasilContract#afterTransaction}, which includes the flush of its writes, and counted
+ * once with its outcome: ok, rejected or failed. The contract API calls no hook when a function
+ * throws, so a rejection is recorded when its {@link BasilErrors} exception is created. Any other
+ * failure is recorded, with its I/O but without latency, when the thread starts its next
+ * invocation or, if it does not, once the invocation is older than the peer's default execute
+ * timeout of {@value #ABANDONED_AFTER_SECONDS} seconds. Shim calls are measured by the stub wrapper
+ * {@link #instrument} returns, iterators included, and serialization by the codec call sites
+ * through {@link #serialization}. The invocation in progress is kept per thread, as the shim
+ * runs each invocation on one thread.
+ *
+ * <p>{@link BasilChaincode} starts the exporter. When the chaincode runs as a service
+ * ({@code CHAINCODE_SERVER_ADDRESS} set), the metrics are
+ * served in the Prometheus text format on {@code /metrics} at port {@code BASIL_METRICS_PORT}
+ * (9464 by default). Otherwise a JSON summary is logged every {@code BASIL_METRICS_LOG_SECONDS}
+ * (60 by default) if there were invocations. {@code BASIL_METRICS=off} disables instrumentation.
+ */
+final class ChaincodeMetrics {
+
+    static final ChaincodeMetrics INSTANCE = new ChaincodeMetrics(
+            !"off".equalsIgnoreCase(System.getenv().getOrDefault("BASIL_METRICS", "on")));
+
+    private static final Logger LOGGER = Logger.getLogger(ChaincodeMetrics.class.getName());
+
+    /** Upper bounds of the latency histogram buckets, in seconds. */
+    private static final double[] BUCKETS = {
+        0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5};
+
+    private static final String PREFIX = "basil_chaincode_";
+
+    /** Age after which an invocation that never ended is recorded as failed. */
+    private static final long ABANDONED_AFTER_SECONDS = 30;
+
+    /** How an invocation ended; the label of its count. */
+    private enum Outcome {
+        OK, REJECTED, FAILED;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final boolean enabled;
+    private final Map<String, FunctionMetrics> functions = new ConcurrentSkipListMap<>();
+    private final ThreadLocal<Invocation> current = new ThreadLocal<>();
+    /** Invocations begun and not yet recorded, on any thread. */
+    private final Set<Invocation> inFlight = ConcurrentHashMap.newKeySet();
+    private final Map<String, Boolean> started = new ConcurrentHashMap<>();
+
+    private ChaincodeMetrics(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Starts the Prometheus endpoint or the periodic log summaries, once per process.
+     */
+    void startExporter() {
+        if (!enabled || started.putIfAbsent("exporter", Boolean.TRUE) != null) {
+            return;
+        }
+        if (System.getenv("CHAINCODE_SERVER_ADDRESS") != null) {
+            int port = Integer.parseInt(System.getenv().getOrDefault("BASIL_METRICS_PORT", "9464"));
+            try {
+                HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+                server.createContext("/metrics", exchange -> {
+                    byte[] body = prometheus().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                });
+                server.start();
+                return;
+            } catch (IOException e) {
+                LOGGER.warning("Cannot serve metrics on port " + port + ", logging them instead: " + e.getMessage());
+            }
+        }
+        long interval = Long.parseLong(System.getenv().getOrDefault("BASIL_METRICS_LOG_SECONDS", "60"));
+        ScheduledExecutorService logger = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "basil-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long[] logged = {0};
+        logger.scheduleWithFixedDelay(() -> {
+            // an exception would cancel every later run of the task
+            try {
+                recordAbandoned();
+                long invocations = invocations();
+                if (invocations != logged[0]) {
+                    logged[0] = invocations;
+                    LOGGER.info(summary().toString());
+                }
+            } catch (RuntimeException e) {
+                LOGGER.warning("Cannot log the metrics: " + e);
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param stub stub of one invocation
+     * @return a stub that accounts its calls to the invocation in progress on the calling thread
+     */
+    ChaincodeStub instrument(final ChaincodeStub stub) {
+        if (!enabled) {
+            return stub;
+        }
+        return (ChaincodeStub) Proxy.newProxyInstance(ChaincodeStub.class.getClassLoader(),
+                new Class<?>[] {ChaincodeStub.class}, (proxy, method, args) -> invokeStub(stub, method, args));
+    }
+
+    /**
+     * Starts timing an invocation on the calling thread.
+     *
+     * @param function name of the transaction function, possibly prefixed with the contract name
+     */
+    void begin(final String function) {
+        if (!enabled) {
+            return;
+        }
+        Invocation abandoned = current.get();
+        if (abandoned != null) {
+            // the previous invocation on this thread threw without going through BasilErrors
+            record(abandoned, Outcome.FAILED, -1);
+        }
+        String name = function == null || function.isEmpty()
+                ? "unknown" : function.substring(function.indexOf(':') + 1);
+        Invocation invocation = new Invocation(name, System.nanoTime());
+        inFlight.add(invocation);
+        current.set(invocation);
+    }
+
+    /**
+     * Records the invocation in progress on the calling thread as completed.
+     */
+    void end() {
+        finish(Outcome.OK);
+    }
+
+    /**
+     * Records the invocation in progress on the calling thread as rejected by the contract.
+     */
+    void rejected() {
+        finish(Outcome.REJECTED);
+    }
+
+    /**
+     * Runs a serialization or deserialization, accounting its time to the invocation in progress.
+     *
+     * @param codec the encoding or decoding
+     * @return what the codec returned
+     */
+    static <T> T serialization(final Supplier<T> codec) {
+        Invocation invocation = INSTANCE.current.get();
+        if (invocation == null) {
+            return codec.get();
+        }
+        long start = System.nanoTime();
+        try {
+            return codec.get();
+        } finally {
+            invocation.serializationNanos += System.nanoTime() - start;
+        }
+    }
+
+    private void finish(final Outcome outcome) {
+        Invocation invocation = enabled ? current.get() : null;
+        if (invocation == null) {
+            return;
+        }
+        current.remove();
+        record(invocation, outcome, System.nanoTime() - invocation.startNanos);
+    }
+
+    /**
+     * @param elapsedNanos latency of the invocation, or a negative value if it is not known
+     */
+    private void record(final Invocation invocation, final Outcome outcome, final long elapsedNanos) {
+        // whichever of the thread and the sweep gets here first records it
+        if (inFlight.remove(invocation)) {
+            functionMetrics(invocation.function).record(invocation, outcome, elapsedNanos);
+        }
+    }
+
+    /**
+     * Records as failed the invocations that threw on a thread that has not run another one
+     * since; the peer has given up on them by now.
+     */
+    private void recordAbandoned() {
+        long now = System.nanoTime();
+        for (Invocation invocation : inFlight) {
+            if (now - invocation.startNanos > TimeUnit.SECONDS.toNanos(ABANDONED_AFTER_SECONDS)) {
+                record(invocation, Outcome.FAILED, -1);
+            }
+        }
+    }
+
+    private FunctionMetrics functionMetrics(final String function) {
+        return functions.computeIfAbsent(function, f -> new FunctionMetrics());
+    }
+
+    private long invocations() {
+        long total = 0;
+        for (FunctionMetrics metrics : functions.values()) {
+            total += metrics.invocations();
+        }
+        return total;
+    }
+
+    private Object invokeStub(final ChaincodeStub stub, final Method method, final Object[] args) throws Throwable {
+        Invocation invocation = current.get();
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = method.invoke(stub, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        } finally {
+            if (invocation != null) {
+                invocation.stubNanos += System.nanoTime() - start;
+            }
+        }
+        if (invocation == null) {
+            return result;
+        }
+        switch (method.getName()) {
+            case "getState":
+                invocation.stateReads++;
+                invocation.stateReadBytes += result == null ? 0 : ((byte[]) result).length;
+                return result;
+            case "getStringState":
+                invocation.stateReads++;
+                invocation.stateReadBytes += result == null ? 0 : utf8Length((String) result);
+                return result;
+            case "putState":
+                invocation.stateWrites++;
+                invocation.stateWriteBytes += ((byte[]) args[1]).length;
+                return result;
+            case "putStringState":
+                invocation.stateWrites++;
+                invocation.stateWriteBytes += utf8Length((String) args[1]);
+                return result;
+            case "delState":
+                invocation.stateDeletes++;
+                return result;
+            case "getHistoryForKey":
+                return countingIterable(method.getReturnType(), result, invocation, true);
+            default:
+                if (method.getName().startsWith("getStateBy") || method.getName().startsWith("getQueryResult")) {
+                    return countingIterable(method.getReturnType(), result, invocation, false);
+                }
+                return result;
+        }
+    }
+
+    private static long utf8Length(final String value) {
+        long length = value.length();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                // surrogate pairs count two chars and four bytes
+                length += c < 0x800 ? 1 : Character.isSurrogate(c) ? 1 : 2;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Wraps a query result so that iterating it counts the records and the time spent fetching
+     * them, which the shim does lazily, page by page.
+     */
+    private static Object countingIterable(final Class<?> type, final Object results, final Invocation invocation,
+            final boolean history) {
+        if (results == null) {
+            return null;
+        }
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+            Object result;
+            try {
+                result = method.invoke(results, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (!"iterator".equals(method.getName())) {
+                return result;
+            }
+            Iterator<?> iterator = (Iterator<?>) result;
+            return new Iterator<Object>() {
+                @Override
+                public boolean hasNext() {
+                    long start = System.nanoTime();
+                    try {
+                        return iterator.hasNext();
+                    } finally {
+                        invocation.stubNanos += System.nanoTime() - start;
+                    }
+                }
+
+                @Override
+                public Object next() {
+                    long start = System.nanoTime();
+                    Object record = iterator.next();
+                    invocation.stubNanos += System.nanoTime() - start;
+                    if (history) {
+                        byte[] value = ((KeyModification) record).getValue();
+                        invocation.historyRecords++;
+                        invocation.historyBytes += value == null ? 0 : value.length;
+                    } else {
+                        byte[] value = ((KeyValue) record).getValue();
+                        invocation.rangeRecords++;
+                        invocation.rangeBytes += value == null ? 0 : value.length;
+                    }
+                    return record;
+                }
+            };
+        });
+    }
+
+    /**
+     * @return every metric in the Prometheus text exposition format
+     */
+    String prometheus() {
+        recordAbandoned();
+        StringBuilder out = new StringBuilder(4096);
+        out.append("# HELP ").append(PREFIX).append("transactions_total")
+                .append(" Invocations by outcome: ok, rejected by the contract, or failed otherwise.\n");
+        out.append("# TYPE ").append(PREFIX).append("transactions_total counter\n");
+        for (Map.Entry<String, FunctionMetrics> entry : functions.entrySet()) {
+            for (Outcome outcome : Outcome.values()) {
+                String labels = "function=\"" + entry.getKey() + "\",outcome=\"" + outcome.label() + "\"";
+                sample(out, "transactions_total", labels, entry.getValue().outcomes[outcome.ordinal()].sum());
+            }
+        }
+        out.append("# HELP ").append(PREFIX).append("transaction_duration_seconds")
+                .append(" Latency of invocations, from beforeTransaction to afterTransaction or rejection.\n");
+        out.append("# TYPE ").append(PREFIX).append("transaction_duration_seconds histogram\n");
+        for (Map.Entry<String, FunctionMetrics> entry : functions.entrySet()) {
+            String label = "function=\"" + entry.getKey() + "\"";
+            FunctionMetrics metrics = entry.getValue();
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += metrics.buckets.get(i);
+                sample(out, "transaction_duration_seconds_bucket", label + ",le=\"" + BUCKETS[i] + "\"", cumulative);
+            }
+            cumulative += metrics.buckets.get(BUCKETS.length);
+            sample(out, "transaction_duration_seconds_bucket", label + ",le=\"+Inf\"", cumulative);
+            sample(out, "transaction_duration_seconds_sum", label, metrics.nanos.sum() / 1e9);
+            sample(out, "transaction_duration_seconds_count", label, cumulative);
+        }
+        counter(out, "stub_seconds_total", "Time spent in shim calls, iteration included.",
+                m -> m.stubNanos.sum() / 1e9);
+        counter(out, "serialization_seconds_total", "Time spent encoding and decoding JSON.",
+                m -> m.serializationNanos.sum() / 1e9);
+        counter(out, "state_reads_total", "World state reads sent to the peer.", m -> m.stateReads.sum());
+        counter(out, "state_read_bytes_total", "Bytes of the values read.", m -> m.stateReadBytes.sum());
+        counter(out, "state_writes_total", "World state writes sent to the peer.", m -> m.stateWrites.sum());
+        counter(out, "state_write_bytes_total", "Bytes of the values written.", m -> m.stateWriteBytes.sum());
+        counter(out, "state_deletes_total", "World state deletes sent to the peer.", m -> m.stateDeletes.sum());
+        counter(out, "range_records_total", "Records returned by range, composite key and rich queries.",
+                m -> m.rangeRecords.sum());
+        counter(out, "range_record_bytes_total", "Bytes of the values of those records.", m -> m.rangeBytes.sum());
+        counter(out, "history_records_total", "Key history records scanned.", m -> m.historyRecords.sum());
+        counter(out, "history_record_bytes_total", "Bytes of the values of those records.", m -> m.historyBytes.sum());
+        return out.toString();
+    }
+
+    /**
+     * @return per function invocation count, latency percentiles in milliseconds, time split and
+     *         I/O totals
+     */
+    JSONObject summary() {
+        recordAbandoned();
+        JSONObject summary = new JSONObject();
+        for (Map.Entry<String, FunctionMetrics> entry : functions.entrySet()) {
+            FunctionMetrics metrics = entry.getValue();
+            long timed = metrics.timed.sum();
+            summary.put(entry.getKey(), new JSONObject()
+                    .put("count", metrics.invocations())
+                    .put("ok", metrics.outcomes[Outcome.OK.ordinal()].sum())
+                    .put("rejected", metrics.outcomes[Outcome.REJECTED.ordinal()].sum())
+                    .put("failed", metrics.outcomes[Outcome.FAILED.ordinal()].sum())
+                    .put("meanMillis", timed == 0 ? 0 : metrics.nanos.sum() / 1e6 / timed)
+                    .put("p50Millis", metrics.percentileMillis(50))
+                    .put("p95Millis", metrics.percentileMillis(95))
+                    .put("p99Millis", metrics.percentileMillis(99))
+                    .put("stubMillis", metrics.stubNanos.sum() / 1e6)
+                    .put("serializationMillis", metrics.serializationNanos.sum() / 1e6)
+                    .put("stateReads", metrics.stateReads.sum())
+                    .put("stateReadBytes", metrics.stateReadBytes.sum())
+                    .put("stateWrites", metrics.stateWrites.sum())
+                    .put("stateWriteBytes", metrics.stateWriteBytes.sum())
+                    .put("stateDeletes", metrics.stateDeletes.sum())
+                    .put("rangeRecords", metrics.rangeRecords.sum())
+                    .put("historyRecords", metrics.historyRecords.sum()));
+        }
+        return new JSONObject().put("basilMetrics", summary);
+    }
+
+    private void counter(final StringBuilder out, final String name, final String help,
+            final ToDoubleFunction<FunctionMetrics> value) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(" counter\n");
+        for (Map.Entry<String, FunctionMetrics> entry : functions.entrySet()) {
+            sample(out, name, "function=\"" + entry.getKey() + "\"", value.applyAsDouble(entry.getValue()));
+        }
+    }
+
+    private static void sample(final StringBuilder out, final String name, final String labels, final double value) {
+        out.append(PREFIX).append(name).append('{').append(labels).append("} ");
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(String.format(Locale.ROOT, "%.9f", value));
+        }
+        out.append('\n');
+    }
+
+    /**
+     * Counters of one invocation; only touched by the thread running it.
+     */
+    private static final class Invocation {
+        private final String function;
+        private final long startNanos;
+        private long stubNanos;
+        private long serializationNanos;
+        private long stateReads;
+        private long stateReadBytes;
+        private long stateWrites;
+        private long stateWriteBytes;
+        private long stateDeletes;
+        private long rangeRecords;
+        private long rangeBytes;
+        private long historyRecords;
+        private long historyBytes;
+
+        Invocation(final String function, final long startNanos) {
+            this.function = function;
+            this.startNanos = startNanos;
+        }
+    }
+
+    /**
+     * Totals of one transaction function over all invocations.
+     */
+    private static final class FunctionMetrics {
+        private final LongAdder[] outcomes = new LongAdder[Outcome.values().length];
+        /** Latency histogram of the invocations that ended through a hook. */
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS.length + 1);
+        private final LongAdder timed = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder stubNanos = new LongAdder();
+        private final LongAdder serializationNanos = new LongAdder();
+        private final LongAdder stateReads = new LongAdder();
+        private final LongAdder stateReadBytes = new LongAdder();
+        private final LongAdder stateWrites = new LongAdder();
+        private final LongAdder stateWriteBytes = new LongAdder();
+        private final LongAdder stateDeletes = new LongAdder();
+        private final LongAdder rangeRecords = new LongAdder();
+        private final LongAdder rangeBytes = new LongAdder();
+        private final LongAdder historyRecords = new LongAdder();
+        private final LongAdder historyBytes = new LongAdder();
+
+        FunctionMetrics() {
+            for (int i = 0; i < outcomes.length; i++) {
+                outcomes[i] = new LongAdder();
+            }
+        }
+
+        void record(final Invocation invocation, final Outcome outcome, final long elapsedNanos) {
+            outcomes[outcome.ordinal()].increment();
+            if (elapsedNanos >= 0) {
+                double seconds = elapsedNanos / 1e9;
+                int bucket = 0;
+                while (bucket < BUCKETS.length && seconds > BUCKETS[bucket]) {
+                    bucket++;
+                }
+                buckets.incrementAndGet(bucket);
+                timed.increment();
+                nanos.add(elapsedNanos);
+            }
+            stubNanos.add(invocation.stubNanos);
+            serializationNanos.add(invocation.serializationNanos);
+            stateReads.add(invocation.stateReads);
+            stateReadBytes.add(invocation.stateReadBytes);
+            stateWrites.add(invocation.stateWrites);
+            stateWriteBytes.add(invocation.stateWriteBytes);
+            stateDeletes.add(invocation.stateDeletes);
+            rangeRecords.add(invocation.rangeRecords);
+            rangeBytes.add(invocation.rangeBytes);
+            historyRecords.add(invocation.historyRecords);
+            historyBytes.add(invocation.historyBytes);
+        }
+
+        long invocations() {
+            long total = 0;
+            for (LongAdder outcome : outcomes) {
+                total += outcome.sum();
+            }
+            return total;
+        }
+
+        /**
+         * @return upper bound of the bucket holding the percentile, in milliseconds; the bound of
+         *         the last bucket, i.e. a lower bound, if the percentile lies beyond it
+         */
+        double percentileMillis(final double percentile) {
+            long total = timed.sum();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return BUCKETS[i] * 1000;
+                }
+            }
+            return BUCKETS[BUCKETS.length - 1] * 1000;
+        }
+    }
+}
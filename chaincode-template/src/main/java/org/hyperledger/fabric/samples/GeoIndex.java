@@ -0,0 +1,180 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import java.util.List;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+/**
+ * Spatial index of the latest known position of every basil.
+ *
+ * <p>Entries are {@code geo~hash~qr} composite keys whose attributes are the single characters of
+ * the position's geohash followed by the QR code, so a partial composite key on the first n
+ * characters selects every basil inside one geohash cell. The entry value is the parsed
+ * "lat,lon" position, which lets queries filter by the exact box without reading the basil.
+ */
+final class GeoIndex {
+
+    static final String GEO_INDEX = "geo~hash~qr";
+
+    /** About 38 m x 19 m cells. */
+    static final int PRECISION = 8;
+
+    /** Upper bound on the geohash prefix scans a single bounding-box query may run. */
+    static final int MAX_CELLS = 32;
+
+    private static final char BOOKMARK_SEPARATOR = '|';
+
+    private GeoIndex() {
+    }
+
+    /**
+     * Moves the index entry of a basil from its previous leg to its new leg. Legs whose position
+     * cannot be parsed are simply not indexed.
+     *
+     * @param ctx the transaction context
+     * @param basil the basil as written by the current transaction
+     * @param previous leg the basil is currently indexed under, may be null
+     * @param current new leg of the basil, null when the basil is deleted
+     */
+    static void move(final BasilContext ctx, final Basil basil, final BasilLeg previous, final BasilLeg current) {
+        String qr = basil.getQr();
+        double[] oldPosition = previous == null ? null : Geohash.parsePosition(previous.getGpsPosition());
+        if (oldPosition != null) {
+            ctx.delState(entryKey(ctx.getStub(), oldPosition, qr));
+        }
+        double[] newPosition = current == null ? null : Geohash.parsePosition(current.getGpsPosition());
+        if (newPosition != null) {
+            String key = entryKey(ctx.getStub(), newPosition, qr);
+            ctx.putStringState(key, newPosition[0] + "," + newPosition[1]);
+            KeyEndorsement.forBasil(ctx, key, basil);
+        }
+    }
+
+    /**
+     * Hands the index entry of a basil, if it has one, to the basil's current owner.
+     *
+     * @param ctx the transaction context
+     * @param basil the basil as written by the current transaction
+     */
+    static void endorse(final BasilContext ctx, final Basil basil) {
+        BasilLeg leg = basil.getBasilLeg();
+        double[] position = leg == null ? null : Geohash.parsePosition(leg.getGpsPosition());
+        if (position != null) {
+            KeyEndorsement.forBasil(ctx, entryKey(ctx.getStub(), position, basil.getQr()), basil);
+        }
+    }
+
+    /**
+     * Retrieves one page of the basils whose indexed position lies inside a bounding box.
+     *
+     * <p>The box is covered by at most {@link #MAX_CELLS} geohash cells which are scanned one
+     * after the other; the bookmark records the cell and the peer bookmark inside it. Entries in
+     * a cell but outside the box are dropped, so a page may hold fewer than pageSize records.
+     *
+     * @param ctx the transaction context
+     * @param minLat southern edge in degrees
+     * @param minLon western edge in degrees
+     * @param maxLat northern edge in degrees
+     * @param maxLon eastern edge in degrees
+     * @param pageSize maximum number of index entries to scan, at least 1
+     * @param bookmark bookmark returned by the previous page, empty for the first page
+     * @return page of basils together with the bookmark of the next page
+     */
+    static String query(final BasilContext ctx, final double minLat, final double minLon, final double maxLat,
+            final double maxLon, final int pageSize, final String bookmark) {
+        if (pageSize < 1) {
+            throw BasilErrors.INVALID_ARGUMENT.exception("Page size must be at least 1");
+        }
+        ChaincodeStub stub = ctx.getStub();
+        List<String> cells = Geohash.cover(minLat, minLon, maxLat, maxLon, PRECISION, MAX_CELLS);
+
+        int cell = 0;
+        String cellBookmark = "";
+        if (bookmark != null && !bookmark.isEmpty()) {
+            cell = bookmarkCell(bookmark, cells.size());
+            cellBookmark = bookmark.substring(bookmark.indexOf(BOOKMARK_SEPARATOR) + 1);
+        }
+
+        RawJsonPage page = new RawJsonPage();
+        Lots.OwnerResolver owners = new Lots.OwnerResolver(ctx);
+        int fetched = 0;
+        while (cell < cells.size() && fetched < pageSize) {
+            int requested = pageSize - fetched;
+            QueryResultsIteratorWithMetadata<KeyValue> results = stub.getStateByPartialCompositeKeyWithPagination(
+                    cellKey(stub, cells.get(cell)), requested, cellBookmark);
+            try {
+                for (KeyValue result : results) {
+                    double[] position = Geohash.parsePosition(result.getStringValue());
+                    if (position == null || position[0] < minLat || position[0] > maxLat
+                            || position[1] < minLon || position[1] > maxLon) {
+                        continue;
+                    }
+                    List<String> attributes = stub.splitCompositeKey(result.getKey()).getAttributes();
+                    String basilJSON = ctx.getStringState(attributes.get(attributes.size() - 1));
+                    if (!basilJSON.isEmpty()) {
+                        page.add(owners.resolve(basilJSON));
+                    }
+                }
+                int count = results.getMetadata().getFetchedRecordsCount();
+                fetched += count;
+                cellBookmark = results.getMetadata().getBookmark();
+                // a short page or an empty peer bookmark means the cell is exhausted
+                if (count < requested || cellBookmark.isEmpty()) {
+                    cell++;
+                    cellBookmark = "";
+                }
+            } finally {
+                BasilContract.closeQuietly(results);
+            }
+        }
+
+        String nextBookmark = cell < cells.size() ? cell + String.valueOf(BOOKMARK_SEPARATOR) + cellBookmark : "";
+        return page.toJson(fetched, nextBookmark);
+    }
+
+    /**
+     * @param bookmark bookmark of a bounding-box page, "cell|peer bookmark"
+     * @param cells number of cells covering the box
+     * @return the cell the page starts in
+     */
+    static int bookmarkCell(final String bookmark, final int cells) {
+        int separator = bookmark.indexOf(BOOKMARK_SEPARATOR);
+        int cell = -1;
+        if (separator > 0) {
+            try {
+                cell = Integer.parseInt(bookmark.substring(0, separator));
+            } catch (NumberFormatException e) {
+                // reported below
+            }
+        }
+        if (cell < 0 || cell >= cells) {
+            throw BasilErrors.INVALID_ARGUMENT.exception("Invalid bookmark " + bookmark);
+        }
+        return cell;
+    }
+
+    private static String entryKey(final ChaincodeStub stub, final double[] position, final String qr) {
+        String hash = Geohash.encode(position[0], position[1], PRECISION);
+        String[] attributes = new String[hash.length() + 1];
+        for (int i = 0; i < hash.length(); i++) {
+            attributes[i] = String.valueOf(hash.charAt(i));
+        }
+        attributes[hash.length()] = qr;
+        return stub.createCompositeKey(GEO_INDEX, attributes).toString();
+    }
+
+    private static CompositeKey cellKey(final ChaincodeStub stub, final String prefix) {
+        String[] attributes = new String[prefix.length()];
+        for (int i = 0; i < prefix.length(); i++) {
+            attributes[i] = String.valueOf(prefix.charAt(i));
+        }
+        return stub.createCompositeKey(GEO_INDEX, attributes);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Geohash encoding of positions and coverage of bounding boxes by geohash cells.
+ */
+final class Geohash {
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    private Geohash() {
+    }
+
+    /**
+     * @param latitude latitude in degrees
+     * @param longitude longitude in degrees
+     * @param precision number of geohash characters
+     * @return the geohash of the cell containing the position
+     */
+    static String encode(final double latitude, final double longitude, final int precision) {
+        double minLat = -90;
+        double maxLat = 90;
+        double minLon = -180;
+        double maxLon = 180;
+        boolean evenBit = true;
+        int bit = 0;
+        int ch = 0;
+        StringBuilder hash = new StringBuilder(precision);
+
+        while (hash.length() < precision) {
+            if (evenBit) {
+                double mid = (minLon + maxLon) / 2;
+                if (longitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLon = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+            if (++bit == 5) {
+                hash.append(BASE32.charAt(ch));
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Returns the geohash cells that together cover a bounding box, using the finest precision for
+     * which no more than {@code maxCells} cells are needed.
+     *
+     * @param minLat southern edge in degrees
+     * @param minLon western edge in degrees
+     * @param maxLat northern edge in degrees
+     * @param maxLon eastern edge in degrees
+     * @param maxPrecision finest precision to consider
+     * @param maxCells upper bound on the number of cells
+     * @return sorted geohash prefixes of the covering cells
+     */
+    static List<String> cover(final double minLat, final double minLon, final double maxLat, final double maxLon,
+            final int maxPrecision, final int maxCells) {
+        int precision = 1;
+        for (int p = maxPrecision; p > 1; p--) {
+            if (cellCount(minLat, minLon, maxLat, maxLon, p) <= maxCells) {
+                precision = p;
+                break;
+            }
+        }
+
+        int lonBits = (5 * precision + 1) / 2;
+        int latBits = 5 * precision / 2;
+        double cellWidth = 360.0 / (1L << lonBits);
+        double cellHeight = 180.0 / (1L << latBits);
+
+        TreeSet<String> cells = new TreeSet<>();
+        for (long x = cellIndex(minLon + 180, cellWidth, lonBits); x <= cellIndex(maxLon + 180, cellWidth, lonBits); x++) {
+            for (long y = cellIndex(minLat + 90, cellHeight, latBits); y <= cellIndex(maxLat + 90, cellHeight, latBits); y++) {
+                cells.add(encode(-90 + (y + 0.5) * cellHeight, -180 + (x + 0.5) * cellWidth, precision));
+            }
+        }
+        return new ArrayList<>(cells);
+    }
+
+    /**
+     * Parses a position of the form "lat,lon" (a semicolon or whitespace may separate the values).
+     *
+     * @param position position as reported by the tracker
+     * @return {latitude, longitude}, or null if the position is not a valid coordinate pair
+     */
+    static double[] parsePosition(final String position) {
+        if (position == null) {
+            return null;
+        }
+        String[] parts = position.trim().split("\\s*[,;]\\s*|\\s+");
+        if (parts.length != 2) {
+            return null;
+        }
+        try {
+            double latitude = Double.parseDouble(parts[0]);
+            double longitude = Double.parseDouble(parts[1]);
+            if (latitude < -90 || latitude > 90 || longitude < -180 || longitude > 180) {
+                return null;
+            }
+            return new double[] {latitude, longitude};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long cellCount(final double minLat, final double minLon, final double maxLat, final double maxLon,
+            final int precision) {
+        int lonBits = (5 * precision + 1) / 2;
+        int latBits = 5 * precision / 2;
+        double cellWidth = 360.0 / (1L << lonBits);
+        double cellHeight = 180.0 / (1L << latBits);
+        long columns = cellIndex(maxLon + 180, cellWidth, lonBits) - cellIndex(minLon + 180, cellWidth, lonBits) + 1;
+        long rows = cellIndex(maxLat + 90, cellHeight, latBits) - cellIndex(minLat + 90, cellHeight, latBits) + 1;
+        return columns * rows;
+    }
+
+    private static long cellIndex(final double offset, final double cellSize, final int bits) {
+        return Math.min((long) Math.floor(offset / cellSize), (1L << bits) - 1);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+
+/**
+ * Inventory statistics kept as conflict-free delta entries.
+ *
+ * <p>Every transaction writes its changes under its own {@code stat~holder~metric~txId} key
+ * instead of incrementing a shared counter, so counter updates are blind writes that never cause
+ * MVCC conflicts. Reads sum all entries of a holder; {@link #compact} folds them into a single
+ * {@code checkpoint} entry per metric to keep reads cheap.
+ *
+ * <p>A holder is either an owner ({@code owner:<MSP ID>}) or a lot ({@code lot:<lot ID>}).
+ * Members of a lot are counted on the lot, so transferring a lot moves its counts without any
+ * counter write. The entries of an owner can only be changed again by that owner, those of a lot
+ * by every party, since the lot may change hands without them. The metrics are:
+ * <ul>
+ * <li>{@value #OWNED}: basils held</li>
+ * <li>{@value #IN_TRANSIT}: basils held that have reported at least one GPS leg through
+ * UpdateBasil</li>
+ * <li>{@value #CREATED_PREFIX}yyyy-MM-dd: basils an owner created on a UTC day</li>
+ * </ul>
+ */
+final class InventoryCounters {
+
+    static final String STAT_INDEX = "stat~holder~metric~entry";
+
+    static final String OWNED = "owned";
+
+    static final String IN_TRANSIT = "inTransit";
+
+    static final String CREATED_PREFIX = "created:";
+
+    private static final String CHECKPOINT = "checkpoint";
+
+    private static final String OWNER_HOLDER_PREFIX = "owner:";
+
+    private InventoryCounters() {
+    }
+
+    static String ownerHolder(final String ownerId) {
+        return OWNER_HOLDER_PREFIX + ownerId;
+    }
+
+    static String lotHolder(final String lotId) {
+        return "lot:" + lotId;
+    }
+
+    /**
+     * @param basil a basil
+     * @return the holder the basil is counted on
+     */
+    static String holderOf(final Basil basil) {
+        return basil.getLotId() != null ? lotHolder(basil.getLotId()) : ownerHolder(basil.getOwner().getOwnerID());
+    }
+
+    /**
+     * Adds a delta to a metric of a holder. Deltas of one transaction for the same holder and
+     * metric are combined into a single entry.
+     *
+     * @param ctx the transaction context
+     * @param holder the holder
+     * @param metric the metric
+     * @param delta the change
+     */
+    static void add(final BasilContext ctx, final String holder, final String metric, final long delta) {
+        if (delta == 0) {
+            return;
+        }
+        ChaincodeStub stub = ctx.getStub();
+        String key = stub.createCompositeKey(STAT_INDEX, holder, metric, stub.getTxId()).toString();
+        // only this transaction writes the key, so there is nothing to read unless it already wrote it
+        long pending = ctx.isPendingWrite(key) ? Long.parseLong(ctx.getStringState(key)) : 0;
+        ctx.putStringState(key, Long.toString(pending + delta));
+        endorse(ctx, key, holder);
+    }
+
+    /**
+     * Counts a basil in or out of the holder it belongs to.
+     *
+     * @param ctx the transaction context
+     * @param basil the basil
+     * @param sign 1 when the basil arrives, -1 when it leaves
+     */
+    static void count(final BasilContext ctx, final Basil basil, final int sign) {
+        String holder = holderOf(basil);
+        add(ctx, holder, OWNED, sign);
+        if (basil.getBasilLeg() != null) {
+            add(ctx, holder, IN_TRANSIT, sign);
+        }
+    }
+
+    /**
+     * @param ctx the transaction context
+     * @param ownerId MSP ID of the creator
+     * @param created number of basils created by the transaction
+     */
+    static void created(final BasilContext ctx, final String ownerId, final long created) {
+        String day = ctx.getStub().getTxTimestamp().atZone(ZoneOffset.UTC).toLocalDate().toString();
+        add(ctx, ownerHolder(ownerId), CREATED_PREFIX + day, created);
+    }
+
+    /**
+     * @param ctx the transaction context
+     * @param holder the holder
+     * @return the current value of every metric of the holder, by metric name
+     */
+    static Map<String, Long> sum(final BasilContext ctx, final String holder) {
+        Map<String, Long> totals = new TreeMap<>();
+        scan(ctx, holder, totals, null);
+        return totals;
+    }
+
+    /**
+     * Folds every entry of a holder into one checkpoint entry per metric.
+     *
+     * <p>The scan is part of the read set, so a compaction that races with new deltas for the
+     * same holder fails validation and can simply be retried; the deltas themselves never fail.
+     *
+     * @param ctx the transaction context
+     * @param holder the holder
+     * @return the number of entries folded
+     */
+    static int compact(final BasilContext ctx, final String holder) {
+        Map<String, Long> totals = new TreeMap<>();
+        List<String> entries = new ArrayList<>();
+        scan(ctx, holder, totals, entries);
+
+        for (String entry : entries) {
+            ctx.delState(entry);
+        }
+        ChaincodeStub stub = ctx.getStub();
+        for (Map.Entry<String, Long> total : totals.entrySet()) {
+            if (total.getValue() != 0) {
+                String key = stub.createCompositeKey(STAT_INDEX, holder, total.getKey(), CHECKPOINT).toString();
+                ctx.putStringState(key, Long.toString(total.getValue()));
+                endorse(ctx, key, holder);
+            }
+        }
+        return entries.size();
+    }
+
+    private static void endorse(final BasilContext ctx, final String key, final String holder) {
+        if (holder.startsWith(OWNER_HOLDER_PREFIX)) {
+            KeyEndorsement.ownedBy(ctx, key, holder.substring(OWNER_HOLDER_PREFIX.length()));
+        } else {
+            KeyEndorsement.allParties(ctx, key);
+        }
+    }
+
+    private static void scan(final BasilContext ctx, final String holder, final Map<String, Long> totals,
+            final List<String> entries) {
+        ChaincodeStub stub = ctx.getStub();
+        QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(
+                stub.createCompositeKey(STAT_INDEX, holder));
+        try {
+            for (KeyValue result : results) {
+                String metric = stub.splitCompositeKey(result.getKey()).getAttributes().get(1);
+                totals.merge(metric, Long.parseLong(result.getStringValue()), Long::sum);
+                if (entries != null) {
+                    entries.add(result.getKey());
+                }
+            }
+        } finally {
+            BasilContract.closeQuietly(results);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.hyperledger.fabric.shim.ext.sbe.StateBasedEndorsement;
+import org.hyperledger.fabric.shim.ext.sbe.StateBasedEndorsement.RoleType;
+import org.hyperledger.fabric.shim.ext.sbe.impl.StateBasedEndorsementFactory;
+
+/**
+ * Key-level (state-based) endorsement policies.
+ *
+ * <p>Every key that describes a single basil, i.e. its QR key, provenance summary, latest leg
+ * and spatial index entry, can only be changed with an endorsement from a peer of its owner, so
+ * the owner alone can update a basil and no other organisation can. Members of a lot may change
+ * hands without these keys being touched, so theirs require both parties instead. The owner~qr,
+ * ownerLot and lot member entries, leg log entries and lot transfers require every organisation
+ * of the channel, listed in BASIL_CHANNEL_ORGS (Org1MSP and Org2MSP by default); any ownership
+ * change deletes one of them, so transfers need both parties.
+ *
+ * <p>A key a transaction creates cannot carry a policy yet and is validated against the
+ * chaincode endorsement policy; the policy set here guards every later change to it.
+ */
+final class KeyEndorsement {
+
+    private static final Map<String, byte[]> OWNER_POLICIES = new ConcurrentHashMap<>();
+
+    private static final String[] CHANNEL_ORGS = System.getenv()
+            .getOrDefault("BASIL_CHANNEL_ORGS", "Org1MSP,Org2MSP").trim().split("\\s*,\\s*");
+
+    private static volatile byte[] allPartiesPolicy;
+
+    private KeyEndorsement() {
+    }
+
+    /**
+     * @param ctx the transaction context
+     * @param key a key written or kept by the current transaction
+     * @param ownerId MSP ID of the organisation whose peers must endorse changes to the key
+     */
+    static void ownedBy(final BasilContext ctx, final String key, final String ownerId) {
+        ctx.getStub().setStateValidationParameter(key,
+                OWNER_POLICIES.computeIfAbsent(ownerId, KeyEndorsement::policy));
+    }
+
+    /**
+     * @param ctx the transaction context
+     * @param key a key written or kept by the current transaction
+     */
+    static void allParties(final BasilContext ctx, final String key) {
+        byte[] policy = allPartiesPolicy;
+        if (policy == null) {
+            policy = policy(CHANNEL_ORGS);
+            allPartiesPolicy = policy;
+        }
+        ctx.getStub().setStateValidationParameter(key, policy);
+    }
+
+    /**
+     * @param ctx the transaction context
+     * @param key a key that describes the basil alone
+     * @param basil the basil as written by the current transaction
+     */
+    static void forBasil(final BasilContext ctx, final String key, final Basil basil) {
+        if (basil.getLotId() != null) {
+            allParties(ctx, key);
+        } else {
+            ownedBy(ctx, key, basil.getOwner().getOwnerID());
+        }
+    }
+
+    private static byte[] policy(final String... mspIds) {
+        StateBasedEndorsement endorsement = StateBasedEndorsementFactory.getInstance().newStateBasedEndorsement(null);
+        endorsement.addOrgs(RoleType.RoleTypePeer, mspIds);
+        return endorsement.policy();
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import java.util.List;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+/**
+ * Append-only log of the GPS legs of every basil.
+ *
+ * <p>Each ping is stored under its own {@code leg~qr~timestamp~txid} composite key, so recording
+ * a ping never rewrites the basil and two pings for the same QR never conflict at validation
+ * time; they only read the basil to check that it exists and who owns it. The newest leg is also
+ * written, blindly, to a {@code latestLeg~qr} key that lets QueryBasil show it with one extra
+ * point read.
+ */
+final class LegLog {
+
+    static final String LEG_LOG = "leg~qr~timestamp~txid";
+
+    static final String LATEST_LEG = "latestLeg~qr";
+
+    /** Zero-padded so that the lexical key order is the chronological order. */
+    private static final String TIMESTAMP_FORMAT = "%019d";
+
+    private LegLog() {
+    }
+
+    /**
+     * Appends a leg to the log of a basil and makes it the latest leg. The log entry can only be
+     * changed again by every party, the latest leg like the basil itself.
+     *
+     * @param ctx the transaction context
+     * @param basil the basil the leg belongs to
+     * @param leg the leg to record
+     * @return the leg as stored
+     */
+    static String append(final BasilContext ctx, final Basil basil, final BasilLeg leg) {
+        ChaincodeStub stub = ctx.getStub();
+        String legJSON = BasilCodec.toJson(leg);
+        String timestamp = String.format(TIMESTAMP_FORMAT, leg.getTimestamp());
+        String entryKey = stub.createCompositeKey(LEG_LOG, basil.getQr(), timestamp, stub.getTxId()).toString();
+        ctx.putStringState(entryKey, legJSON);
+        KeyEndorsement.allParties(ctx, entryKey);
+        String latestKey = latestLegKey(ctx, basil.getQr());
+        ctx.putStringState(latestKey, legJSON);
+        KeyEndorsement.forBasil(ctx, latestKey, basil);
+        return legJSON;
+    }
+
+    /**
+     * Hands the latest leg of a basil, if it has one, to the basil's current owner.
+     *
+     * @param ctx the transaction context
+     * @param basil the basil as written by the current transaction
+     */
+    static void endorse(final BasilContext ctx, final Basil basil) {
+        String latestKey = latestLegKey(ctx, basil.getQr());
+        if (!ctx.getStringState(latestKey).isEmpty()) {
+            KeyEndorsement.forBasil(ctx, latestKey, basil);
+        }
+    }
+
+    /**
+     * @param ctx the transaction context
+     * @param qr QR code of the basil
+     * @return the newest recorded leg, or null if no leg was recorded
+     */
+    static BasilLeg latest(final BasilContext ctx, final String qr) {
+        String legJSON = ctx.getStringState(latestLegKey(ctx, qr));
+        return legJSON.isEmpty() ? null : BasilCodec.legFromJson(legJSON);
+    }
+
+    /**
+     * Reads the oldest entry of the log. Paginated queries are not allowed in submit
+     * transactions, so this is only available to evaluate transactions.
+     *
+     * @param ctx the transaction context
+     * @param qr QR code of the basil
+     * @return the oldest recorded leg, or null if no leg was recorded
+     */
+    static BasilLeg first(final BasilContext ctx, final String qr) {
+        ChaincodeStub stub = ctx.getStub();
+        QueryResultsIteratorWithMetadata<KeyValue> results = stub.getStateByPartialCompositeKeyWithPagination(
+                stub.createCompositeKey(LEG_LOG, qr), 1, "");
+        try {
+            for (KeyValue result : results) {
+                return BasilCodec.legFromJson(result.getStringValue());
+            }
+        } finally {
+            BasilContract.closeQuietly(results);
+        }
+        return null;
+    }
+
+    /**
+     * Removes the log and the latest leg of a deleted basil, so that a basil created later under
+     * the same QR code starts with an empty route. The legs remain in the history of their keys.
+     *
+     * @param ctx the transaction context
+     * @param qr QR code of the basil
+     */
+    static void delete(final BasilContext ctx, final String qr) {
+        ChaincodeStub stub = ctx.getStub();
+        QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(
+                stub.createCompositeKey(LEG_LOG, qr));
+        try {
+            for (KeyValue result : results) {
+                ctx.delState(result.getKey());
+            }
+        } finally {
+            BasilContract.closeQuietly(results);
+        }
+        ctx.delState(latestLegKey(ctx, qr));
+    }
+
+    /**
+     * Writes the legs of a basil recorded between two timestamps into a JSON array, oldest first.
+     *
+     * @param ctx the transaction context
+     * @param qr QR code of the basil
+     * @param fromTimestamp first timestamp to include in epoch seconds
+     * @param toTimestamp last timestamp to include in epoch seconds, 0 for no upper bound
+     * @return JSON array of legs
+     */
+    static String route(final BasilContext ctx, final String qr, final long fromTimestamp, final long toTimestamp) {
+        ChaincodeStub stub = ctx.getStub();
+        StringBuilder route = new StringBuilder("[");
+        boolean first = true;
+
+        // Range queries are not allowed on composite keys, so the scan starts at the first leg of
+        // the QR. Keys are in time order, which lets it stop as soon as the window is passed.
+        QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(
+                stub.createCompositeKey(LEG_LOG, qr));
+        try {
+            for (KeyValue result : results) {
+                List<String> attributes = stub.splitCompositeKey(result.getKey()).getAttributes();
+                long timestamp = Long.parseLong(attributes.get(1));
+                if (timestamp < fromTimestamp) {
+                    continue;
+                }
+                if (toTimestamp > 0 && timestamp > toTimestamp) {
+                    break;
+                }
+                if (!first) {
+                    route.append(',');
+                }
+                route.append(result.getStringValue());
+                first = false;
+            }
+        } finally {
+            BasilContract.closeQuietly(results);
+        }
+        return route.append(']').toString();
+    }
+
+    private static String latestLegKey(final BasilContext ctx, final String qr) {
+        return ctx.getStub().createCompositeKey(LATEST_LEG, qr).toString();
+    }
+}
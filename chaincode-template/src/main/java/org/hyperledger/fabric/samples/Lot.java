@@ -0,0 +1,80 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import java.util.Objects;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import com.owlike.genson.annotation.JsonProperty;
+
+/**
+ * A lot or pallet of basils. Members reference the lot through {@link Basil#getLotId()} and take
+ * their owner from it, so a whole lot changes hands with a single write of this record.
+ */
+@DataType()
+public final class Lot {
+
+    @Property()
+    private String lotId;
+
+    @Property()
+    private Owner owner;
+
+    @Property()
+    private int memberCount;
+
+    public String getLotId() {
+        return lotId;
+    }
+
+    public Owner getOwner() {
+        return owner;
+    }
+
+    public int getMemberCount() {
+        return memberCount;
+    }
+
+    public Lot(@JsonProperty("lotId") final String lotId,
+               @JsonProperty("owner") final Owner owner,
+               @JsonProperty("memberCount") final int memberCount) {
+        this.lotId = lotId;
+        this.owner = owner;
+        this.memberCount = memberCount;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if ((obj == null) || (getClass() != obj.getClass())) {
+            return false;
+        }
+
+        Lot other = (Lot) obj;
+
+        return Objects.equals(lotId, other.lotId)
+                && Objects.equals(owner, other.owner)
+                && memberCount == other.memberCount;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(lotId, owner, memberCount);
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName()
+                + "@" + Integer.toHexString(hashCode())
+                + " [lotId=" + lotId
+                + ", owner=" + owner
+                + ", memberCount=" + memberCount + "]";
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+import com.owlike.genson.Genson;
+
+/**
+ * World state access for {@link Lot} records and the indexes that tie them to basils and owners.
+ *
+ * <p>Lots are stored under {@code lot~lotId} composite keys so that range scans over plain QR
+ * keys never see them. {@code lotMember~lotId~qr} lists the members of a lot and
+ * {@code ownerLot~owner~lotId} the lots of an owner; basils in a lot are not in the owner~qr
+ * index, which is what lets TransferLot leave the members untouched.
+ */
+final class Lots {
+
+    static final String LOT = "lot~lotId";
+
+    static final String LOT_MEMBER_INDEX = "lotMember~lotId~qr";
+
+    static final String OWNER_LOT_INDEX = "ownerLot~owner~lotId";
+
+    private static final byte[] INDEX_VALUE = new byte[] {0x00};
+
+    private static final Genson GENSON = new Genson();
+
+    private Lots() {
+    }
+
+    /**
+     * @param ctx the transaction context
+     * @param lotId ID of the lot
+     * @return the lot, or null if it does not exist
+     */
+    static Lot get(final BasilContext ctx, final String lotId) {
+        String lotJSON = ctx.getStringState(lotKey(ctx.getStub(), lotId));
+        return lotJSON.isEmpty() ? null : deserialize(lotJSON, Lot.class);
+    }
+
+    /**
+     * Stores a lot; only peers of its owner can endorse the next change to it.
+     *
+     * @param ctx the transaction context
+     * @param lot the lot to store
+     */
+    static void put(final BasilContext ctx, final Lot lot) {
+        String key = lotKey(ctx.getStub(), lot.getLotId());
+        ctx.putStringState(key, serialize(lot));
+        KeyEndorsement.ownedBy(ctx, key, lot.getOwner().getOwnerID());
+    }
+
+    static void delete(final BasilContext ctx, final String lotId) {
+        ctx.delState(lotKey(ctx.getStub(), lotId));
+    }
+
+    static String toJson(final Lot lot) {
+        return serialize(lot);
+    }
+
+    static void addMember(final BasilContext ctx, final String lotId, final String qr) {
+        String key = ctx.getStub().createCompositeKey(LOT_MEMBER_INDEX, lotId, qr).toString();
+        ctx.putState(key, INDEX_VALUE);
+        KeyEndorsement.allParties(ctx, key);
+    }
+
+    static void removeMember(final BasilContext ctx, final String lotId, final String qr) {
+        ctx.delState(ctx.getStub().createCompositeKey(LOT_MEMBER_INDEX, lotId, qr).toString());
+    }
+
+    static void addToOwner(final BasilContext ctx, final String ownerId, final String lotId) {
+        String key = ctx.getStub().createCompositeKey(OWNER_LOT_INDEX, ownerId, lotId).toString();
+        ctx.putState(key, INDEX_VALUE);
+        // removing the entry again, i.e. handing the lot over, needs every organisation
+        KeyEndorsement.allParties(ctx, key);
+    }
+
+    static void removeFromOwner(final BasilContext ctx, final String ownerId, final String lotId) {
+        ctx.delState(ctx.getStub().createCompositeKey(OWNER_LOT_INDEX, ownerId, lotId).toString());
+    }
+
+    /**
+     * @param ctx the transaction context
+     * @param basil a basil
+     * @return the owner of the basil's lot if it is in one, otherwise the basil's own owner
+     */
+    static Owner resolveOwner(final BasilContext ctx, final Basil basil) {
+        if (basil.getLotId() == null) {
+            return basil.getOwner();
+        }
+        Lot lot = get(ctx, basil.getLotId());
+        return lot == null ? basil.getOwner() : lot.getOwner();
+    }
+
+    private static String lotKey(final ChaincodeStub stub, final String lotId) {
+        return stub.createCompositeKey(LOT, lotId).toString();
+    }
+
+    /**
+     * Rewrites stored basils of lot members with the owner of their lot, decoding only lot
+     * members and each lot at most once per query.
+     */
+    static final class OwnerResolver {
+
+        private final BasilContext ctx;
+
+        private final Map<String, Owner> lotOwners = new HashMap<>();
+
+        OwnerResolver(final BasilContext ctx) {
+            this.ctx = ctx;
+        }
+
+        /**
+         * @param basilJSON basil as stored in the world state
+         * @return the basil as clients should see it
+         */
+        String resolve(final String basilJSON) {
+            if (!BasilCodec.hasLot(basilJSON)) {
+                return basilJSON;
+            }
+            Basil basil = BasilCodec.fromJson(basilJSON);
+            Owner owner = lotOwners.computeIfAbsent(basil.getLotId(), lotId -> {
+                Lot lot = get(ctx, lotId);
+                return lot == null ? null : lot.getOwner();
+            });
+            if (owner == null || owner.equals(basil.getOwner())) {
+                return basilJSON;
+            }
+            return BasilCodec.toJson(new Basil(basil.getQr(), basil.getExtraInfo(), owner,
+                    basil.getBasilLeg(), basil.getLotId()));
+        }
+    }
+
+    private static String serialize(final Object value) {
+        return ChaincodeMetrics.serialization(() -> GENSON.serialize(value));
+    }
+
+    private static <T> T deserialize(final String json, final Class<T> type) {
+        return ChaincodeMetrics.serialization(() -> GENSON.deserialize(json, type));
+    }
+}
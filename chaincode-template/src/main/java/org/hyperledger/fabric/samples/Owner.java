@@ -4,6 +4,8 @@
 
 package org.hyperledger.fabric.samples;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 
 import org.hyperledger.fabric.contract.annotation.DataType;
@@ -14,6 +16,15 @@ import com.owlike.genson.annotation.JsonProperty;
 @DataType()
 public final class Owner {
 
+    private static final String UNKNOWN_OWNER_NAME = "Unknown Organisation";
+
+    private static final Map<String, Owner> KNOWN_OWNERS = new HashMap<>();
+
+    static {
+        KNOWN_OWNERS.put("Org1MSP", new Owner("Org1MSP", "Pittaluga & fratelli"));
+        KNOWN_OWNERS.put("Org2MSP", new Owner("Org2MSP", "Supermarket"));
+    }
+
     @Property()
     private String ownerID;
 
@@ -31,15 +42,26 @@ public final class Owner {
 
     public Owner(@JsonProperty("ownerID") final String ownerID) {
         this.ownerID = ownerID;
-        if ("Org1MSP".equals(ownerID)) {
-            this.ownerName = "Pittaluga & fratelli";
-        } else if ("Org2MSP".equals(ownerID)) {
-            this.ownerName = "Supermarket";
-        } else {
-            this.ownerName = "Unknown Organisation";
-        }
+        Owner known = ownerID == null ? null : KNOWN_OWNERS.get(ownerID);
+        this.ownerName = known == null ? UNKNOWN_OWNER_NAME : known.ownerName;
     }
-    
+
+    private Owner(final String ownerID, final String ownerName) {
+        this.ownerID = ownerID;
+        this.ownerName = ownerName;
+    }
+
+    /**
+     * Returns the shared instance for a known organisation instead of building a new owner.
+     *
+     * @param ownerID MSP ID of the owner
+     * @return owner with the name resolved from the MSP ID
+     */
+    static Owner of(final String ownerID) {
+        Owner known = ownerID == null ? null : KNOWN_OWNERS.get(ownerID);
+        return known != null ? known : new Owner(ownerID);
+    }
+
     @Override
     public boolean equals(final Object obj) {
         if (this == obj) {
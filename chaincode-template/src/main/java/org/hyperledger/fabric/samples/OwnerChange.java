@@ -0,0 +1,80 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import java.util.Objects;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import com.owlike.genson.annotation.JsonProperty;
+
+/**
+ * One link of the owner chain in a {@link Provenance}: who held the basil from when on, and the
+ * lot it changed hands with, if any.
+ */
+@DataType()
+public final class OwnerChange {
+
+    @Property()
+    private String ownerID;
+
+    @Property()
+    private Long since;
+
+    @Property()
+    private String lotId;
+
+    public String getOwnerID() {
+        return ownerID;
+    }
+
+    public Long getSince() {
+        return since;
+    }
+
+    public String getLotId() {
+        return lotId;
+    }
+
+    public OwnerChange(@JsonProperty("ownerID") final String ownerID,
+                       @JsonProperty("since") final Long since,
+                       @JsonProperty("lotId") final String lotId) {
+        this.ownerID = ownerID;
+        this.since = since;
+        this.lotId = lotId;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if ((obj == null) || (getClass() != obj.getClass())) {
+            return false;
+        }
+
+        OwnerChange other = (OwnerChange) obj;
+
+        return Objects.equals(ownerID, other.ownerID)
+                && Objects.equals(since, other.since)
+                && Objects.equals(lotId, other.lotId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(ownerID, since, lotId);
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName()
+                + "@" + Integer.toHexString(hashCode())
+                + " [ownerID=" + ownerID
+                + ", since=" + since
+                + ", lotId=" + lotId + "]";
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import java.util.List;
+import java.util.Objects;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import com.owlike.genson.annotation.JsonProperty;
+
+/**
+ * Compact summary of where a basil has been, kept up to date by every transaction that changes
+ * the basil so that consumer lookups do not need the history database. Timestamps are in epoch
+ * seconds; createdAt is null for basils created before summaries were kept.
+ *
+ * <p>While the basil is in a lot, transfers of the lot are recorded once on the lot rather than
+ * on every member; {@code lotTransferOffset} is the number of lot transfers that happened before
+ * the basil joined, so the owner chain can be completed exactly when it is read.
+ */
+@DataType()
+public final class Provenance {
+
+    @Property()
+    private String qr;
+
+    @Property()
+    private Long createdAt;
+
+    @Property()
+    private List<OwnerChange> owners;
+
+    @Property()
+    private Long firstLegTimestamp;
+
+    @Property()
+    private Long lastLegTimestamp;
+
+    @Property()
+    private int updateCount;
+
+    @Property()
+    private String lotId;
+
+    @Property()
+    private int lotTransferOffset;
+
+    public String getQr() {
+        return qr;
+    }
+
+    public Long getCreatedAt() {
+        return createdAt;
+    }
+
+    public List<OwnerChange> getOwners() {
+        return owners;
+    }
+
+    public Long getFirstLegTimestamp() {
+        return firstLegTimestamp;
+    }
+
+    public Long getLastLegTimestamp() {
+        return lastLegTimestamp;
+    }
+
+    public int getUpdateCount() {
+        return updateCount;
+    }
+
+    public String getLotId() {
+        return lotId;
+    }
+
+    public int getLotTransferOffset() {
+        return lotTransferOffset;
+    }
+
+    public Provenance(@JsonProperty("qr") final String qr,
+                      @JsonProperty("createdAt") final Long createdAt,
+                      @JsonProperty("owners") final List<OwnerChange> owners,
+                      @JsonProperty("firstLegTimestamp") final Long firstLegTimestamp,
+                      @JsonProperty("lastLegTimestamp") final Long lastLegTimestamp,
+                      @JsonProperty("updateCount") final int updateCount,
+                      @JsonProperty("lotId") final String lotId,
+                      @JsonProperty("lotTransferOffset") final int lotTransferOffset) {
+        this.qr = qr;
+        this.createdAt = createdAt;
+        this.owners = owners;
+        this.firstLegTimestamp = firstLegTimestamp;
+        this.lastLegTimestamp = lastLegTimestamp;
+        this.updateCount = updateCount;
+        this.lotId = lotId;
+        this.lotTransferOffset = lotTransferOffset;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if ((obj == null) || (getClass() != obj.getClass())) {
+            return false;
+        }
+
+        Provenance other = (Provenance) obj;
+
+        return Objects.equals(qr, other.qr)
+                && Objects.equals(createdAt, other.createdAt)
+                && Objects.equals(owners, other.owners)
+                && Objects.equals(firstLegTimestamp, other.firstLegTimestamp)
+                && Objects.equals(lastLegTimestamp, other.lastLegTimestamp)
+                && updateCount == other.updateCount
+                && Objects.equals(lotId, other.lotId)
+                && lotTransferOffset == other.lotTransferOffset;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(qr, createdAt, owners, firstLegTimestamp, lastLegTimestamp, updateCount, lotId,
+                lotTransferOffset);
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName()
+                + "@" + Integer.toHexString(hashCode())
+                + " [qr=" + qr
+                + ", createdAt=" + createdAt
+                + ", owners=" + owners
+                + ", firstLegTimestamp=" + firstLegTimestamp
+                + ", lastLegTimestamp=" + lastLegTimestamp
+                + ", updateCount=" + updateCount
+                + ", lotId=" + lotId
+                + ", lotTransferOffset=" + lotTransferOffset + "]";
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+
+import com.owlike.genson.Genson;
+
+/**
+ * World state access for {@link Provenance} summaries.
+ *
+ * <p>The summary of a basil lives under {@code provenance~qr} and is rewritten by the same
+ * transaction that changes the basil, so reading it is a single point read. Each transfer of a
+ * lot is written once, under its own {@code lotProvenance~lotId~seq} key, instead of to every
+ * member's summary, so TransferLot neither rewrites the summaries nor a growing list; the owner
+ * chain of a member is completed from these entries when the summary is read and copied into
+ * the summary when the basil leaves the lot.
+ */
+final class Provenances {
+
+    static final String PROVENANCE = "provenance~qr";
+
+    static final String LOT_PROVENANCE = "lotProvenance~lotId";
+
+    /** Zero-padded so that the lexical key order is the order of the transfers. */
+    private static final String SEQUENCE_FORMAT = "%010d";
+
+    private static final Genson GENSON = new Genson();
+
+    private Provenances() {
+    }
+
+    /**
+     * @param ctx the transaction context
+     * @param basil the basil that was just created
+     */
+    static void created(final BasilContext ctx, final Basil basil) {
+        long now = now(ctx);
+        List<OwnerChange> owners = Collections.singletonList(
+                new OwnerChange(basil.getOwner().getOwnerID(), now, null));
+        put(ctx, new Provenance(basil.getQr(), now, owners, null, null, 0, null, 0));
+    }
+
+    /**
+     * @param ctx the transaction context
+     * @param basil the basil before the update
+     * @param leg the leg recorded by the update
+     */
+    static void updated(final BasilContext ctx, final Basil basil, final BasilLeg leg) {
+        Provenance p = load(ctx, basil);
+        Long first = p.getFirstLegTimestamp() == null ? leg.getTimestamp() : p.getFirstLegTimestamp();
+        put(ctx, new Provenance(p.getQr(), p.getCreatedAt(), p.getOwners(), first, leg.getTimestamp(),
+                p.getUpdateCount() + 1, p.getLotId(), p.getLotTransferOffset()));
+    }
+
+    /**
+     * @param ctx the transaction context
+     * @param basil the basil before the transfer
+     * @param newOwner MSP ID of the new owner
+     */
+    static void transferred(final BasilContext ctx, final Basil basil, final String newOwner) {
+        Provenance p = load(ctx, basil);
+        List<OwnerChange> owners = new ArrayList<>(p.getOwners());
+        owners.add(new OwnerChange(newOwner, now(ctx), null));
+        put(ctx, new Provenance(p.getQr(), p.getCreatedAt(), owners, p.getFirstLegTimestamp(),
+                p.getLastLegTimestamp(), p.getUpdateCount(), p.getLotId(), p.getLotTransferOffset()));
+    }
+
+    /**
+     * @param ctx the transaction context
+     * @param basil the basil before it joined the lot
+     * @param lotId ID of the lot
+     */
+    static void joinedLot(final BasilContext ctx, final Basil basil, final String lotId) {
+        Provenance p = load(ctx, basil);
+        put(ctx, new Provenance(p.getQr(), p.getCreatedAt(), p.getOwners(), p.getFirstLegTimestamp(),
+                p.getLastLegTimestamp(), p.getUpdateCount(), lotId, lotTransfers(ctx, lotId).size()));
+    }
+
+    /**
+     * Copies the lot transfers that happened while the basil was a member into its own owner
+     * chain. Must run before the lot is deleted.
+     *
+     * @param ctx the transaction context
+     * @param basil the basil before it left the lot
+     */
+    static void leftLot(final BasilContext ctx, final Basil basil) {
+        Provenance p = load(ctx, basil);
+        put(ctx, new Provenance(p.getQr(), p.getCreatedAt(), ownerChain(ctx, p), p.getFirstLegTimestamp(),
+                p.getLastLegTimestamp(), p.getUpdateCount(), null, 0));
+    }
+
+    static void deleted(final BasilContext ctx, final String qr) {
+        ctx.delState(key(ctx, PROVENANCE, qr));
+    }
+
+    /**
+     * @param ctx the transaction context
+     * @param lotId ID of the lot
+     * @param newOwner MSP ID of the new owner
+     */
+    static void lotTransferred(final BasilContext ctx, final String lotId, final String newOwner) {
+        String sequence = String.format(SEQUENCE_FORMAT, lotTransfers(ctx, lotId).size());
+        String key = ctx.getStub().createCompositeKey(LOT_PROVENANCE, lotId, sequence).toString();
+        ctx.putStringState(key, serialize(new OwnerChange(newOwner, now(ctx), lotId)));
+        KeyEndorsement.allParties(ctx, key);
+    }
+
+    static void lotDeleted(final BasilContext ctx, final String lotId) {
+        ChaincodeStub stub = ctx.getStub();
+        QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(
+                stub.createCompositeKey(LOT_PROVENANCE, lotId));
+        try {
+            for (KeyValue result : results) {
+                ctx.delState(result.getKey());
+            }
+        } finally {
+            BasilContract.closeQuietly(results);
+        }
+    }
+
+    /**
+     * Legs recorded through RecordBasilLeg do not rewrite the summary, so the first and last leg
+     * timestamps are widened with the oldest and newest entries of the leg log. Only callable from
+     * evaluate transactions, since it reads the leg log with a paginated query.
+     *
+     * @param ctx the transaction context
+     * @param qr QR code of the basil
+     * @return the summary with the complete owner chain, or an empty string if the basil does not
+     *         exist
+     */
+    static String summaryJson(final BasilContext ctx, final String qr) {
+        Provenance p = get(ctx, qr);
+        if (p == null) {
+            Basil basil = ctx.getBasil(qr);
+            if (basil == null) {
+                return "";
+            }
+            p = backfill(basil);
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("qr", p.getQr());
+        summary.put("createdAt", p.getCreatedAt());
+        summary.put("owners", ownerChain(ctx, p));
+        BasilLeg firstLogged = LegLog.first(ctx, qr);
+        BasilLeg lastLogged = LegLog.latest(ctx, qr);
+        summary.put("firstLegTimestamp", earlier(p.getFirstLegTimestamp(),
+                firstLogged == null ? null : firstLogged.getTimestamp()));
+        summary.put("lastLegTimestamp", later(p.getLastLegTimestamp(),
+                lastLogged == null ? null : lastLogged.getTimestamp()));
+        summary.put("updateCount", p.getUpdateCount());
+        summary.put("lotId", p.getLotId());
+        return serialize(summary);
+    }
+
+    /**
+     * @param ctx the transaction context
+     * @param qr QR code of the basil
+     * @return world state key of the basil's summary
+     */
+    static String summaryKey(final BasilContext ctx, final String qr) {
+        return key(ctx, PROVENANCE, qr);
+    }
+
+    private static Provenance get(final BasilContext ctx, final String qr) {
+        String provenanceJSON = ctx.getStringState(key(ctx, PROVENANCE, qr));
+        return provenanceJSON.isEmpty() ? null : deserialize(provenanceJSON, Provenance.class);
+    }
+
+    /**
+     * @return the stored summary, or one started from the basil itself if it predates summaries
+     */
+    private static Provenance load(final BasilContext ctx, final Basil basil) {
+        Provenance p = get(ctx, basil.getQr());
+        return p == null ? backfill(basil) : p;
+    }
+
+    private static Provenance backfill(final Basil basil) {
+        BasilLeg leg = basil.getBasilLeg();
+        Long legTimestamp = leg == null ? null : leg.getTimestamp();
+        List<OwnerChange> owners = Collections.singletonList(
+                new OwnerChange(basil.getOwner().getOwnerID(), null, null));
+        return new Provenance(basil.getQr(), null, owners, legTimestamp, legTimestamp, 0, basil.getLotId(), 0);
+    }
+
+    private static List<OwnerChange> ownerChain(final BasilContext ctx, final Provenance p) {
+        if (p.getLotId() == null) {
+            return p.getOwners();
+        }
+        List<OwnerChange> transfers = lotTransfers(ctx, p.getLotId());
+        if (transfers.size() <= p.getLotTransferOffset()) {
+            return p.getOwners();
+        }
+        List<OwnerChange> owners = new ArrayList<>(p.getOwners());
+        owners.addAll(transfers.subList(p.getLotTransferOffset(), transfers.size()));
+        return owners;
+    }
+
+    /**
+     * @return the transfers of a lot, oldest first
+     */
+    private static List<OwnerChange> lotTransfers(final BasilContext ctx, final String lotId) {
+        ChaincodeStub stub = ctx.getStub();
+        List<OwnerChange> transfers = new ArrayList<>();
+        QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(
+                stub.createCompositeKey(LOT_PROVENANCE, lotId));
+        try {
+            for (KeyValue result : results) {
+                transfers.add(deserialize(result.getStringValue(), OwnerChange.class));
+            }
+        } finally {
+            BasilContract.closeQuietly(results);
+        }
+        return transfers;
+    }
+
+    private static Long earlier(final Long a, final Long b) {
+        return a == null || (b != null && b < a) ? b : a;
+    }
+
+    private static Long later(final Long a, final Long b) {
+        return a == null || (b != null && b > a) ? b : a;
+    }
+
+    private static void put(final BasilContext ctx, final Provenance provenance) {
+        ctx.putStringState(key(ctx, PROVENANCE, provenance.getQr()), serialize(provenance));
+    }
+
+    private static String key(final BasilContext ctx, final String objectType, final String id) {
+        return ctx.getStub().createCompositeKey(objectType, id).toString();
+    }
+
+    private static long now(final BasilContext ctx) {
+        return ctx.getStub().getTxTimestamp().getEpochSecond();
+    }
+
+    private static String serialize(final Object value) {
+        return ChaincodeMetrics.serialization(() -> GENSON.serialize(value));
+    }
+
+    private static <T> T deserialize(final String json, final Class<T> type) {
+        return ChaincodeMetrics.serialization(() -> GENSON.deserialize(json, type));
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import org.json.JSONObject;
+
+/**
+ * Builds a paginated query response from values that are already stored as JSON, so records are
+ * copied into the response verbatim instead of being deserialized and serialized again.
+ *
+ * <p>The response has the shape
+ * {@code {"records":[...],"fetchedRecordsCount":n,"bookmark":"..."}}.
+ */
+final class RawJsonPage {
+
+    private final StringBuilder records = new StringBuilder("[");
+
+    private int recordCount;
+
+    /**
+     * Appends one stored JSON value to the page.
+     *
+     * @param json JSON value exactly as read from the world state
+     */
+    void add(final String json) {
+        if (recordCount > 0) {
+            records.append(',');
+        }
+        records.append(json);
+        recordCount++;
+    }
+
+    int size() {
+        return recordCount;
+    }
+
+    /**
+     * @param fetchedRecordsCount number of keys the peer scanned for this page
+     * @param bookmark bookmark to pass when requesting the next page
+     * @return the complete response document
+     */
+    String toJson(final int fetchedRecordsCount, final String bookmark) {
+        return new StringBuilder(records.length() + 64)
+                .append("{\"records\":").append(records).append(']')
+                .append(",\"fetchedRecordsCount\":").append(fetchedRecordsCount)
+                .append(",\"bookmark\":").append(JSONObject.quote(bookmark == null ? "" : bookmark))
+                .append('}')
+                .toString();
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Turns a client-supplied CouchDB selector into a query that is guaranteed to be served by one of
+ * the indexes packaged under {@code META-INF/statedb/couchdb/indexes}.
+ *
+ * <p>A selector is accepted only if it constrains {@code owner.ownerID} with an equality or
+ * {@code basilLeg.timestamp} with an equality or range condition; anything else would make
+ * CouchDB scan every document. The query is always restricted to basil documents and pinned to
+ * the matching index with {@code use_index}.
+ *
+ * <p>Members of a lot keep the owner they had when they joined it, so a selector on the owner is
+ * split into a query for the basils the owner holds directly and one per lot of the owner, on
+ * the lot's members whatever their stored owner.
+ */
+final class RichQuery {
+
+    static final String OWNER_FIELD = "owner.ownerID";
+
+    static final String LEG_TIMESTAMP_FIELD = "basilLeg.timestamp";
+
+    static final String LOT_FIELD = "lotId";
+
+    private static final String OWNER = "owner";
+
+    private static final Set<String> INDEXABLE_OPERATORS =
+            new HashSet<>(Arrays.asList("$eq", "$gt", "$gte", "$lt", "$lte"));
+
+    private RichQuery() {
+    }
+
+    /**
+     * @param selectorJSON CouchDB selector, for example {"owner.ownerID":"Org2MSP"}
+     * @return the parsed selector
+     * @throws ChaincodeException if the selector is not a JSON object
+     */
+    static JSONObject parse(final String selectorJSON) {
+        try {
+            return new JSONObject(selectorJSON);
+        } catch (JSONException e) {
+            throw BasilErrors.INVALID_ARGUMENT.exception("Selector is not a JSON object: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param selector a parsed selector
+     * @return the owner the selector asks for, or null if it does not constrain the owner
+     * @throws ChaincodeException if the owner is constrained by anything but an equality on
+     *         owner.ownerID at the top level of the selector
+     */
+    static String owner(final JSONObject selector) {
+        for (String name : selector.keySet()) {
+            if (!OWNER_FIELD.equals(name) && mentionsOwner(name, selector.get(name))) {
+                throw invalidOwnerCondition();
+            }
+        }
+        if (!selector.has(OWNER_FIELD)) {
+            return null;
+        }
+        Object condition = selector.get(OWNER_FIELD);
+        if (condition instanceof JSONObject && ((JSONObject) condition).length() == 1) {
+            condition = ((JSONObject) condition).opt("$eq");
+        }
+        if (!(condition instanceof String)) {
+            throw invalidOwnerCondition();
+        }
+        return (String) condition;
+    }
+
+    /**
+     * @param selector a parsed selector that does not constrain the owner
+     * @return the complete CouchDB query
+     * @throws ChaincodeException if no packaged index covers the selector
+     */
+    static String build(final JSONObject selector) {
+        Set<String> fields = new LinkedHashSet<>();
+        collectIndexableFields(selector, "", fields);
+
+        if (fields.contains(LEG_TIMESTAMP_FIELD)) {
+            return query(selector, "indexLegTimestamp");
+        }
+        throw BasilErrors.INVALID_ARGUMENT.exception("Selector must constrain " + OWNER_FIELD + " or "
+                + LEG_TIMESTAMP_FIELD + " so that it can be served by an index");
+    }
+
+    /**
+     * @param selector a parsed selector with an equality on owner.ownerID
+     * @return the CouchDB query for the matching basils that are not in a lot
+     */
+    static String heldDirectly(final JSONObject selector) {
+        return query(and(selector, new JSONObject().put(LOT_FIELD, JSONObject.NULL)), "indexOwner");
+    }
+
+    /**
+     * @param selector a parsed selector with an equality on owner.ownerID
+     * @param lotId ID of a lot of that owner
+     * @return the CouchDB query for the matching members of the lot, whatever their stored owner
+     */
+    static String lotMembers(final JSONObject selector, final String lotId) {
+        JSONObject withoutOwner = new JSONObject(selector.toString());
+        withoutOwner.remove(OWNER_FIELD);
+        return query(and(withoutOwner, new JSONObject().put(LOT_FIELD, lotId)), "indexLot");
+    }
+
+    private static JSONObject and(final JSONObject selector, final JSONObject condition) {
+        return new JSONObject().put("$and", new JSONArray().put(selector).put(condition));
+    }
+
+    private static String query(final JSONObject selector, final String index) {
+        JSONObject restricted = new JSONObject(selector.toString()).put("docType", BasilCodec.DOC_TYPE);
+        return new JSONObject()
+                .put("selector", restricted)
+                .put("use_index", new JSONArray().put("_design/" + index + "Doc").put(index))
+                .toString();
+    }
+
+    /**
+     * @return whether a selector entry refers to the owner, directly or through $and, $or, $nor or
+     *         $not
+     */
+    private static boolean mentionsOwner(final String name, final Object condition) {
+        if (OWNER.equals(name) || name.startsWith(OWNER + ".")) {
+            return true;
+        }
+        if (condition instanceof JSONArray && ("$and".equals(name) || "$or".equals(name) || "$nor".equals(name))) {
+            JSONArray clauses = (JSONArray) condition;
+            for (int i = 0; i < clauses.length(); i++) {
+                if (clauses.get(i) instanceof JSONObject && mentionsAny(clauses.getJSONObject(i))) {
+                    return true;
+                }
+            }
+        } else if (condition instanceof JSONObject && "$not".equals(name)) {
+            return mentionsAny((JSONObject) condition);
+        }
+        return false;
+    }
+
+    private static boolean mentionsAny(final JSONObject selector) {
+        for (String name : selector.keySet()) {
+            if (mentionsOwner(name, selector.get(name))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ChaincodeException invalidOwnerCondition() {
+        return BasilErrors.INVALID_ARGUMENT.exception("The owner can only be selected with an equality on "
+                + OWNER_FIELD + ", since members of a lot take their owner from the lot");
+    }
+
+    /**
+     * Collects the dotted paths of fields that carry an index-friendly condition. Conditions
+     * nested under $or, $nor or $not cannot narrow an index scan and are ignored.
+     */
+    private static void collectIndexableFields(final JSONObject selector, final String prefix,
+            final Set<String> fields) {
+        for (String name : selector.keySet()) {
+            Object condition = selector.get(name);
+            if ("$and".equals(name) && condition instanceof JSONArray) {
+                JSONArray clauses = (JSONArray) condition;
+                for (int i = 0; i < clauses.length(); i++) {
+                    if (clauses.get(i) instanceof JSONObject) {
+                        collectIndexableFields(clauses.getJSONObject(i), prefix, fields);
+                    }
+                }
+            } else if (!name.startsWith("$")) {
+                String path = prefix + name;
+                if (!(condition instanceof JSONObject)) {
+                    fields.add(path);
+                } else if (isOperatorObject((JSONObject) condition)) {
+                    if (INDEXABLE_OPERATORS.containsAll(((JSONObject) condition).keySet())) {
+                        fields.add(path);
+                    }
+                } else {
+                    collectIndexableFields((JSONObject) condition, path + ".", fields);
+                }
+            }
+        }
+    }
+
+    private static boolean isOperatorObject(final JSONObject condition) {
+        for (String key : condition.keySet()) {
+            if (key.startsWith("$")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.memory;
+
+import java.time.Instant;
+
+import org.hyperledger.fabric.samples.BasilContext;
+import org.hyperledger.fabric.samples.BasilContract;
+
+/**
+ * {@link BasilContract} deployed on an {@link InMemoryLedger}. Transaction functions are called
+ * directly, with the same context creation and before/after hooks the contract router applies,
+ * so what is measured is the contract and its serialization, not argument parsing.
+ */
+public final class InMemoryChaincode {
+
+    /**
+     * A call of one transaction function of the contract.
+     */
+    @FunctionalInterface
+    public interface TransactionFunction {
+        String apply(BasilContract contract, BasilContext ctx);
+    }
+
+    private final InMemoryLedger ledger;
+    private final BasilContract contract = new BasilContract();
+
+    public InMemoryChaincode(final InMemoryLedger ledger) {
+        this.ledger = ledger;
+    }
+
+    public InMemoryLedger getLedger() {
+        return ledger;
+    }
+
+    /**
+     * Simulates a transaction without committing it, like a peer endorsing a proposal.
+     *
+     * @param mspId MSP ID of the client
+     * @param name name of the transaction function, as the stub reports it
+     * @param function transaction function to call
+     * @return the transaction with its result and read-write set
+     * @throws org.hyperledger.fabric.shim.ChaincodeException if the contract rejects the call
+     */
+    public InMemoryTransaction endorse(final String mspId, final String name, final TransactionFunction function) {
+        return endorse(ledger.newTransaction(mspId), name, function);
+    }
+
+    /**
+     * Simulates a transaction proposed at a given time without committing it.
+     *
+     * @param mspId MSP ID of the client
+     * @param timestamp timestamp of the proposal
+     * @param name name of the transaction function, as the stub reports it
+     * @param function transaction function to call
+     * @return the transaction with its result and read-write set
+     * @throws org.hyperledger.fabric.shim.ChaincodeException if the contract rejects the call
+     */
+    public InMemoryTransaction endorse(final String mspId, final Instant timestamp, final String name,
+            final TransactionFunction function) {
+        return endorse(ledger.newTransaction(mspId, timestamp), name, function);
+    }
+
+    private InMemoryTransaction endorse(final InMemoryTransaction transaction, final String name,
+            final TransactionFunction function) {
+        transaction.setFunction(name);
+        BasilContext ctx = (BasilContext) contract.createContext(transaction.getStub());
+        contract.beforeTransaction(ctx);
+        String result = function.apply(contract, ctx);
+        contract.afterTransaction(ctx, result);
+        transaction.setResult(result);
+        return transaction;
+    }
+
+    /**
+     * Endorses a transaction and commits it in a block of its own.
+     *
+     * @param mspId MSP ID of the client
+     * @param name name of the transaction function, as the stub reports it
+     * @param function transaction function to call
+     * @return the value the function returned
+     */
+    public String submit(final String mspId, final String name, final TransactionFunction function) {
+        InMemoryTransaction transaction = endorse(mspId, name, function);
+        ledger.commit(transaction);
+        return transaction.getResult();
+    }
+
+    /**
+     * Simulates a query; nothing is committed.
+     *
+     * @param mspId MSP ID of the client
+     * @param name name of the transaction function, as the stub reports it
+     * @param function transaction function to call
+     * @return the value the function returned
+     */
+    public String evaluate(final String mspId, final String name, final TransactionFunction function) {
+        return endorse(mspId, name, function).getResult();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.memory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Client identities of the in-memory ledger. The contract API parses the creator of every
+ * transaction as a protobuf SerializedIdentity holding a PEM certificate, so each MSP ID has a
+ * self-signed certificate under this package's resources, named {@code <mspId>.pem}.
+ */
+final class InMemoryIdentities {
+
+    private static final Map<String, byte[]> SERIALIZED = new ConcurrentHashMap<>();
+
+    private InMemoryIdentities() {
+    }
+
+    /**
+     * @param mspId MSP ID of the client
+     * @return the SerializedIdentity the peer would pass as the transaction creator
+     */
+    static byte[] serializedIdentity(final String mspId) {
+        return SERIALIZED.computeIfAbsent(mspId, id -> serialize(id, certificate(id)));
+    }
+
+    private static byte[] certificate(final String mspId) {
+        try (InputStream in = InMemoryIdentities.class.getResourceAsStream(mspId + ".pem")) {
+            if (in == null) {
+                throw new IllegalArgumentException("No certificate for MSP " + mspId);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Encodes {@code SerializedIdentity{mspid = 1, id_bytes = 2}} by hand, so the source set
+     * needs no protobuf classes.
+     */
+    private static byte[] serialize(final String mspId, final byte[] certificate) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        field(out, 1, mspId.getBytes(StandardCharsets.UTF_8));
+        field(out, 2, certificate);
+        return out.toByteArray();
+    }
+
+    private static void field(final ByteArrayOutputStream out, final int number, final byte[] value) {
+        // wire type 2: length-delimited
+        out.write(number << 3 | 2);
+        int length = value.length;
+        while ((length & ~0x7F) != 0) {
+            out.write(length & 0x7F | 0x80);
+            length >>>= 7;
+        }
+        out.write(length);
+        out.write(value, 0, value.length);
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.memory;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * World state, history and key-level endorsement policies of one channel, kept in memory so the
+ * contract can be exercised without a peer.
+ *
+ * <p>Keys are ordered like the peer's state database, so range and partial composite key
+ * queries return the same keys in the same order. Every committed value carries the version of
+ * the transaction that wrote it, as {@code (block, transaction)}, which is what MVCC validation
+ * compares read sets against. Transactions get consecutive IDs and timestamps one second apart,
+ * so runs are repeatable.
+ */
+public final class InMemoryLedger {
+
+    private static final Instant GENESIS = Instant.parse("2024-01-01T00:00:00Z");
+
+    private final String channelId;
+
+    private final NavigableMap<String, Versioned> state = new TreeMap<>();
+    private final Map<String, Deque<Modification>> history = new HashMap<>();
+    private final Map<String, byte[]> validationParameters = new HashMap<>();
+
+    private long blockNumber;
+    private long transactions;
+
+    public InMemoryLedger() {
+        this("mychannel");
+    }
+
+    /**
+     * @param channelId channel name returned by the stubs of this ledger
+     */
+    public InMemoryLedger(final String channelId) {
+        this.channelId = channelId;
+    }
+
+    /**
+     * Starts simulating a transaction against the current state.
+     *
+     * @param mspId MSP ID of the submitting client
+     * @return the transaction, whose stub is passed to the contract
+     */
+    public synchronized InMemoryTransaction newTransaction(final String mspId) {
+        return newTransaction(mspId, GENESIS.plusSeconds(transactions + 1));
+    }
+
+    /**
+     * Starts simulating a transaction against the current state.
+     *
+     * @param mspId MSP ID of the submitting client
+     * @param timestamp timestamp of the transaction proposal
+     * @return the transaction, whose stub is passed to the contract
+     */
+    public synchronized InMemoryTransaction newTransaction(final String mspId, final Instant timestamp) {
+        transactions++;
+        return new InMemoryTransaction(this, String.format("%064x", transactions), timestamp,
+                InMemoryIdentities.serializedIdentity(mspId));
+    }
+
+    /**
+     * Commits one transaction in a block of its own, without validating it.
+     *
+     * @param transaction the endorsed transaction
+     */
+    public synchronized void commit(final InMemoryTransaction transaction) {
+        blockNumber++;
+        apply(transaction, 0);
+    }
+
+    /**
+     * Validates and commits a block the way a peer does. Transactions are validated in block
+     * order: a transaction is invalidated if a key it read has changed since it was endorsed,
+     * including by an earlier valid transaction of the same block, or if a range it queried would
+     * now return different keys or versions. Only the write sets of valid transactions are
+     * applied. Endorsement policies are not checked.
+     *
+     * @param transactions the endorsed transactions, in the order the orderer put them
+     * @return the validation result of each transaction, in block order
+     */
+    public synchronized List<ValidationResult> commitBlock(final List<InMemoryTransaction> transactions) {
+        blockNumber++;
+        List<ValidationResult> results = new ArrayList<>(transactions.size());
+        for (int txNum = 0; txNum < transactions.size(); txNum++) {
+            InMemoryTransaction transaction = transactions.get(txNum);
+            ValidationResult result = validate(transaction);
+            if (result.isValid()) {
+                apply(transaction, txNum);
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * @return number of the last committed block
+     */
+    public synchronized long getBlockNumber() {
+        return blockNumber;
+    }
+
+    /**
+     * @return number of keys in the world state
+     */
+    public synchronized int size() {
+        return state.size();
+    }
+
+    String getChannelId() {
+        return channelId;
+    }
+
+    synchronized Versioned get(final String key) {
+        return state.get(key);
+    }
+
+    synchronized byte[] getValidationParameter(final String key) {
+        return validationParameters.get(key);
+    }
+
+    /**
+     * @param startKey first key, inclusive
+     * @param endKey last key, exclusive; null for the end of the key space
+     * @param limit maximum number of entries, 0 for no limit
+     * @return the committed entries in key order
+     */
+    synchronized List<Map.Entry<String, Versioned>> range(final String startKey, final String endKey,
+            final int limit) {
+        NavigableMap<String, Versioned> range = endKey == null
+                ? state.tailMap(startKey, true)
+                : state.subMap(startKey, true, endKey, false);
+        List<Map.Entry<String, Versioned>> entries = new ArrayList<>();
+        for (Map.Entry<String, Versioned> entry : range.entrySet()) {
+            if (limit > 0 && entries.size() == limit) {
+                break;
+            }
+            entries.add(Map.entry(entry.getKey(), entry.getValue()));
+        }
+        return entries;
+    }
+
+    /**
+     * @return the modifications of a key, newest first
+     */
+    synchronized List<Modification> history(final String key) {
+        Deque<Modification> modifications = history.get(key);
+        return modifications == null ? List.of() : new ArrayList<>(modifications);
+    }
+
+    private ValidationResult validate(final InMemoryTransaction transaction) {
+        for (Map.Entry<String, InMemoryTransaction.Version> read : transaction.getReadSet().entrySet()) {
+            if (!Objects.equals(read.getValue(), versionOf(state.get(read.getKey())))) {
+                return ValidationResult.mvccReadConflict(read.getKey());
+            }
+        }
+        for (InMemoryTransaction.RangeRead rangeRead : transaction.getRangeReads()) {
+            // re-run the query; a key added, removed or changed in the range is a phantom
+            NavigableMap<String, Versioned> range = rangeRead.getEndKey() == null
+                    ? state.tailMap(rangeRead.getStartKey(), true)
+                    : state.subMap(rangeRead.getStartKey(), true, rangeRead.getEndKey(), false);
+            Map<String, InMemoryTransaction.Version> recorded = rangeRead.getResults();
+            for (Map.Entry<String, Versioned> entry : range.entrySet()) {
+                if (!Objects.equals(recorded.get(entry.getKey()), versionOf(entry.getValue()))) {
+                    return ValidationResult.phantomReadConflict(entry.getKey());
+                }
+            }
+            if (range.size() != recorded.size()) {
+                for (String key : recorded.keySet()) {
+                    if (!range.containsKey(key)) {
+                        return ValidationResult.phantomReadConflict(key);
+                    }
+                }
+            }
+        }
+        return ValidationResult.valid();
+    }
+
+    private static InMemoryTransaction.Version versionOf(final Versioned value) {
+        return value == null ? null : new InMemoryTransaction.Version(value.getBlock(), value.getTxNum());
+    }
+
+    /**
+     * Applies the write set of a transaction as transaction {@code txNum} of the current block.
+     */
+    void apply(final InMemoryTransaction transaction, final int txNum) {
+        for (Map.Entry<String, byte[]> write : transaction.getWriteSet().entrySet()) {
+            String key = write.getKey();
+            byte[] value = write.getValue();
+            if (value == null) {
+                state.remove(key);
+                validationParameters.remove(key);
+            } else {
+                state.put(key, new Versioned(value, blockNumber, txNum));
+            }
+            history.computeIfAbsent(key, k -> new ArrayDeque<>())
+                    .addFirst(new Modification(transaction.getTxId(), transaction.getTimestamp(), value));
+        }
+        for (Map.Entry<String, byte[]> parameter : transaction.getValidationParameterWrites().entrySet()) {
+            if (parameter.getValue().length == 0) {
+                validationParameters.remove(parameter.getKey());
+            } else {
+                validationParameters.put(parameter.getKey(), parameter.getValue());
+            }
+        }
+    }
+
+    /**
+     * A committed value and the version of the transaction that wrote it.
+     */
+    static final class Versioned {
+        private final byte[] value;
+        private final long block;
+        private final int txNum;
+
+        Versioned(final byte[] value, final long block, final int txNum) {
+            this.value = value;
+            this.block = block;
+            this.txNum = txNum;
+        }
+
+        byte[] getValue() {
+            return value;
+        }
+
+        long getBlock() {
+            return block;
+        }
+
+        int getTxNum() {
+            return txNum;
+        }
+    }
+
+    /**
+     * One entry of the history of a key; a null value is a delete.
+     */
+    static final class Modification {
+        private final String txId;
+        private final Instant timestamp;
+        private final byte[] value;
+
+        Modification(final String txId, final Instant timestamp, final byte[] value) {
+            this.txId = txId;
+            this.timestamp = timestamp;
+            this.value = value;
+        }
+
+        String getTxId() {
+            return txId;
+        }
+
+        Instant getTimestamp() {
+            return timestamp;
+        }
+
+        byte[] getValue() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,450 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.memory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hyperledger.fabric.protos.peer.QueryResponseMetadata;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+/**
+ * One transaction simulated against an {@link InMemoryLedger}, with the read-write set the peer
+ * would build while endorsing it.
+ *
+ * <p>{@link #getStub()} is a {@link ChaincodeStub} that behaves like the peer's: reads see the
+ * committed state only, never the transaction's own writes; writes and deletes are collected in
+ * the write set; range and partial composite key queries record the keys and versions they
+ * returned, so phantom reads can be detected. The stub is a dynamic proxy, so stub methods this
+ * ledger has no model for, such as private data and rich queries, fail with
+ * {@link UnsupportedOperationException} instead of silently returning nothing.
+ */
+public final class InMemoryTransaction implements InvocationHandler {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    /** Upper bound of a partial composite key range, as used by the shim. */
+    private static final String MAX_UNICODE_RUNE = "\udbff\udfff";
+
+    /** Start of the simple key range; composite keys begin with U+0000 and sort before it. */
+    private static final String MIN_SIMPLE_KEY = "\u0001";
+
+    private final InMemoryLedger ledger;
+    private final String txId;
+    private final Instant timestamp;
+    private final byte[] creator;
+    private final ChaincodeStub stub;
+
+    private final Map<String, Version> readSet = new LinkedHashMap<>();
+    private final List<RangeRead> rangeReads = new ArrayList<>();
+    private final Map<String, byte[]> writeSet = new LinkedHashMap<>();
+    private final Map<String, byte[]> validationParameterWrites = new LinkedHashMap<>();
+
+    private String function = "";
+    private String eventName;
+    private byte[] eventPayload;
+    private String result;
+
+    InMemoryTransaction(final InMemoryLedger ledger, final String txId, final Instant timestamp,
+            final byte[] creator) {
+        this.ledger = ledger;
+        this.txId = txId;
+        this.timestamp = timestamp;
+        this.creator = creator;
+        this.stub = (ChaincodeStub) Proxy.newProxyInstance(ChaincodeStub.class.getClassLoader(),
+                new Class<?>[] {ChaincodeStub.class}, this);
+    }
+
+    /**
+     * @return stub to create the transaction context with
+     */
+    public ChaincodeStub getStub() {
+        return stub;
+    }
+
+    public String getTxId() {
+        return txId;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return version of every key read, null for keys that did not exist
+     */
+    public Map<String, Version> getReadSet() {
+        return Collections.unmodifiableMap(readSet);
+    }
+
+    /**
+     * @return range and partial composite key queries with the keys they returned
+     */
+    public List<RangeRead> getRangeReads() {
+        return Collections.unmodifiableList(rangeReads);
+    }
+
+    /**
+     * @return value of every key written, null for deletes
+     */
+    public Map<String, byte[]> getWriteSet() {
+        return Collections.unmodifiableMap(writeSet);
+    }
+
+    /**
+     * @return key-level endorsement policies set, an empty array clearing the policy
+     */
+    public Map<String, byte[]> getValidationParameterWrites() {
+        return Collections.unmodifiableMap(validationParameterWrites);
+    }
+
+    public String getEventName() {
+        return eventName;
+    }
+
+    public byte[] getEventPayload() {
+        return eventPayload;
+    }
+
+    /**
+     * @return value the transaction function returned
+     */
+    public String getResult() {
+        return result;
+    }
+
+    void setResult(final String result) {
+        this.result = result;
+    }
+
+    void setFunction(final String function) {
+        this.function = function;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+        switch (method.getName()) {
+            case "getFunction":
+                return function;
+            case "getTxId":
+                return txId;
+            case "getChannelId":
+                return ledger.getChannelId();
+            case "getTxTimestamp":
+                return timestamp;
+            case "getCreator":
+                return creator.clone();
+            case "getTransient":
+                return Collections.emptyMap();
+            case "getState":
+                return getState((String) args[0]);
+            case "getStringState":
+                return new String(getState((String) args[0]), StandardCharsets.UTF_8);
+            case "putState":
+                writeSet.put((String) args[0], ((byte[]) args[1]).clone());
+                return null;
+            case "putStringState":
+                writeSet.put((String) args[0], ((String) args[1]).getBytes(StandardCharsets.UTF_8));
+                return null;
+            case "delState":
+                writeSet.put((String) args[0], null);
+                return null;
+            case "getStateValidationParameter":
+                byte[] parameter = validationParameterWrites.containsKey(args[0])
+                        ? validationParameterWrites.get(args[0])
+                        : ledger.getValidationParameter((String) args[0]);
+                return parameter == null ? EMPTY : parameter.clone();
+            case "setStateValidationParameter":
+                validationParameterWrites.put((String) args[0], ((byte[]) args[1]).clone());
+                return null;
+            case "createCompositeKey":
+                return new CompositeKey((String) args[0], (String[]) args[1]);
+            case "splitCompositeKey":
+                return CompositeKey.parseCompositeKey((String) args[0]);
+            case "getStateByRange":
+                return keyValues(rangeOf((String) args[0], (String) args[1], 0, ""));
+            case "getStateByRangeWithPagination":
+                return keyValues(rangeOf((String) args[0], (String) args[1], (Integer) args[2], (String) args[3]));
+            case "getStateByPartialCompositeKey":
+                return keyValues(partialCompositeKey(partialKeyOf(args), 0, ""));
+            case "getStateByPartialCompositeKeyWithPagination":
+                return keyValues(partialCompositeKey(args[0].toString(), (Integer) args[1], (String) args[2]));
+            case "getHistoryForKey":
+                return history((String) args[0]);
+            case "setEvent":
+                eventName = (String) args[0];
+                eventPayload = args[1] == null ? null : ((byte[]) args[1]).clone();
+                return null;
+            case "toString":
+                return "InMemoryTransaction[" + txId + "]";
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            default:
+                throw new UnsupportedOperationException("ChaincodeStub." + method.getName()
+                        + " is not supported by the in-memory ledger");
+        }
+    }
+
+    private byte[] getState(final String key) {
+        InMemoryLedger.Versioned committed = ledger.get(key);
+        // the peer records the version of the first read only
+        readSet.putIfAbsent(key, committed == null ? null : new Version(committed.getBlock(), committed.getTxNum()));
+        return committed == null ? EMPTY : committed.getValue().clone();
+    }
+
+    private static String partialKeyOf(final Object[] args) {
+        if (args.length == 2) {
+            return new CompositeKey((String) args[0], (String[]) args[1]).toString();
+        }
+        return args[0].toString();
+    }
+
+    private Page rangeOf(final String startKey, final String endKey, final int pageSize, final String bookmark) {
+        String start = startKey == null || startKey.isEmpty() ? MIN_SIMPLE_KEY : startKey;
+        String end = endKey == null || endKey.isEmpty() ? null : endKey;
+        return page(start, end, pageSize, bookmark);
+    }
+
+    private Page partialCompositeKey(final String partialKey, final int pageSize, final String bookmark) {
+        return page(partialKey, partialKey + MAX_UNICODE_RUNE, pageSize, bookmark);
+    }
+
+    /**
+     * Reads one page of a range. The bookmark is the first key of the next page, empty once the
+     * range is exhausted.
+     */
+    private Page page(final String startKey, final String endKey, final int pageSize, final String bookmark) {
+        String start = bookmark == null || bookmark.isEmpty() ? startKey : bookmark;
+        List<Map.Entry<String, InMemoryLedger.Versioned>> entries =
+                ledger.range(start, endKey, pageSize > 0 ? pageSize + 1 : 0);
+        String next = "";
+        if (pageSize > 0 && entries.size() > pageSize) {
+            next = entries.remove(pageSize).getKey();
+        }
+
+        List<KeyValue> results = new ArrayList<>(entries.size());
+        Map<String, Version> versions = new LinkedHashMap<>();
+        for (Map.Entry<String, InMemoryLedger.Versioned> entry : entries) {
+            InMemoryLedger.Versioned value = entry.getValue();
+            results.add(new Entry(entry.getKey(), value.getValue().clone()));
+            versions.put(entry.getKey(), new Version(value.getBlock(), value.getTxNum()));
+        }
+        // a page that stopped early only covers the range up to the next page
+        rangeReads.add(new RangeRead(start, next.isEmpty() ? endKey : next, versions));
+        return new Page(results, next);
+    }
+
+    private static KeyValues keyValues(final Page page) {
+        QueryResponseMetadata metadata = QueryResponseMetadata.newBuilder()
+                .setFetchedRecordsCount(page.results.size())
+                .setBookmark(page.bookmark)
+                .build();
+        return new KeyValues(page.results, metadata);
+    }
+
+    private QueryResultsIterator<KeyModification> history(final String key) {
+        List<KeyModification> modifications = new ArrayList<>();
+        for (InMemoryLedger.Modification modification : ledger.history(key)) {
+            modifications.add(new Modification(modification));
+        }
+        return new QueryResultsIterator<KeyModification>() {
+            @Override
+            public Iterator<KeyModification> iterator() {
+                return modifications.iterator();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Version of a committed value: the block and the position in the block of the transaction
+     * that wrote it.
+     */
+    public static final class Version {
+        private final long block;
+        private final int txNum;
+
+        Version(final long block, final int txNum) {
+            this.block = block;
+            this.txNum = txNum;
+        }
+
+        public long getBlock() {
+            return block;
+        }
+
+        public int getTxNum() {
+            return txNum;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Version)) {
+                return false;
+            }
+            Version other = (Version) obj;
+            return block == other.block && txNum == other.txNum;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(block) * 31 + txNum;
+        }
+
+        @Override
+        public String toString() {
+            return block + ":" + txNum;
+        }
+    }
+
+    /**
+     * A range query: its bounds and the version of every key it returned.
+     */
+    public static final class RangeRead {
+        private final String startKey;
+        private final String endKey;
+        private final Map<String, Version> results;
+
+        RangeRead(final String startKey, final String endKey, final Map<String, Version> results) {
+            this.startKey = startKey;
+            this.endKey = endKey;
+            this.results = results;
+        }
+
+        /**
+         * @return first key of the range, inclusive
+         */
+        public String getStartKey() {
+            return startKey;
+        }
+
+        /**
+         * @return end of the range, exclusive; null for the end of the key space
+         */
+        public String getEndKey() {
+            return endKey;
+        }
+
+        public Map<String, Version> getResults() {
+            return Collections.unmodifiableMap(results);
+        }
+    }
+
+    private static final class Page {
+        private final List<KeyValue> results;
+        private final String bookmark;
+
+        Page(final List<KeyValue> results, final String bookmark) {
+            this.results = results;
+            this.bookmark = bookmark;
+        }
+    }
+
+    /**
+     * Results of a range or partial composite key query; the stub returns the same type with and
+     * without pagination.
+     */
+    private static final class KeyValues
+            implements QueryResultsIterator<KeyValue>, QueryResultsIteratorWithMetadata<KeyValue> {
+        private final List<KeyValue> results;
+        private final QueryResponseMetadata metadata;
+
+        KeyValues(final List<KeyValue> results, final QueryResponseMetadata metadata) {
+            this.results = results;
+            this.metadata = metadata;
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            return results.iterator();
+        }
+
+        @Override
+        public QueryResponseMetadata getMetadata() {
+            return metadata;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class Entry implements KeyValue {
+        private final String key;
+        private final byte[] value;
+
+        Entry(final String key, final byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class Modification implements KeyModification {
+        private final InMemoryLedger.Modification modification;
+
+        Modification(final InMemoryLedger.Modification modification) {
+            this.modification = modification;
+        }
+
+        @Override
+        public String getTxId() {
+            return modification.getTxId();
+        }
+
+        @Override
+        public byte[] getValue() {
+            return modification.getValue() == null ? EMPTY : modification.getValue().clone();
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(getValue(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Instant getTimestamp() {
+            return modification.getTimestamp();
+        }
+
+        @Override
+        public boolean isDeleted() {
+            return modification.getValue() == null;
+        }
+    }
+}
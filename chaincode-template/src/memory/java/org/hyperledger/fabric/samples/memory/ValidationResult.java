@@ -0,0 +1,59 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.memory;
+
+/**
+ * Outcome of validating one transaction of a block, named after the peer's validation codes.
+ */
+public final class ValidationResult {
+
+    public enum Code {
+        VALID,
+        MVCC_READ_CONFLICT,
+        PHANTOM_READ_CONFLICT
+    }
+
+    private static final ValidationResult VALID = new ValidationResult(Code.VALID, null);
+
+    private final Code code;
+    private final String key;
+
+    private ValidationResult(final Code code, final String key) {
+        this.code = code;
+        this.key = key;
+    }
+
+    static ValidationResult valid() {
+        return VALID;
+    }
+
+    static ValidationResult mvccReadConflict(final String key) {
+        return new ValidationResult(Code.MVCC_READ_CONFLICT, key);
+    }
+
+    static ValidationResult phantomReadConflict(final String key) {
+        return new ValidationResult(Code.PHANTOM_READ_CONFLICT, key);
+    }
+
+    public Code getCode() {
+        return code;
+    }
+
+    public boolean isValid() {
+        return code == Code.VALID;
+    }
+
+    /**
+     * @return the first key found to have changed since endorsement, null if valid
+     */
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        return key == null ? code.name() : code + " on " + key;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.simulator;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hyperledger.fabric.contract.annotation.Transaction;
+import org.hyperledger.fabric.samples.BasilContext;
+import org.hyperledger.fabric.samples.BasilContract;
+import org.hyperledger.fabric.samples.memory.InMemoryChaincode;
+
+/**
+ * Looks up transaction functions of {@link BasilContract} by name and binds their string
+ * arguments, the way the contract router does for a proposal.
+ */
+final class ContractFunctions {
+
+    private static final Map<String, Method> FUNCTIONS = new HashMap<>();
+
+    static {
+        for (Method method : BasilContract.class.getMethods()) {
+            if (method.isAnnotationPresent(Transaction.class)) {
+                FUNCTIONS.put(method.getName(), method);
+            }
+        }
+    }
+
+    private ContractFunctions() {
+    }
+
+    /**
+     * @param name name of the transaction function
+     * @param args arguments as the client would send them
+     * @return the call, ready to be endorsed
+     * @throws IllegalArgumentException if there is no such function or the arguments do not fit it
+     */
+    static InMemoryChaincode.TransactionFunction bind(final String name, final List<String> args) {
+        Method method = FUNCTIONS.get(name);
+        if (method == null) {
+            throw new IllegalArgumentException("Unknown transaction function " + name);
+        }
+        Class<?>[] types = method.getParameterTypes();
+        if (types.length != args.size() + 1) {
+            throw new IllegalArgumentException(name + " takes " + (types.length - 1) + " arguments, not " + args.size());
+        }
+        Object[] values = new Object[types.length];
+        for (int i = 1; i < types.length; i++) {
+            values[i] = convert(types[i], args.get(i - 1));
+        }
+        return (contract, ctx) -> invoke(method, contract, ctx, values.clone());
+    }
+
+    private static Object convert(final Class<?> type, final String value) {
+        if (type == String.class) {
+            return value;
+        } else if (type == int.class) {
+            return Integer.parseInt(value);
+        } else if (type == long.class) {
+            return Long.parseLong(value);
+        } else if (type == double.class) {
+            return Double.parseDouble(value);
+        } else if (type == boolean.class) {
+            return Boolean.parseBoolean(value);
+        }
+        throw new IllegalArgumentException("Unsupported parameter type " + type.getName());
+    }
+
+    private static String invoke(final Method method, final BasilContract contract, final BasilContext ctx,
+            final Object[] values) {
+        values[0] = ctx;
+        try {
+            return (String) method.invoke(contract, values);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.simulator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.hyperledger.fabric.samples.memory.ValidationResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Outcome of a simulation: how many transactions of each function were invalidated, and on
+ * which keys.
+ */
+final class InvalidationReport {
+
+    private final Tally total = new Tally();
+    private final Map<String, Tally> functions = new TreeMap<>();
+    private final Map<String, Tally> keys = new HashMap<>();
+
+    private long blocks;
+    private long cutBySize;
+    private long blockTransactions;
+
+    void endorsementFailed(final String function) {
+        total.endorsementFailed++;
+        functions.computeIfAbsent(function, f -> new Tally()).endorsementFailed++;
+    }
+
+    /**
+     * Counts a request that could not be run at all, e.g. an unknown function or an argument of
+     * the wrong type in a recorded workload. The first error of each function is kept for the
+     * report.
+     */
+    void failed(final String function, final RuntimeException e) {
+        total.failed++;
+        // a recorded workload may leave the function out
+        Tally tally = functions.computeIfAbsent(String.valueOf(function), f -> new Tally());
+        tally.failed++;
+        if (tally.firstError == null) {
+            tally.firstError = String.valueOf(e.getMessage());
+        }
+    }
+
+    void validated(final String function, final ValidationResult result) {
+        total.add(result);
+        functions.computeIfAbsent(function, f -> new Tally()).add(result);
+        if (!result.isValid()) {
+            keys.computeIfAbsent(result.getKey(), k -> new Tally()).add(result);
+        }
+    }
+
+    void blockCut(final int size, final boolean full) {
+        blocks++;
+        blockTransactions += size;
+        if (full) {
+            cutBySize++;
+        }
+    }
+
+    /**
+     * @param topKeys number of most conflicted keys to list
+     * @return the report; composite keys are shown with their U+0000 separators replaced by '/'
+     */
+    JSONObject toJson(final int topKeys) {
+        JSONObject json = new JSONObject();
+        json.put("blocks", new JSONObject()
+                .put("count", blocks)
+                .put("cutBySize", cutBySize)
+                .put("cutByTimeout", blocks - cutBySize)
+                .put("averageSize", blocks == 0 ? 0 : (double) blockTransactions / blocks));
+        json.put("total", total.toJson());
+
+        JSONObject byFunction = new JSONObject();
+        for (Map.Entry<String, Tally> function : functions.entrySet()) {
+            byFunction.put(function.getKey(), function.getValue().toJson());
+        }
+        json.put("functions", byFunction);
+
+        List<Map.Entry<String, Tally>> conflicted = new ArrayList<>(keys.entrySet());
+        conflicted.sort(Comparator.comparingLong((Map.Entry<String, Tally> e) -> e.getValue().invalid())
+                .reversed()
+                .thenComparing(Map.Entry::getKey));
+        JSONArray byKey = new JSONArray();
+        for (Map.Entry<String, Tally> key : conflicted.subList(0, Math.min(topKeys, conflicted.size()))) {
+            byKey.put(new JSONObject()
+                    .put("key", key.getKey().replace('\u0000', '/'))
+                    .put("mvccReadConflicts", key.getValue().mvccReadConflicts)
+                    .put("phantomReadConflicts", key.getValue().phantomReadConflicts));
+        }
+        json.put("keys", byKey);
+        return json;
+    }
+
+    private static final class Tally {
+        private long endorsementFailed;
+        private long failed;
+        private String firstError;
+        private long valid;
+        private long mvccReadConflicts;
+        private long phantomReadConflicts;
+
+        void add(final ValidationResult result) {
+            switch (result.getCode()) {
+                case VALID:
+                    valid++;
+                    break;
+                case MVCC_READ_CONFLICT:
+                    mvccReadConflicts++;
+                    break;
+                default:
+                    phantomReadConflicts++;
+                    break;
+            }
+        }
+
+        long invalid() {
+            return mvccReadConflicts + phantomReadConflicts;
+        }
+
+        JSONObject toJson() {
+            long ordered = valid + invalid();
+            JSONObject json = new JSONObject()
+                    .put("endorsementFailed", endorsementFailed)
+                    .put("failed", failed)
+                    .put("valid", valid)
+                    .put("mvccReadConflicts", mvccReadConflicts)
+                    .put("phantomReadConflicts", phantomReadConflicts)
+                    .put("invalidationRate", ordered == 0 ? 0 : (double) invalid() / ordered);
+            if (firstError != null) {
+                json.put("firstError", firstError);
+            }
+            return json;
+        }
+    }
+}
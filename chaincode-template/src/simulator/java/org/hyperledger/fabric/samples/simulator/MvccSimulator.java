@@ -0,0 +1,331 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.simulator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import org.hyperledger.fabric.samples.memory.InMemoryChaincode;
+import org.hyperledger.fabric.samples.memory.InMemoryLedger;
+import org.hyperledger.fabric.samples.memory.InMemoryTransaction;
+import org.hyperledger.fabric.samples.memory.ValidationResult;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.json.JSONObject;
+
+/**
+ * Replays a workload against {@link org.hyperledger.fabric.samples.BasilContract} on an
+ * in-memory ledger and reports how many transactions the peer would invalidate.
+ *
+ * <p>Time is simulated. Each transaction is endorsed at its arrival time against the state
+ * committed so far and handed to the orderer, which cuts a block once it holds
+ * {@code --block-size} transactions or {@code --block-timeout-ms} after the first one arrived,
+ * like the BatchSize and BatchTimeout settings of the channel. A block is validated and committed
+ * {@code --commit-latency-ms} after it is cut; transactions endorsed in the meantime still read
+ * the old state. Validation follows the peer: MVCC read conflicts on read keys and phantom read
+ * conflicts on queried ranges, in block order.
+ *
+ * <p>Run it with {@code ./gradlew simulate --args="--rate 200 --hot-keys 20"}, or replay a
+ * recorded workload with {@code --workload <file.jsonl>}.
+ */
+public final class MvccSimulator {
+
+    /** Proposal timestamp of the first transaction of the workload. */
+    private static final Instant START = Instant.parse("2024-02-01T00:00:00Z");
+
+    private final Options options;
+    private final InMemoryChaincode chaincode = new InMemoryChaincode(new InMemoryLedger());
+    private final InvalidationReport report = new InvalidationReport();
+
+    private final Deque<CutBlock> committing = new ArrayDeque<>();
+    private List<Pending> batch = new ArrayList<>();
+    private double batchDeadline;
+
+    private MvccSimulator(final Options options) {
+        this.options = options;
+    }
+
+    public static void main(final String[] args) throws IOException {
+        Options options = Options.parse(args);
+        List<Workload.Request> workload = options.workload == null
+                ? Workload.synthetic(options)
+                : Workload.read(options.workload);
+
+        MvccSimulator simulator = new MvccSimulator(options);
+        simulator.populate();
+        simulator.run(workload);
+
+        JSONObject json = options.toJson();
+        json.put("transactions", workload.size());
+        JSONObject outcome = simulator.report.toJson(options.topKeys);
+        for (String key : outcome.keySet()) {
+            json.put(key, outcome.get(key));
+        }
+        String text = json.toString(2);
+        System.out.println(text);
+        Files.writeString(options.report, text, StandardCharsets.UTF_8);
+        System.out.println("Report written to " + options.report.toAbsolutePath());
+    }
+
+    /**
+     * Creates the basils the workload refers to, each in a block of its own, and gives each a
+     * position so that updates find it in the geo index.
+     */
+    private void populate() {
+        for (int i = 0; i < options.basils; i++) {
+            String qr = Workload.qr(i);
+            chaincode.submit(Workload.SUPPLIER, "CreateBasil",
+                    (contract, ctx) -> contract.CreateBasil(ctx, qr, "simulated"));
+            chaincode.submit(Workload.SUPPLIER, "UpdateBasil",
+                    (contract, ctx) -> contract.UpdateBasil(ctx, qr, "simulated", "44.40000,8.90000"));
+        }
+    }
+
+    private void run(final List<Workload.Request> workload) {
+        for (Workload.Request request : workload) {
+            advance(request.getAtMillis());
+            InMemoryTransaction transaction;
+            try {
+                Instant timestamp = START.plusNanos((long) (request.getAtMillis() * 1_000_000));
+                transaction = chaincode.endorse(request.getMspId(), timestamp, request.getFunction(),
+                        ContractFunctions.bind(request.getFunction(), request.getArgs()));
+            } catch (ChaincodeException e) {
+                // rejected by the contract, so never submitted
+                report.endorsementFailed(request.getFunction());
+                continue;
+            } catch (RuntimeException e) {
+                // a request the contract cannot even be called with must not end the simulation
+                report.failed(request.getFunction(), e);
+                continue;
+            }
+            if (batch.isEmpty()) {
+                batchDeadline = request.getAtMillis() + options.blockTimeoutMillis;
+            }
+            batch.add(new Pending(request.getFunction(), transaction));
+            if (batch.size() == options.blockSize) {
+                cut(request.getAtMillis(), true);
+            }
+        }
+        advance(Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Cuts and commits every block due by {@code nowMillis}, in time order.
+     */
+    private void advance(final double nowMillis) {
+        while (true) {
+            double cutAt = batch.isEmpty() ? Double.POSITIVE_INFINITY : batchDeadline;
+            double commitAt = committing.isEmpty() ? Double.POSITIVE_INFINITY : committing.peek().commitAt;
+            double next = Math.min(cutAt, commitAt);
+            if (next > nowMillis || next == Double.POSITIVE_INFINITY) {
+                return;
+            }
+            if (cutAt <= commitAt) {
+                cut(cutAt, false);
+            } else {
+                commit(committing.poll());
+            }
+        }
+    }
+
+    private void cut(final double atMillis, final boolean full) {
+        report.blockCut(batch.size(), full);
+        committing.add(new CutBlock(batch, atMillis + options.commitLatencyMillis));
+        batch = new ArrayList<>();
+    }
+
+    private void commit(final CutBlock block) {
+        List<InMemoryTransaction> transactions = new ArrayList<>(block.transactions.size());
+        for (Pending pending : block.transactions) {
+            transactions.add(pending.transaction);
+        }
+        List<ValidationResult> results = chaincode.getLedger().commitBlock(transactions);
+        for (int i = 0; i < results.size(); i++) {
+            report.validated(block.transactions.get(i).function, results.get(i));
+        }
+    }
+
+    private static final class Pending {
+        private final String function;
+        private final InMemoryTransaction transaction;
+
+        Pending(final String function, final InMemoryTransaction transaction) {
+            this.function = function;
+            this.transaction = transaction;
+        }
+    }
+
+    private static final class CutBlock {
+        private final List<Pending> transactions;
+        private final double commitAt;
+
+        CutBlock(final List<Pending> transactions, final double commitAt) {
+            this.transactions = transactions;
+            this.commitAt = commitAt;
+        }
+    }
+
+    /**
+     * Command line options of a simulation, e.g.
+     * {@code --rate 200 --duration 60 --hot-keys 20 --mix update=60,leg=30,create=10 --block-size 10}.
+     */
+    static final class Options {
+        private static final String[] OPERATIONS = {"create", "update", "leg", "transfer", "assign"};
+
+        private Path workload;
+        private int basils = 1000;
+        private double rate = 100;
+        private long durationSeconds = 60;
+        private int hotKeys;
+        private final Map<String, Integer> mix = new LinkedHashMap<>();
+        private long seed = 1;
+        private int blockSize = 10;
+        private double blockTimeoutMillis = 2000;
+        private double commitLatencyMillis = 250;
+        private int topKeys = 20;
+        private Path report = Paths.get("mvcc-report.json");
+
+        private final int[] cumulativeWeights = new int[OPERATIONS.length];
+
+        /**
+         * @param args command line
+         * @return the parsed options
+         * @throws IllegalArgumentException if an option is unknown or malformed
+         */
+        static Options parse(final String[] args) {
+            Options options = new Options();
+            String mix = "update=60,leg=30,create=10";
+            for (int i = 0; i < args.length; i++) {
+                String name = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value of " + name);
+                }
+                String value = args[++i];
+                switch (name) {
+                    case "--workload":
+                        options.workload = Paths.get(value);
+                        break;
+                    case "--basils":
+                        options.basils = Integer.parseInt(value);
+                        break;
+                    case "--rate":
+                        options.rate = Double.parseDouble(value);
+                        break;
+                    case "--duration":
+                        options.durationSeconds = Long.parseLong(value);
+                        break;
+                    case "--hot-keys":
+                        options.hotKeys = Integer.parseInt(value);
+                        break;
+                    case "--mix":
+                        mix = value;
+                        break;
+                    case "--seed":
+                        options.seed = Long.parseLong(value);
+                        break;
+                    case "--block-size":
+                        options.blockSize = Integer.parseInt(value);
+                        break;
+                    case "--block-timeout-ms":
+                        options.blockTimeoutMillis = Double.parseDouble(value);
+                        break;
+                    case "--commit-latency-ms":
+                        options.commitLatencyMillis = Double.parseDouble(value);
+                        break;
+                    case "--top-keys":
+                        options.topKeys = Integer.parseInt(value);
+                        break;
+                    case "--report":
+                        options.report = Paths.get(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + name);
+                }
+            }
+            if (options.blockSize <= 0 || options.rate <= 0 || options.basils <= 0) {
+                throw new IllegalArgumentException("Block size, rate and basils must be positive");
+            }
+            options.parseMix(mix);
+            return options;
+        }
+
+        int getBasils() {
+            return basils;
+        }
+
+        double getRate() {
+            return rate;
+        }
+
+        long getDurationSeconds() {
+            return durationSeconds;
+        }
+
+        int getHotKeys() {
+            return hotKeys;
+        }
+
+        long getSeed() {
+            return seed;
+        }
+
+        JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("workload", workload == null ? "synthetic" : workload.toString());
+            if (workload == null) {
+                json.put("rate", rate);
+                json.put("durationSeconds", durationSeconds);
+                json.put("hotKeys", hotKeys);
+                json.put("mix", new JSONObject(mix));
+                json.put("seed", seed);
+            }
+            json.put("basils", basils);
+            json.put("blockSize", blockSize);
+            json.put("blockTimeoutMs", blockTimeoutMillis);
+            json.put("commitLatencyMs", commitLatencyMillis);
+            return json;
+        }
+
+        private void parseMix(final String value) {
+            for (String part : value.split(",")) {
+                String[] weight = part.split("=");
+                String operation = weight[0].trim().toLowerCase(Locale.ROOT);
+                if (weight.length != 2 || !List.of(OPERATIONS).contains(operation)) {
+                    throw new IllegalArgumentException("Invalid mix entry " + part);
+                }
+                mix.put(operation, Integer.parseInt(weight[1].trim()));
+            }
+            int sum = 0;
+            for (int i = 0; i < OPERATIONS.length; i++) {
+                sum += mix.getOrDefault(OPERATIONS[i], 0);
+                cumulativeWeights[i] = sum;
+            }
+            if (sum <= 0) {
+                throw new IllegalArgumentException("Mix has no weight");
+            }
+        }
+
+        String pick(final Random random) {
+            int roll = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            for (int i = 0; i < OPERATIONS.length; i++) {
+                if (roll < cumulativeWeights[i]) {
+                    return OPERATIONS[i];
+                }
+            }
+            return OPERATIONS[OPERATIONS.length - 1];
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.simulator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Transactions submitted to the network, each with the time its proposal was endorsed.
+ */
+final class Workload {
+
+    static final String SUPPLIER = "Org1MSP";
+    static final String RETAILER = "Org2MSP";
+
+    private Workload() {
+    }
+
+    /**
+     * One submitted transaction.
+     */
+    static final class Request {
+        private final double atMillis;
+        private final String mspId;
+        private final String function;
+        private final List<String> args;
+
+        Request(final double atMillis, final String mspId, final String function, final List<String> args) {
+            this.atMillis = atMillis;
+            this.mspId = mspId;
+            this.function = function;
+            this.args = args;
+        }
+
+        /**
+         * @return time of endorsement in milliseconds since the start of the workload
+         */
+        double getAtMillis() {
+            return atMillis;
+        }
+
+        String getMspId() {
+            return mspId;
+        }
+
+        String getFunction() {
+            return function;
+        }
+
+        List<String> getArgs() {
+            return args;
+        }
+    }
+
+    /**
+     * Reads a recorded workload, one JSON object per line, e.g.
+     * {@code {"at":120.5,"msp":"Org1MSP","function":"UpdateBasil","args":["QR-000001","fresh","44.4,8.9"]}}.
+     * The MSP defaults to the supplier's. Requests are sorted by time.
+     *
+     * @param file the workload
+     * @return the requests
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a line is malformed
+     */
+    static List<Request> read(final Path file) throws IOException {
+        List<Request> requests = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    JSONObject json = new JSONObject(line);
+                    JSONArray array = json.optJSONArray("args");
+                    List<String> args = new ArrayList<>();
+                    for (int i = 0; array != null && i < array.length(); i++) {
+                        args.add(String.valueOf(array.get(i)));
+                    }
+                    requests.add(new Request(json.getDouble("at"), json.optString("msp", SUPPLIER),
+                            json.getString("function"), args));
+                } catch (JSONException e) {
+                    throw new IllegalArgumentException("Line " + number + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        requests.sort(Comparator.comparingDouble(Request::getAtMillis));
+        return requests;
+    }
+
+    /**
+     * Generates Poisson arrivals of a weighted mix of supplier transactions. Every transaction
+     * but a create targets one of the pre-created basils, or one of the {@code hotKeys} first
+     * ones if set. The same seed always generates the same workload.
+     *
+     * @param options rate, duration, mix, key space and seed
+     * @return the requests in time order
+     */
+    static List<Request> synthetic(final MvccSimulator.Options options) {
+        Random random = new Random(options.getSeed());
+        double durationMillis = options.getDurationSeconds() * 1000.0;
+        double meanGapMillis = 1000.0 / options.getRate();
+        int keys = options.getHotKeys() > 0 ? Math.min(options.getHotKeys(), options.getBasils()) : options.getBasils();
+
+        List<Request> requests = new ArrayList<>();
+        int created = 0;
+        double at = 0;
+        while (true) {
+            at += -Math.log(1 - random.nextDouble()) * meanGapMillis;
+            if (at >= durationMillis) {
+                return requests;
+            }
+            int target = random.nextInt(keys);
+            String qr = qr(target);
+            switch (options.pick(random)) {
+                case "create":
+                    requests.add(new Request(at, SUPPLIER, "CreateBasil",
+                            List.of(String.format("SIM-%06d", created++), "simulated")));
+                    break;
+                case "update":
+                    requests.add(new Request(at, SUPPLIER, "UpdateBasil",
+                            List.of(qr, "simulated", position(random))));
+                    break;
+                case "leg":
+                    requests.add(new Request(at, SUPPLIER, "RecordBasilLeg", List.of(qr, position(random))));
+                    break;
+                case "transfer":
+                    requests.add(new Request(at, SUPPLIER, "TransferBasil", List.of(qr, RETAILER)));
+                    break;
+                case "assign":
+                    requests.add(new Request(at, SUPPLIER, "AssignToLot", List.of("LOT-" + target % 10, qr)));
+                    break;
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+    }
+
+    static String qr(final int i) {
+        return String.format("QR-%06d", i);
+    }
+
+    private static String position(final Random random) {
+        return String.format(Locale.ROOT, "%.5f,%.5f", 44.0 + random.nextDouble(), 8.5 + random.nextDouble());
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public final class BasilCodecTest {
+
+    @Test
+    public void roundTripKeepsEveryField() {
+        Basil basil = new Basil("QR-1", "say \"ciao\" \\ basilico\nè", Owner.of("Org1MSP"),
+                new BasilLeg(1_700_000_000L, "44.40560,8.94630"), "LOT-1");
+
+        String json = BasilCodec.toJson(basil);
+        Basil decoded = BasilCodec.fromJson(json);
+
+        assertEquals(basil, decoded);
+        assertEquals("Org1MSP", decoded.getOwner().getOwnerID());
+        assertEquals(basil.getOwner().getOwnerName(), decoded.getOwner().getOwnerName());
+        assertEquals(basil.getBasilLeg(), decoded.getBasilLeg());
+        assertEquals("LOT-1", decoded.getLotId());
+        assertTrue(BasilCodec.hasLot(json));
+        assertTrue(BasilCodec.hasDocType(json));
+    }
+
+    @Test
+    public void encodesMissingLegAndLotAsNull() {
+        String json = BasilCodec.toJson(new Basil("QR-2", "fresh", Owner.of("Org2MSP"), null, null));
+
+        assertTrue(json.contains("\"basilLeg\":null"));
+        assertTrue(json.contains("\"lotId\":null"));
+        assertFalse(BasilCodec.hasLot(json));
+
+        Basil decoded = BasilCodec.fromJson(json);
+        assertNull(decoded.getBasilLeg());
+        assertNull(decoded.getLotId());
+    }
+
+    @Test
+    public void decodesDocumentsWithoutDocTypeInAnyFieldOrder() {
+        String json = "{\"qr\":\"QR-3\",\"owner\":{\"ownerName\":\"x\",\"ownerID\":\"Org1MSP\"},\"extraInfo\":\"old\","
+                + "\"basilLeg\":{\"gpsPosition\":\"1,2\",\"timestamp\":5}}";
+
+        Basil decoded = BasilCodec.fromJson(json);
+
+        assertFalse(BasilCodec.hasDocType(json));
+        assertEquals("QR-3", decoded.getQr());
+        assertEquals("old", decoded.getExtraInfo());
+        assertEquals("Org1MSP", decoded.getOwner().getOwnerID());
+        assertEquals(Long.valueOf(5), decoded.getBasilLeg().getTimestamp());
+        assertEquals("1,2", decoded.getBasilLeg().getGpsPosition());
+    }
+
+    @Test
+    public void fallsBackToGensonForUnknownFields() {
+        String json = "{\"qr\":\"QR-4\",\"extraInfo\":\"legacy\",\"owner\":{\"ownerID\":\"Org2MSP\"},\"grade\":3}";
+
+        Basil decoded = BasilCodec.fromJson(json);
+
+        assertEquals("QR-4", decoded.getQr());
+        assertEquals("legacy", decoded.getExtraInfo());
+        assertEquals("Org2MSP", decoded.getOwner().getOwnerID());
+    }
+
+    @Test
+    public void legRoundTrip() {
+        BasilLeg leg = new BasilLeg(42L, "44.1,8.2");
+
+        assertEquals(leg, BasilCodec.legFromJson(BasilCodec.toJson(leg)));
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.hyperledger.fabric.samples.memory.InMemoryChaincode;
+import org.hyperledger.fabric.samples.memory.InMemoryLedger;
+import org.hyperledger.fabric.samples.memory.InMemoryTransaction;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ext.sbe.impl.StateBasedEndorsementFactory;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+public final class BasilContractTest {
+
+    private static final String SUPPLIER = "Org1MSP";
+
+    private static final String BOTH_PARTIES = "Org1MSP,Org2MSP";
+
+    private final InMemoryChaincode chaincode = new InMemoryChaincode(new InMemoryLedger());
+
+    @Test
+    public void createsBasilsForTheSupplier() {
+        create("QR-1");
+
+        Basil basil = BasilCodec.fromJson(query("QR-1"));
+        assertEquals("QR-1", basil.getQr());
+        assertEquals(SUPPLIER, basil.getOwner().getOwnerID());
+        assertRejected(BasilErrors.BASIL_ALREADY_EXISTS, () -> create("QR-1"));
+        assertRejected(BasilErrors.NOT_AUTHORIZED, () -> chaincode.submit("Org2MSP", "CreateBasil",
+                (contract, ctx) -> contract.CreateBasil(ctx, "QR-2", "fresh")));
+    }
+
+    @Test
+    public void reportsAStatusForEveryBatchEntry() {
+        create("QR-1");
+
+        JSONObject summary = new JSONObject(createBatch(
+                "[{\"qr\":\"QR-1\"},{\"qr\":\"QR-2\",\"extraInfo\":\"fresh\"},{\"qr\":\"QR-2\"},{\"qr\":\"\"}]"));
+
+        assertEquals(1, summary.getInt("created"));
+        JSONArray results = summary.getJSONArray("results");
+        assertEquals("ALREADY_EXISTS", results.getJSONObject(0).getString("status"));
+        assertEquals("CREATED", results.getJSONObject(1).getString("status"));
+        assertEquals("DUPLICATE_IN_BATCH", results.getJSONObject(2).getString("status"));
+        assertEquals("INVALID", results.getJSONObject(3).getString("status"));
+        assertEquals("fresh", BasilCodec.fromJson(query("QR-2")).getExtraInfo());
+    }
+
+    @Test
+    public void rejectsEmptyAndOversizedBatches() {
+        StringBuilder oversized = new StringBuilder("[");
+        for (int i = 0; i <= BasilContract.MAX_BATCH_SIZE; i++) {
+            oversized.append(i == 0 ? "" : ",").append("{\"qr\":\"QR-").append(i).append("\"}");
+        }
+        String tooMany = oversized.append(']').toString();
+
+        assertRejected(BasilErrors.INVALID_ARGUMENT, () -> createBatch("[]"));
+        assertRejected(BasilErrors.INVALID_ARGUMENT, () -> createBatch(tooMany));
+        assertRejected(BasilErrors.NOT_AUTHORIZED, () -> chaincode.submit("Org2MSP", "CreateBasilBatch",
+                (contract, ctx) -> contract.CreateBasilBatch(ctx, "[{\"qr\":\"QR-1\"}]")));
+    }
+
+    @Test
+    public void readsTheConfiguredBatchSize() {
+        assertEquals(250, BasilContract.maxBatchSize("250"));
+        assertEquals(7, BasilContract.maxBatchSize(" 7 "));
+    }
+
+    @Test
+    public void fallsBackToTheDefaultBatchSize() {
+        assertEquals(BasilContract.DEFAULT_MAX_BATCH_SIZE, BasilContract.maxBatchSize(null));
+        assertEquals(BasilContract.DEFAULT_MAX_BATCH_SIZE, BasilContract.maxBatchSize(""));
+        assertEquals(BasilContract.DEFAULT_MAX_BATCH_SIZE, BasilContract.maxBatchSize("many"));
+        assertEquals(BasilContract.DEFAULT_MAX_BATCH_SIZE, BasilContract.maxBatchSize("0"));
+        assertEquals(BasilContract.DEFAULT_MAX_BATCH_SIZE, BasilContract.maxBatchSize("-5"));
+    }
+
+    @Test
+    public void pagesThroughTheBasilsOfAnOwner() {
+        createBatch("[{\"qr\":\"QR-1\"},{\"qr\":\"QR-2\"},{\"qr\":\"QR-3\"},{\"qr\":\"QR-4\"},{\"qr\":\"QR-5\"}]");
+        transfer("QR-3", "Org2MSP");
+
+        assertEquals(Arrays.asList("QR-1", "QR-2", "QR-4", "QR-5"), pages((pageSize, bookmark) ->
+                chaincode.evaluate(SUPPLIER, "GetBasilsByOwner",
+                        (contract, ctx) -> contract.GetBasilsByOwner(ctx, SUPPLIER, pageSize, bookmark))));
+        assertEquals(Arrays.asList("QR-3"), pages((pageSize, bookmark) ->
+                chaincode.evaluate(SUPPLIER, "GetBasilsByOwner",
+                        (contract, ctx) -> contract.GetBasilsByOwner(ctx, "Org2MSP", pageSize, bookmark))));
+    }
+
+    @Test
+    public void rejectsInvalidOwnerPages() {
+        assertRejected(BasilErrors.INVALID_ARGUMENT, () -> chaincode.evaluate(SUPPLIER, "GetBasilsByOwner",
+                (contract, ctx) -> contract.GetBasilsByOwner(ctx, SUPPLIER, 0, "")));
+        assertRejected(BasilErrors.INVALID_ARGUMENT, () -> chaincode.evaluate(SUPPLIER, "GetBasilsByOwner",
+                (contract, ctx) -> contract.GetBasilsByOwner(ctx, SUPPLIER, 2, "x|")));
+        assertRejected(BasilErrors.INVALID_ARGUMENT, () -> chaincode.evaluate(SUPPLIER, "GetBasilsByOwner",
+                (contract, ctx) -> contract.GetBasilsByOwner(ctx, SUPPLIER, 2, "l|lot")));
+    }
+
+    @Test
+    public void pagesThroughAllBasilsAndKeyRanges() {
+        createBatch("[{\"qr\":\"QR-1\"},{\"qr\":\"QR-2\"},{\"qr\":\"QR-3\"},{\"qr\":\"QR-4\"},{\"qr\":\"QR-5\"}]");
+
+        assertEquals(Arrays.asList("QR-1", "QR-2", "QR-3", "QR-4", "QR-5"), pages((pageSize, bookmark) ->
+                chaincode.evaluate(SUPPLIER, "GetAllBasils",
+                        (contract, ctx) -> contract.GetAllBasils(ctx, pageSize, bookmark))));
+        assertEquals(Arrays.asList("QR-2", "QR-3"), pages((pageSize, bookmark) ->
+                chaincode.evaluate(SUPPLIER, "GetBasilsByRange",
+                        (contract, ctx) -> contract.GetBasilsByRange(ctx, "QR-2", "QR-4", pageSize, bookmark))));
+        assertRejected(BasilErrors.INVALID_ARGUMENT, () -> chaincode.evaluate(SUPPLIER, "GetBasilsByRange",
+                (contract, ctx) -> contract.GetBasilsByRange(ctx, "", "", 0, "")));
+    }
+
+    @Test
+    public void rejectsEmptyQueryPages() {
+        assertRejected(BasilErrors.INVALID_ARGUMENT, () -> chaincode.evaluate(SUPPLIER, "GetBasilsByQuery",
+                (contract, ctx) -> contract.GetBasilsByQuery(ctx, "{\"owner.ownerID\":\"Org1MSP\"}", 0, "")));
+    }
+
+    @Test
+    public void transfersALotWithASingleRecordWrite() {
+        createBatch("[{\"qr\":\"QR-1\"},{\"qr\":\"QR-2\"},{\"qr\":\"QR-3\"},{\"qr\":\"QR-4\"}]");
+        assignToLot("LOT-1", "QR-1");
+        assignToLot("LOT-2", "QR-2");
+        assignToLot("LOT-2", "QR-3");
+
+        InMemoryTransaction transfer = chaincode.endorse(SUPPLIER, "TransferLot",
+                (contract, ctx) -> contract.TransferLot(ctx, "LOT-2", "Org2MSP"));
+        chaincode.getLedger().commit(transfer);
+
+        assertFalse(transfer.getWriteSet().containsKey("QR-2"));
+        assertFalse(transfer.getWriteSet().containsKey("QR-3"));
+        assertEquals("Org2MSP", BasilCodec.fromJson(query("QR-2")).getOwner().getOwnerID());
+        assertEquals(SUPPLIER, BasilCodec.fromJson(query("QR-1")).getOwner().getOwnerID());
+    }
+
+    @Test
+    public void pagesThroughTheLotsOfAnOwner() {
+        createBatch("[{\"qr\":\"QR-1\"},{\"qr\":\"QR-2\"},{\"qr\":\"QR-3\"},{\"qr\":\"QR-4\"}]");
+        assignToLot("LOT-1", "QR-1");
+        assignToLot("LOT-2", "QR-2");
+        assignToLot("LOT-2", "QR-3");
+
+        assertEquals(Arrays.asList("QR-4", "QR-1", "QR-2", "QR-3"), pages((pageSize, bookmark) ->
+                chaincode.evaluate(SUPPLIER, "GetBasilsByOwner",
+                        (contract, ctx) -> contract.GetBasilsByOwner(ctx, SUPPLIER, pageSize, bookmark))));
+
+        chaincode.submit(SUPPLIER, "TransferLot", (contract, ctx) -> contract.TransferLot(ctx, "LOT-1", "Org2MSP"));
+
+        assertEquals(Arrays.asList("QR-4", "QR-2", "QR-3"), pages((pageSize, bookmark) ->
+                chaincode.evaluate(SUPPLIER, "GetBasilsByOwner",
+                        (contract, ctx) -> contract.GetBasilsByOwner(ctx, SUPPLIER, pageSize, bookmark))));
+        assertEquals(Arrays.asList("QR-1"), pages((pageSize, bookmark) ->
+                chaincode.evaluate(SUPPLIER, "GetBasilsByOwner",
+                        (contract, ctx) -> contract.GetBasilsByOwner(ctx, "Org2MSP", pageSize, bookmark))));
+    }
+
+    @Test
+    public void summarisesLegsRecordedOutsideUpdates() {
+        create("QR-1");
+        at(1000, "UpdateBasil", (contract, ctx) -> contract.UpdateBasil(ctx, "QR-1", "in transit", "44.40,8.94"));
+        at(2000, "RecordBasilLeg", (contract, ctx) -> contract.RecordBasilLeg(ctx, "QR-1", "44.41,8.95"));
+
+        JSONObject summary = new JSONObject(provenance("QR-1"));
+        assertEquals(1000, summary.getLong("firstLegTimestamp"));
+        assertEquals(2000, summary.getLong("lastLegTimestamp"));
+        assertEquals(1, summary.getInt("updateCount"));
+    }
+
+    @Test
+    public void completesTheOwnerChainWithLotTransfers() {
+        create("QR-1");
+        assignToLot("LOT-1", "QR-1");
+        chaincode.submit(SUPPLIER, "TransferLot", (contract, ctx) -> contract.TransferLot(ctx, "LOT-1", "Org2MSP"));
+
+        JSONArray owners = new JSONObject(provenance("QR-1")).getJSONArray("owners");
+        assertEquals(2, owners.length());
+        assertEquals(SUPPLIER, owners.getJSONObject(0).getString("ownerID"));
+        assertEquals("Org2MSP", owners.getJSONObject(1).getString("ownerID"));
+        assertEquals("LOT-1", owners.getJSONObject(1).getString("lotId"));
+    }
+
+    @Test
+    public void letsTheOwnerAloneEndorseUpdates() {
+        create("QR-1");
+        update("QR-1", "44.40,8.94");
+
+        InMemoryTransaction update = chaincode.endorse(SUPPLIER, "UpdateBasil",
+                (contract, ctx) -> contract.UpdateBasil(ctx, "QR-1", "in transit", "45.46,9.19"));
+
+        int existing = 0;
+        for (String key : update.getWriteSet().keySet()) {
+            if (!chaincode.evaluate(SUPPLIER, "GetState", (contract, ctx) -> ctx.getStringState(key)).isEmpty()) {
+                assertEquals(SUPPLIER, committedPolicy(key), key);
+                existing++;
+            }
+        }
+        // the basil, its summary, its latest leg and the spatial index entry it leaves
+        assertEquals(4, existing);
+    }
+
+    @Test
+    public void handsTheBasilKeysToTheNewOwner() {
+        create("QR-1");
+        update("QR-1", "44.40,8.94");
+
+        InMemoryTransaction transfer = chaincode.endorse(SUPPLIER, "TransferBasil",
+                (contract, ctx) -> contract.TransferBasil(ctx, "QR-1", "Org2MSP"));
+
+        int handedOver = 0;
+        for (Map.Entry<String, byte[]> parameter : transfer.getValidationParameterWrites().entrySet()) {
+            String orgs = orgs(parameter.getValue());
+            if (parameter.getKey().contains(InventoryCounters.STAT_INDEX)) {
+                // counter entries follow their holder
+                continue;
+            } else if ("Org2MSP".equals(orgs)) {
+                handedOver++;
+            } else {
+                assertEquals(BOTH_PARTIES, orgs, parameter.getKey());
+            }
+        }
+        assertEquals(4, handedOver);
+        assertEquals("Org2MSP", orgs(transfer.getValidationParameterWrites().get("QR-1")));
+        assertRejected(BasilErrors.NOT_AUTHORIZED, () -> chaincode.submit("Org2MSP", "TransferBasil",
+                (contract, ctx) -> contract.TransferBasil(ctx, "QR-1", "Org1MSP")));
+    }
+
+    @Test
+    public void needsBothPartiesForLotMembers() {
+        create("QR-1");
+        update("QR-1", "44.40,8.94");
+        assignToLot("LOT-1", "QR-1");
+
+        assertEquals(BOTH_PARTIES, committedPolicy("QR-1"));
+        InMemoryTransaction update = chaincode.endorse(SUPPLIER, "UpdateBasil",
+                (contract, ctx) -> contract.UpdateBasil(ctx, "QR-1", "in transit", "45.46,9.19"));
+        for (byte[] parameter : update.getValidationParameterWrites().values()) {
+            assertEquals(BOTH_PARTIES, orgs(parameter));
+        }
+    }
+
+    private void create(final String qr) {
+        chaincode.submit(SUPPLIER, "CreateBasil", (contract, ctx) -> contract.CreateBasil(ctx, qr, "fresh"));
+    }
+
+    private String createBatch(final String entriesJSON) {
+        return chaincode.submit(SUPPLIER, "CreateBasilBatch",
+                (contract, ctx) -> contract.CreateBasilBatch(ctx, entriesJSON));
+    }
+
+    private void transfer(final String qr, final String newOwner) {
+        chaincode.submit(SUPPLIER, "TransferBasil", (contract, ctx) -> contract.TransferBasil(ctx, qr, newOwner));
+    }
+
+    private void update(final String qr, final String gpsPosition) {
+        chaincode.submit(SUPPLIER, "UpdateBasil",
+                (contract, ctx) -> contract.UpdateBasil(ctx, qr, "in transit", gpsPosition));
+    }
+
+    private void assignToLot(final String lotId, final String qr) {
+        chaincode.submit(SUPPLIER, "AssignToLot", (contract, ctx) -> contract.AssignToLot(ctx, lotId, qr));
+    }
+
+    private void at(final long epochSecond, final String name, final InMemoryChaincode.TransactionFunction function) {
+        chaincode.getLedger().commit(chaincode.endorse(SUPPLIER, Instant.ofEpochSecond(epochSecond), name, function));
+    }
+
+    private String provenance(final String qr) {
+        return chaincode.evaluate(SUPPLIER, "GetProvenanceSummary",
+                (contract, ctx) -> contract.GetProvenanceSummary(ctx, qr));
+    }
+
+    private String query(final String qr) {
+        return chaincode.evaluate(SUPPLIER, "QueryBasil", (contract, ctx) -> contract.QueryBasil(ctx, qr));
+    }
+
+    private String committedPolicy(final String key) {
+        return chaincode.evaluate(SUPPLIER, "GetStateValidationParameter",
+                (contract, ctx) -> orgs(ctx.getStub().getStateValidationParameter(key)));
+    }
+
+    /**
+     * @return the organisations of a key-level policy, sorted and comma-separated
+     */
+    private static String orgs(final byte[] policy) {
+        List<String> orgs = new ArrayList<>(
+                StateBasedEndorsementFactory.getInstance().newStateBasedEndorsement(policy).listOrgs());
+        orgs.sort(null);
+        return String.join(",", orgs);
+    }
+
+    /**
+     * Requests pages of two until the bookmark is empty.
+     *
+     * @return QR codes of every basil returned, in page order
+     */
+    private static List<String> pages(final PageFunction page) {
+        List<String> qrs = new ArrayList<>();
+        String bookmark = "";
+        do {
+            JSONObject response = new JSONObject(page.apply(2, bookmark));
+            JSONArray records = response.getJSONArray("records");
+            for (int i = 0; i < records.length(); i++) {
+                qrs.add(records.getJSONObject(i).getString("qr"));
+            }
+            bookmark = response.getString("bookmark");
+        } while (!bookmark.isEmpty());
+        return qrs;
+    }
+
+    private static void assertRejected(final BasilErrors error, final Executable call) {
+        ChaincodeException e = assertThrows(ChaincodeException.class, call);
+        assertEquals(error.name(), new String(e.getPayload(), StandardCharsets.UTF_8));
+    }
+
+    @FunctionalInterface
+    private interface PageFunction {
+        String apply(int pageSize, String bookmark);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hyperledger.fabric.samples.memory.InMemoryChaincode;
+import org.hyperledger.fabric.samples.memory.InMemoryLedger;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+public final class GeoIndexTest {
+
+    private static final String SUPPLIER = "Org1MSP";
+
+    private final InMemoryChaincode chaincode = new InMemoryChaincode(new InMemoryLedger());
+
+    @Test
+    public void pagesThroughTheBasilsInsideABox() {
+        chaincode.submit(SUPPLIER, "CreateBasilBatch", (contract, ctx) -> contract.CreateBasilBatch(ctx,
+                "[{\"qr\":\"QR-1\"},{\"qr\":\"QR-2\"},{\"qr\":\"QR-3\"},{\"qr\":\"QR-4\"}]"));
+        update("QR-1", "44.4056,8.9463");
+        update("QR-2", "44.4100,8.9300");
+        update("QR-3", "45.4642,9.1900");
+        update("QR-4", "44.4000,8.9400");
+        update("QR-4", "45.0703,7.6869");
+
+        List<String> qrs = new ArrayList<>();
+        String bookmark = "";
+        do {
+            String current = bookmark;
+            JSONObject page = new JSONObject(chaincode.evaluate(SUPPLIER, "GetBasilsInBoundingBox",
+                    (contract, ctx) -> contract.GetBasilsInBoundingBox(ctx, 44.30, 8.80, 44.50, 9.10, 1, current)));
+            JSONArray records = page.getJSONArray("records");
+            for (int i = 0; i < records.length(); i++) {
+                qrs.add(records.getJSONObject(i).getString("qr"));
+            }
+            bookmark = page.getString("bookmark");
+        } while (!bookmark.isEmpty());
+
+        qrs.sort(null);
+        assertEquals(Arrays.asList("QR-1", "QR-2"), qrs);
+    }
+
+    @Test
+    public void readsTheCellOfABookmark() {
+        assertEquals(0, GeoIndex.bookmarkCell("0|", 1));
+        assertEquals(2, GeoIndex.bookmarkCell("2|g1AAAA", 3));
+    }
+
+    @Test
+    public void rejectsMalformedBookmarks() {
+        assertThrows(ChaincodeException.class, () -> GeoIndex.bookmarkCell("3|x", 3));
+        assertThrows(ChaincodeException.class, () -> GeoIndex.bookmarkCell("-1|x", 3));
+        assertThrows(ChaincodeException.class, () -> GeoIndex.bookmarkCell("|x", 3));
+        assertThrows(ChaincodeException.class, () -> GeoIndex.bookmarkCell("one|x", 3));
+        assertThrows(ChaincodeException.class, () -> GeoIndex.bookmarkCell("1", 3));
+    }
+
+    private void update(final String qr, final String gpsPosition) {
+        chaincode.submit(SUPPLIER, "UpdateBasil",
+                (contract, ctx) -> contract.UpdateBasil(ctx, qr, "in transit", gpsPosition));
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public final class GeohashTest {
+
+    @Test
+    public void encodesKnownPositions() {
+        assertEquals("u4pruydqqvj", Geohash.encode(57.64911, 10.40744, 11));
+        assertEquals("s0000", Geohash.encode(0, 0, 5));
+        assertEquals("00000", Geohash.encode(-90, -180, 5));
+    }
+
+    @Test
+    public void parsesPositionsWithAnySeparator() {
+        assertArrayEquals(new double[] {44.4056, 8.9463}, Geohash.parsePosition("44.4056,8.9463"));
+        assertArrayEquals(new double[] {44.4056, 8.9463}, Geohash.parsePosition(" 44.4056; 8.9463 "));
+        assertArrayEquals(new double[] {-33.9, 18.4}, Geohash.parsePosition("-33.9 18.4"));
+    }
+
+    @Test
+    public void rejectsInvalidPositions() {
+        assertNull(Geohash.parsePosition(null));
+        assertNull(Geohash.parsePosition("44.4"));
+        assertNull(Geohash.parsePosition("north,east"));
+        assertNull(Geohash.parsePosition("91,0"));
+        assertNull(Geohash.parsePosition("0,181"));
+    }
+
+    @Test
+    public void coverContainsTheCellsOfTheCorners() {
+        List<String> cells = Geohash.cover(44.30, 8.80, 44.50, 9.10, 6, 64);
+
+        assertTrue(cells.size() <= 64);
+        int precision = cells.get(0).length();
+        assertTrue(cells.contains(Geohash.encode(44.30, 8.80, precision)));
+        assertTrue(cells.contains(Geohash.encode(44.50, 9.10, precision)));
+        assertTrue(cells.contains(Geohash.encode(44.4056, 8.9463, precision)));
+    }
+}
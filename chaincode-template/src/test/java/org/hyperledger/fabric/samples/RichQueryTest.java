@@ -0,0 +1,70 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+public final class RichQueryTest {
+
+    @Test
+    public void readsTheSelectedOwner() {
+        assertEquals("Org2MSP", RichQuery.owner(RichQuery.parse("{\"owner.ownerID\":\"Org2MSP\"}")));
+        assertEquals("Org2MSP", RichQuery.owner(RichQuery.parse("{\"owner.ownerID\":{\"$eq\":\"Org2MSP\"}}")));
+        assertNull(RichQuery.owner(RichQuery.parse("{\"basilLeg.timestamp\":{\"$gt\":0}}")));
+    }
+
+    @Test
+    public void rejectsOwnerConditionsOtherThanEquality() {
+        assertThrows(ChaincodeException.class,
+                () -> RichQuery.owner(RichQuery.parse("{\"owner.ownerID\":{\"$gt\":\"Org1MSP\"}}")));
+        assertThrows(ChaincodeException.class,
+                () -> RichQuery.owner(RichQuery.parse("{\"owner\":{\"ownerID\":\"Org2MSP\"}}")));
+        assertThrows(ChaincodeException.class, () -> RichQuery.owner(RichQuery.parse(
+                "{\"$or\":[{\"owner.ownerID\":\"Org1MSP\"},{\"owner.ownerID\":\"Org2MSP\"}]}")));
+        assertThrows(ChaincodeException.class, () -> RichQuery.owner(RichQuery.parse(
+                "{\"basilLeg.timestamp\":{\"$gt\":0},\"$not\":{\"owner.ownerID\":\"Org1MSP\"}}")));
+    }
+
+    @Test
+    public void selectsDirectlyHeldBasilsOnTheirOwner() {
+        JSONObject query = new JSONObject(RichQuery.heldDirectly(RichQuery.parse("{\"owner.ownerID\":\"Org2MSP\"}")));
+
+        JSONObject selector = query.getJSONObject("selector");
+        assertEquals(BasilCodec.DOC_TYPE, selector.getString("docType"));
+        assertEquals("Org2MSP", selector.getJSONArray("$and").getJSONObject(0).getString("owner.ownerID"));
+        assertEquals(JSONObject.NULL, selector.getJSONArray("$and").getJSONObject(1).get("lotId"));
+        assertEquals("indexOwner", query.getJSONArray("use_index").getString(1));
+    }
+
+    @Test
+    public void selectsLotMembersWhateverTheirStoredOwner() {
+        JSONObject query = new JSONObject(RichQuery.lotMembers(RichQuery.parse(
+                "{\"owner.ownerID\":\"Org2MSP\",\"basilLeg.timestamp\":{\"$gt\":0}}"), "LOT-1"));
+
+        JSONObject selector = query.getJSONObject("selector");
+        JSONObject condition = selector.getJSONArray("$and").getJSONObject(0);
+        assertFalse(condition.has("owner.ownerID"));
+        assertEquals(0, condition.getJSONObject("basilLeg.timestamp").getInt("$gt"));
+        assertEquals("LOT-1", selector.getJSONArray("$and").getJSONObject(1).getString("lotId"));
+        assertEquals("indexLot", query.getJSONArray("use_index").getString(1));
+    }
+
+    @Test
+    public void rejectsSelectorsNoIndexServes() {
+        assertEquals("indexLegTimestamp", new JSONObject(RichQuery.build(
+                RichQuery.parse("{\"basilLeg.timestamp\":{\"$gte\":10}}"))).getJSONArray("use_index").getString(1));
+        assertThrows(ChaincodeException.class, () -> RichQuery.build(RichQuery.parse("{\"extraInfo\":\"fresh\"}")));
+        assertThrows(ChaincodeException.class, () -> RichQuery.build(
+                RichQuery.parse("{\"$or\":[{\"basilLeg.timestamp\":1},{\"extraInfo\":\"fresh\"}]}")));
+        assertThrows(ChaincodeException.class, () -> RichQuery.parse("owner"));
+    }
+}